@@ -4,6 +4,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.jetbrains.annotations.ApiStatus;
 
+import java.time.Duration;
 import java.util.Map;
 import java.util.UUID;
 
@@ -34,6 +35,68 @@ public interface Account {
     @ApiStatus.Internal
     @NonNull Map<Currency, Double> getHeapBalances();
 
+    /**
+     * Gets the balance minus all amounts currently reserved by holds.
+     *
+     * @param currency the currency
+     * @return the balance that can still be withdrawn or reserved
+     */
+    double getAvailableBalance(@NonNull Currency currency);
+
+    /**
+     * Reserves specific amount so that it can't be spent elsewhere until the hold is settled.
+     * <p>
+     * The reserved amount is deducted from {@link #getAvailableBalance(Currency)} immediately, but the real balance
+     * is not changed (nor saved) until the hold is captured. If the hold is neither captured nor released within the
+     * given time, it will be released automatically.
+     *
+     * @param currency the currency to reserve
+     * @param amount   the amount to reserve
+     * @param ttl      how long the hold lives before it expires
+     * @return the unique ID of the hold, or null if the available balance is not enough
+     */
+    @ApiStatus.Experimental
+    @Nullable UUID reserve(@NonNull Currency currency, double amount, @NonNull Duration ttl);
+
+    /**
+     * Withdraws the full amount of specific hold from this account.
+     *
+     * @param holdId the unique ID of the hold
+     * @return true if the hold was captured; false if it doesn't exist (or expired) or the transaction is cancelled
+     */
+    @ApiStatus.Experimental
+    boolean capture(@NonNull UUID holdId);
+
+    /**
+     * Withdraws specific amount from specific hold, and releases the remaining amount of the hold.
+     *
+     * @param holdId the unique ID of the hold
+     * @param amount the amount to withdraw, which must not be greater than the reserved amount
+     * @return true if the hold was captured; false if it doesn't exist (or expired) or the transaction is cancelled
+     */
+    @ApiStatus.Experimental
+    boolean capture(@NonNull UUID holdId, double amount);
+
+    /**
+     * Releases specific hold without withdrawing anything.
+     *
+     * @param holdId the unique ID of the hold
+     * @return true if the hold was released; false if it doesn't exist (or expired)
+     */
+    @ApiStatus.Experimental
+    boolean release(@NonNull UUID holdId);
+
+    /**
+     * Gets the version of this account, which is increased by one on every change of balance.
+     *
+     * @return the version of this account
+     */
+    @ApiStatus.Internal
+    long getVersion();
+
+    @ApiStatus.Internal
+    void setVersion(long version);
+
     boolean testOverflow(@NonNull Currency currency, double amount);
 
     boolean hasEnough(double amount);
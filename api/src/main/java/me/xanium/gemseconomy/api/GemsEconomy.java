@@ -5,6 +5,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import org.jetbrains.annotations.ApiStatus;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public interface GemsEconomy {
@@ -68,6 +69,32 @@ public interface GemsEconomy {
      */
     void withdraw(@NonNull UUID uuid, double amount, @NonNull Currency currency);
 
+    /**
+     * Deposit specified amounts into multiple accounts at once.
+     * <p>
+     * Unlike calling {@link #deposit(UUID, double, Currency)} for each account, all the changed accounts are saved in
+     * one batch and synced to other servers in one message.
+     *
+     * @param amounts  a map from the account's unique ID to the amount of specific currency
+     * @param currency the specific currency
+     * @return a map from the account's unique ID to whether the deposit succeeded
+     */
+    @ApiStatus.Experimental
+    @NonNull Map<UUID, Boolean> depositAll(@NonNull Map<UUID, Double> amounts, @NonNull Currency currency);
+
+    /**
+     * Withdraw specified amounts from multiple accounts at once.
+     * <p>
+     * Unlike calling {@link #withdraw(UUID, double, Currency)} for each account, all the changed accounts are saved in
+     * one batch and synced to other servers in one message.
+     *
+     * @param amounts  a map from the account's unique ID to the amount of specific currency
+     * @param currency the currency you withdraw from
+     * @return a map from the account's unique ID to whether the withdrawal succeeded
+     */
+    @ApiStatus.Experimental
+    @NonNull Map<UUID, Boolean> withdrawAll(@NonNull Map<UUID, Double> amounts, @NonNull Currency currency);
+
     /**
      * Lookup the balance of specific account.
      *
@@ -103,4 +130,54 @@ public interface GemsEconomy {
      */
     @ApiStatus.Experimental
     @NonNull List<Currency> getLoadedCurrencies();
+
+    /**
+     * Lookup the rank of specific account in the balance top list.
+     * <p>
+     * It's answered from memory in logarithmic time and never loads anything from database, so it's safe to call
+     * frequently (e.g. from placeholders).
+     *
+     * @param uuid     the account's unique ID
+     * @param currency the specific currency
+     * @return the rank starting from 1, or 0 if the account is not in the top list (or it's not loaded yet)
+     */
+    @ApiStatus.Experimental
+    int getRank(@NonNull UUID uuid, @NonNull Currency currency);
+
+    /**
+     * Lookup the entry at specific rank in the balance top list.
+     * <p>
+     * It's answered from memory in logarithmic time and never loads anything from database, so it's safe to call
+     * frequently (e.g. from placeholders).
+     *
+     * @param currency the specific currency
+     * @param rank     the rank starting from 1
+     * @return the entry at specific rank, or null if there is none (yet)
+     */
+    @ApiStatus.Experimental
+    @Nullable RankedBalance getEntryAt(@NonNull Currency currency, int rank);
+
+    /**
+     * Lookup the rank of specific account in the accumulated balance top list.
+     *
+     * @param uuid     the account's unique ID
+     * @param currency the specific currency
+     * @return the rank starting from 1, or 0 if the account is not in the top list (or it's not loaded yet)
+     * @see #getRank(UUID, Currency)
+     * @see Account#getHeapBalance(Currency)
+     */
+    @ApiStatus.Experimental
+    int getHeapRank(@NonNull UUID uuid, @NonNull Currency currency);
+
+    /**
+     * Lookup the entry at specific rank in the accumulated balance top list.
+     *
+     * @param currency the specific currency
+     * @param rank     the rank starting from 1
+     * @return the entry at specific rank, or null if there is none (yet)
+     * @see #getEntryAt(Currency, int)
+     * @see Account#getHeapBalance(Currency)
+     */
+    @ApiStatus.Experimental
+    @Nullable RankedBalance getHeapEntryAt(@NonNull Currency currency, int rank);
 }
@@ -0,0 +1,16 @@
+package me.xanium.gemseconomy.api;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.UUID;
+
+/**
+ * An entry of the balance top list of a currency.
+ *
+ * @param uuid   the account's unique ID
+ * @param name   the account's display name
+ * @param amount the balance
+ * @param rank   the rank in the balance top list, starting from 1
+ */
+public record RankedBalance(@NonNull UUID uuid, @NonNull String name, double amount, int rank) {
+}
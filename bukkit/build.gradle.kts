@@ -30,6 +30,21 @@ dependencies {
     compileOnly(libs.vault) {
         exclude("org.bukkit")
     }
+
+    // tests run against the real classes, so they need everything present at runtime
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.0")
+    testImplementation("org.mockito:mockito-core:5.5.0")
+    testImplementation("com.github.seeseemelk:MockBukkit-v1.20:3.9.0")
+    testImplementation("ch.vorburger.mariaDB4j:mariaDB4j:3.0.1")
+    testRuntimeOnly("com.mysql:mysql-connector-j:8.1.0")
+}
+
+configurations.testImplementation {
+    extendsFrom(configurations.compileOnly.get())
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
 
 // TODO remove/replace it with paper plugin specifications
@@ -8,6 +8,7 @@
 
 package me.xanium.gemseconomy;
 
+import me.lucko.helper.Schedulers;
 import me.lucko.helper.plugin.ExtendedJavaPlugin;
 import me.xanium.gemseconomy.account.AccountManager;
 import me.xanium.gemseconomy.api.Currency;
@@ -18,7 +19,10 @@ import me.xanium.gemseconomy.command.CommandManager;
 import me.xanium.gemseconomy.currency.BalanceTopRepository;
 import me.xanium.gemseconomy.currency.CurrencyManager;
 import me.xanium.gemseconomy.data.DataStorage;
+import me.xanium.gemseconomy.data.IoExecutor;
+import me.xanium.gemseconomy.data.LeaderElection;
 import me.xanium.gemseconomy.data.MySQLStorage;
+import me.xanium.gemseconomy.data.ProxyStorage;
 import me.xanium.gemseconomy.data.StorageType;
 import me.xanium.gemseconomy.hook.MiniPlaceholderExpansion;
 import me.xanium.gemseconomy.hook.PAPIPlaceholderExpansion;
@@ -30,11 +34,14 @@ import me.xanium.gemseconomy.vault.VaultHandler;
 import org.bukkit.plugin.ServicePriority;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.UUID;
+
 import static java.util.Objects.requireNonNull;
 
 public class GemsEconomyPlugin extends ExtendedJavaPlugin {
 
     private static GemsEconomyPlugin INSTANCE;
+    private static final int MESSAGE_CONCURRENCY = 4; // messenger flushes and proxy round trips running at the same time
 
     private GemsMessages messages;
     private DataStorage dataStorage;
@@ -44,11 +51,16 @@ public class GemsEconomyPlugin extends ExtendedJavaPlugin {
     private VaultHandler vaultHandler;
     private EconomyLogger economyLogger;
     private Messenger messenger;
+    private IoExecutor ioExecutor;
+    private IoExecutor messageExecutor;
+    private LeaderElection leaderElection;
 
     private boolean debug = false;
     private boolean vault = true;
     private boolean logging = false;
     private boolean disabling = false;
+    private long handoffTimeout = 500L;
+    private String serverId;
 
     public static GemsEconomyPlugin getInstance() {
         return INSTANCE;
@@ -69,6 +81,11 @@ public class GemsEconomyPlugin extends ExtendedJavaPlugin {
         debug = getConfig().getBoolean("debug");
         vault = getConfig().getBoolean("vault");
         logging = getConfig().getBoolean("transaction_log");
+        handoffTimeout = getConfig().getLong("handoff_timeout_millis", 500L);
+        serverId = getConfig().getString("server_id", "");
+        if (serverId.isBlank()) {
+            serverId = UUID.randomUUID().toString(); // Unique enough, as restarts are told apart by epoch anyway
+        }
 
         // Initialize managers
         messages = new GemsMessages(this);
@@ -77,9 +94,16 @@ public class GemsEconomyPlugin extends ExtendedJavaPlugin {
         balanceTopRepository = new BalanceTopRepository(this);
         economyLogger = new EconomyLogger(this);
 
+        // Initialize messaging executor, so that flushing messages never waits for the connections of the data store
+        messageExecutor = bind(new IoExecutor("GemsEconomy Messaging", MESSAGE_CONCURRENCY));
+
         // Initialize data source
         initializeDataStore(StorageType.valueOf(requireNonNull(getConfig().getString("storage")).toUpperCase()));
 
+        // Initialize I/O executor, as many at a time as the data store can serve
+        ioExecutor = new IoExecutor("GemsEconomy I/O", getDataStore() != null ? getDataStore().getMaxConnections() : 4);
+        UtilServer.consoleLog("I/O executor uses " + (ioExecutor.isVirtual() ? "virtual threads" : "platform threads") + " (max concurrency: " + ioExecutor.getPermits() + ")");
+
         // Check if default currency is set
         if (currencyManager.getLoadedCurrencies().stream().noneMatch(Currency::isDefaultCurrency)) {
             getLogger().severe("No default currency is provided");
@@ -106,18 +130,36 @@ public class GemsEconomyPlugin extends ExtendedJavaPlugin {
         // Initialize messenger
         messenger = bind(Messenger.get());
 
+        // Elect the server which runs the periodic heavy jobs
+        leaderElection = new LeaderElection(this);
+        ioExecutor.execute(leaderElection::tick);
+        bind(ioExecutor.runRepeating(leaderElection::tick, leaderElection.getTickInterval()));
+
         // Register listeners
         bind(registerListener(new EconomyListener()));
 
+        // Reclaim expired balance holds
+        long holdTimerTicks = AccountManager.HOLD_TIMER_TICK_MILLIS / 50;
+        bind(Schedulers.async().runRepeating(accountManager.getHoldTimer()::advance, holdTimerTicks, holdTimerTicks));
+
+        // Save the changes kept in memory and renew the write leases
+        long leaseFlushTicks = getConfig().getLong("lease.flush_interval_ticks", 100L);
+        bind(ioExecutor.runRepeating(accountManager.getLeaseKeeper()::tick, leaseFlushTicks * 50));
+
+        // Serve the leaderboards saved before the restart (or seed them), then reconcile them with database once they're
+        // old - even if nobody asks for them, as the placeholders don't trigger reconciles
+        if (!balanceTopRepository.loadSnapshots())
+            balanceTopRepository.flushLists();
+        bind(ioExecutor.runRepeating(balanceTopRepository::refreshStale, Math.max(1000L, balanceTopRepository.getRefreshInterval() / 5)));
+
         // Register placeholder expansions
         if (isPluginPresent("PlaceholderAPI"))
             bind(new PAPIPlaceholderExpansion()).register();
         if (isPluginPresent("MiniPlaceholders"))
             bind(new MiniPlaceholderExpansion()).register();
 
-        // Initialize logger
-        if (isLogging())
-            getEconomyLogger().save();
+        // Start the logger, unless logging is disabled
+        getEconomyLogger().save();
 
         // Initialize commands
         try {
@@ -140,9 +182,24 @@ public class GemsEconomyPlugin extends ExtendedJavaPlugin {
         if (isVault())
             getVaultHandler().unhook();
 
+        // Save the leaderboards for the next start
+        if (getBalanceTopRepository() != null)
+            getBalanceTopRepository().saveSnapshots();
+
         // Close data source
-        if (getDataStore() != null)
+        if (getDataStore() != null) {
+            getAccountManager().getTransactionEngine().close(); // Finish the pending changes first
+            getAccountManager().getLeaseKeeper().close(); // Save what's kept in memory first
+            if (leaderElection != null)
+                leaderElection.close(); // Let another server take over right away
+            if (ioExecutor != null)
+                ioExecutor.close(); // Wait for the pending saves
             getDataStore().close();
+        }
+
+        // Write the last lines
+        if (getEconomyLogger() != null)
+            getEconomyLogger().close();
     }
 
     public void reloadLanguages() {
@@ -185,6 +242,22 @@ public class GemsEconomyPlugin extends ExtendedJavaPlugin {
         return messenger;
     }
 
+    public IoExecutor getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Returns the executor of messenger work (flushing messages, and round trips to the proxy), which is sized apart
+     * from the {@link #getIoExecutor() I/O executor} since it doesn't use the connections of the data store.
+     */
+    public IoExecutor getMessageExecutor() {
+        return messageExecutor;
+    }
+
+    public @Nullable LeaderElection getLeaderElection() {
+        return leaderElection;
+    }
+
     public boolean isDebug() {
         return debug;
     }
@@ -205,14 +278,32 @@ public class GemsEconomyPlugin extends ExtendedJavaPlugin {
         return disabling;
     }
 
-    private void initializeDataStore(@Nullable StorageType strategy) {
-        DataStorage.getMethods().add(new MySQLStorage(
+    public long getHandoffTimeout() {
+        return handoffTimeout;
+    }
+
+    /**
+     * Returns the unique name of this server among the servers sharing the same database.
+     *
+     * @return the unique name of this server
+     */
+    public String getServerId() {
+        return serverId;
+    }
+
+    private MySQLStorage createMySQLStorage() {
+        return new MySQLStorage(
             requireNonNull(getConfig().getString("mysql.host")),
             getConfig().getInt("mysql.port", 3306),
             requireNonNull(getConfig().getString("mysql.database")),
             requireNonNull(getConfig().getString("mysql.username")),
             requireNonNull(getConfig().getString("mysql.password"))
-        ));
+        );
+    }
+
+    private void initializeDataStore(@Nullable StorageType strategy) {
+        DataStorage.getMethods().add(createMySQLStorage());
+        DataStorage.getMethods().add(new ProxyStorage(createMySQLStorage().withPoolSize(getConfig().getInt("proxy.fallback_pool_size", 2))));
 
         if (strategy != null) {
             dataStorage = DataStorage.getMethod(strategy);
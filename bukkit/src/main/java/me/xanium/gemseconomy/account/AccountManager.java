@@ -11,14 +11,23 @@ package me.xanium.gemseconomy.account;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import me.lucko.helper.profiles.OfflineModeProfiles;
+import me.lucko.helper.promise.Promise;
 import me.lucko.helper.scheduler.HelperExecutors;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
 import me.xanium.gemseconomy.api.Account;
+import me.xanium.gemseconomy.api.Currency;
 import me.xanium.gemseconomy.data.DataStorage;
+import me.xanium.gemseconomy.message.AccountDelta;
 import me.xanium.gemseconomy.message.Action;
+import me.xanium.gemseconomy.message.Messenger;
+import me.xanium.gemseconomy.utils.TransactionType;
+import me.xanium.gemseconomy.utils.UtilServer;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -26,31 +35,65 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiPredicate;
 
 public class AccountManager {
 
+    /**
+     * The resolution of {@link #getHoldTimer()}, which must match the interval of the task advancing it.
+     */
+    public static final long HOLD_TIMER_TICK_MILLIS = 1000L;
+
     private final @NonNull GemsEconomyPlugin plugin;
     private final @NonNull LoadingCache<UUID, Optional<Account>> cache; // accounts loaded in memory
+    private final @NonNull HoldRegistry holds = new HoldRegistry(); // balance holds, kept across account reloads
+    private final @NonNull HoldTimerWheel holdTimer; // reclaims expired balance holds
+    private final @NonNull HandoffTracker handoffTracker = new HandoffTracker(); // tracks players switching servers
+    private final @NonNull LeaseKeeper leaseKeeper; // keeps changes of online players in memory
+    private final @NonNull TransactionEngine transactionEngine; // applies changes on single-threaded partitions
 
     public AccountManager(@NonNull GemsEconomyPlugin plugin) {
         this.plugin = plugin;
         this.cache = CacheBuilder.newBuilder()
             .expireAfterAccess(Duration.of(10, ChronoUnit.MINUTES))
+            .<UUID, Optional<Account>>removalListener(notification -> {
+                if (notification.getCause() != RemovalCause.REPLACED && notification.getKey() != null) {
+                    reportInterest(notification.getKey(), false);
+                }
+            })
             .build(CacheLoader.asyncReloading(new CacheLoader<>() {
                 @Override public @NonNull Optional<Account> load(final @NonNull UUID key) {
-                    return Optional.ofNullable(plugin.getDataStore().loadAccount(key));
+                    Optional<Account> account = Optional.ofNullable(plugin.getDataStore().loadAccount(key));
+                    if (account.isPresent()) {
+                        reportInterest(key, true);
+                        plugin.getBalanceTopRepository().onAccountLoaded(account.get());
+                    }
+                    return account;
                 }
 
                 @Override public @NonNull ListenableFuture<Optional<Account>> reload(final @NonNull UUID key, final @NonNull Optional<Account> oldValue) {
                     return oldValue
                         .map(account -> plugin.getDataStore().updateAccount(account) /* Note that it doesn't change reference */)
+                        .map(account -> {
+                            plugin.getBalanceTopRepository().onAccountLoaded(account);
+                            return account;
+                        })
                         .map(value -> Futures.immediateFuture(Optional.of(value)))
                         .orElseGet(() -> Futures.immediateFuture(oldValue));
                 }
-            }, HelperExecutors.asyncHelper()));
+            }, command -> plugin.getIoExecutor().execute(command)));
+        this.holdTimer = new HoldTimerWheel(HOLD_TIMER_TICK_MILLIS, 512);
+        this.leaseKeeper = new LeaseKeeper(plugin);
+        this.transactionEngine = new TransactionEngine(plugin);
     }
 
     /**
@@ -61,8 +104,14 @@ public class AccountManager {
      *
      * @param uuid the uuid of the new account
      * @return a newly created account if there wasn't one, or the existing one
+     * @throws IllegalStateException if the account is not cached, and can't be loaded on the current thread (see
+     *                               {@link DataStorage#canLoadAccounts()}); it's then loaded in background
      */
     public @NonNull Account createAccount(@NonNull UUID uuid) {
+        if (!cached(uuid) && !plugin.getDataStore().canLoadAccounts()) {
+            loadAccountLater(uuid);
+            throw new IllegalStateException("Account " + uuid + " is not loaded yet, and can't be loaded on this thread");
+        }
         Account test = fetchAccount(uuid);
         if (test != null) {
             return test;
@@ -82,6 +131,117 @@ public class AccountManager {
         return account;
     }
 
+    /**
+     * Deposits specific amounts into multiple accounts at once.
+     * <p>
+     * The accounts are loaded on the I/O executor and changed in memory, then saved to database in one batch, and synced
+     * between servers in one message. Accounts that don't exist will be created.
+     *
+     * @param amounts  a map from account uuid to the amount to deposit
+     * @param currency the currency to deposit
+     * @return a map from account uuid to whether the deposit succeeded
+     */
+    public @NonNull Map<UUID, Boolean> depositAll(@NonNull Map<UUID, Double> amounts, @NonNull Currency currency) {
+        return applyAll(amounts, true, currency, TransactionType.DEPOSIT, (account, amount) -> account.deposit(currency, amount, false));
+    }
+
+    /**
+     * Withdraws specific amounts from multiple accounts at once.
+     * <p>
+     * The accounts are loaded on the I/O executor and changed in memory, then saved to database in one batch, and synced
+     * between servers in one message. Accounts that don't exist are not created, and the withdrawals from them fail.
+     *
+     * @param amounts  a map from account uuid to the amount to withdraw
+     * @param currency the currency to withdraw from
+     * @return a map from account uuid to whether the withdrawal succeeded
+     */
+    public @NonNull Map<UUID, Boolean> withdrawAll(@NonNull Map<UUID, Double> amounts, @NonNull Currency currency) {
+        return applyAll(amounts, false, currency, TransactionType.WITHDRAW, (account, amount) -> account.withdraw(currency, amount, false));
+    }
+
+    private @NonNull Map<UUID, Boolean> applyAll(@NonNull Map<UUID, Double> amounts, boolean create, @NonNull Currency currency, @NonNull TransactionType type, @NonNull BiPredicate<PlayerAccount, Double> mutation) {
+        Map<UUID, Boolean> results = new HashMap<>(amounts.size());
+        List<Account> changed = new ArrayList<>(amounts.size());
+        Map<Account, CompletableFuture<Boolean>> pending = new HashMap<>(amounts.size());
+
+        // Load (or create, for deposits) the accounts not cached yet on the I/O executor, as many at a time as the data store can serve
+        Map<UUID, Promise<@Nullable Account>> loading = new HashMap<>(amounts.size());
+        for (UUID uuid : amounts.keySet()) {
+            Account cached = getCachedAccount(uuid);
+            loading.put(uuid, cached != null ? Promise.completed(cached) : plugin.getIoExecutor().supply(() -> create ? createAccount(uuid) : fetchAccount(uuid)));
+        }
+        amounts.forEach((uuid, amount) -> {
+            @Nullable Account account = loading.get(uuid).join();
+            if (account instanceof PlayerAccount playerAccount && playerAccount.callPreTransaction(currency, amount, type)) {
+                // Applied by the partition of the account if the engine is enabled, or spread over the I/O executor
+                // otherwise, instead of one after another on this thread
+                pending.put(account, transactionEngine.isEnabled()
+                    ? transactionEngine.submit(uuid, () -> mutation.test(playerAccount, amount))
+                    : CompletableFuture.supplyAsync(() -> mutation.test(playerAccount, amount), plugin.getIoExecutor())
+                );
+            } else {
+                results.put(uuid, false);
+            }
+        });
+        pending.forEach((account, future) -> {
+            boolean success = future.join();
+            if (success) {
+                changed.add(account);
+                ((PlayerAccount) account).callPostTransaction(currency, amounts.get(account.getUuid()), type); // On this thread, as the partitions never fire events
+            }
+            results.put(account.getUuid(), success);
+        });
+
+        if (!changed.isEmpty()) {
+            leaseKeeper.saveAll(changed); // The sync messages are already queued and coalesced by the messenger
+        }
+
+        return results;
+    }
+
+    /**
+     * Moves specific amount from an account to another.
+     * <p>
+     * The amount is never lost or duplicated if a step fails: it's given back to the source account if the deposit
+     * fails. See {@link TransactionEngine#transfer}.
+     * <p>
+     * The events before the transfer are fired on the calling thread. The events after it are fired on the calling
+     * thread too if the transfer is applied right away, or on the main thread otherwise.
+     *
+     * @param from     the account to withdraw from
+     * @param to       the account to deposit into
+     * @param currency the currency to transfer
+     * @param amount   the amount to transfer
+     * @return a future completed with the outcome of the transfer
+     */
+    public @NonNull CompletableFuture<TransferResult> transfer(@NonNull Account from, @NonNull Account to, @NonNull Currency currency, double amount) {
+        if (!(from instanceof PlayerAccount source) || !(to instanceof PlayerAccount target)) {
+            if (!from.withdraw(currency, amount)) {
+                return CompletableFuture.completedFuture(TransferResult.WITHDRAW_FAILED);
+            }
+            if (!to.deposit(currency, amount)) {
+                from.deposit(currency, amount);
+                return CompletableFuture.completedFuture(TransferResult.DEPOSIT_FAILED);
+            }
+            return CompletableFuture.completedFuture(TransferResult.SUCCESS);
+        }
+        if (!source.callPreTransaction(currency, amount, TransactionType.WITHDRAW)) {
+            return CompletableFuture.completedFuture(TransferResult.WITHDRAW_FAILED);
+        }
+        if (!target.canReceiveCurrency() || !target.callPreTransaction(currency, amount, TransactionType.DEPOSIT)) {
+            return CompletableFuture.completedFuture(TransferResult.DEPOSIT_FAILED); // Nothing withdrawn yet
+        }
+        CompletableFuture<TransferResult> future = transactionEngine.transfer(source, target, currency, amount);
+        Executor events = future.isDone() ? MoreExecutors.directExecutor() : HelperExecutors.sync(); // Never on a partition
+        return future.thenApplyAsync(result -> {
+            if (result == TransferResult.SUCCESS) {
+                source.callPostTransaction(currency, amount, TransactionType.WITHDRAW);
+                target.callPostTransaction(currency, amount, TransactionType.DEPOSIT);
+            }
+            return result;
+        }, events);
+    }
+
     /**
      * Creates an account and returns it.
      * <p>
@@ -108,10 +268,15 @@ public class AccountManager {
      *
      * @param nickname the nickname of the new account
      * @return a newly created account if there wasn't one, or the existing one
+     * @throws IllegalStateException if the account is not cached, and can't be loaded on the current thread (see
+     *                               {@link DataStorage#canLoadAccounts()}); it's then loaded in background
      * @see OfflineModeProfiles
      */
     public @NonNull Account createAccount(@NonNull String nickname) {
         Account test = fetchAccount(nickname);
+        if (test == null && !plugin.getDataStore().canLoadAccounts()) {
+            throw new IllegalStateException("Account " + nickname + " is not loaded yet, and can't be loaded on this thread");
+        }
         if (test != null) {
             return test;
         }
@@ -202,11 +367,19 @@ public class AccountManager {
      * Fetch an account with specific uuid.
      * <p>
      * This will first get the account from cache, followed by database. If neither is found, it will return null.
+     * <p>
+     * If the account is not cached, and can't be loaded on the current thread (see
+     * {@link DataStorage#canLoadAccounts()}, e.g. the proxy storage on the main thread), it's loaded in background,
+     * and this method returns null for now.
      *
      * @param uuid the uuid of the account to fetch for
      * @return an account with given uuid
      */
     public @Nullable Account fetchAccount(@NonNull UUID uuid) {
+        if (!cached(uuid) && !plugin.getDataStore().canLoadAccounts()) {
+            loadAccountLater(uuid);
+            return null;
+        }
         return cache.getUnchecked(uuid).orElse(null);
     }
 
@@ -214,6 +387,9 @@ public class AccountManager {
      * Fetch an account with specific name.
      * <p>
      * This will first get the account from cache, followed by database. If neither is found, it will return null.
+     * <p>
+     * If the account is not cached, and can't be loaded on the current thread (see
+     * {@link DataStorage#canLoadAccounts()}), it's loaded in background, and this method returns null for now.
      *
      * @param name the name of the account to fetch for
      * @return an account with given name
@@ -224,6 +400,10 @@ public class AccountManager {
                 return account.get();
             }
         }
+        if (!plugin.getDataStore().canLoadAccounts()) {
+            loadAccountLater(name);
+            return null;
+        }
         @Nullable Account account = plugin.getDataStore().loadAccount(name);
         if (account == null) {
             return null;
@@ -233,6 +413,32 @@ public class AccountManager {
         }
     }
 
+    /**
+     * Loads specific account into cache on the I/O executor, for the threads which can't load it themselves.
+     */
+    private void loadAccountLater(@NonNull UUID uuid) {
+        plugin.getIoExecutor().execute(() -> {
+            try {
+                cache.getUnchecked(uuid);
+            } catch (UncheckedExecutionException e) {
+                UtilServer.consoleLog("§cAccount not loaded in background: " + uuid + " - " + e.getCause().getMessage());
+            }
+        });
+    }
+
+    /**
+     * @see #loadAccountLater(UUID)
+     */
+    private void loadAccountLater(@NonNull String name) {
+        plugin.getIoExecutor().execute(() -> {
+            try {
+                fetchAccount(name);
+            } catch (IllegalStateException e) {
+                UtilServer.consoleLog("§cAccount not loaded in background: " + name + " - " + e.getMessage());
+            }
+        });
+    }
+
     /**
      * Caches an account.
      * <p>
@@ -243,6 +449,22 @@ public class AccountManager {
      */
     public void cacheAccount(@NonNull Account account) {
         cache.put(account.getUuid(), Optional.of(account));
+        reportInterest(account.getUuid(), true);
+        plugin.getBalanceTopRepository().onAccountLoaded(account);
+    }
+
+    /**
+     * Tells other servers (if they care) that this server starts or stops holding specific account in memory.
+     */
+    private void reportInterest(@NonNull UUID uuid, boolean cached) {
+        Messenger messenger = plugin.getMessenger();
+        if (messenger == null)
+            return; // Not enabled yet - nothing to sync with anyway
+        if (cached) {
+            messenger.onAccountCached(uuid);
+        } else {
+            messenger.onAccountEvicted(uuid);
+        }
     }
 
     /**
@@ -256,6 +478,17 @@ public class AccountManager {
         return cache.getIfPresent(uuid) != null;
     }
 
+    /**
+     * Gets specific account only if it's currently cached, without loading it from database.
+     *
+     * @param uuid the uuid of specific account
+     * @return the cached account, or null if it's not cached
+     */
+    public @Nullable Account getCachedAccount(@NonNull UUID uuid) {
+        Optional<Account> cached = cache.getIfPresent(uuid);
+        return cached != null ? cached.orElse(null) : null;
+    }
+
     /**
      * Refreshes specific account from database.
      *
@@ -269,6 +502,52 @@ public class AccountManager {
         cache.refresh(uuid);
     }
 
+    /**
+     * Refreshes all the specific accounts that are currently cached, from database in one batch.
+     * <p>
+     * Unlike {@link #refreshAccount(UUID)}, this method blocks until the accounts are updated.
+     *
+     * @param uuids the uuids of the accounts
+     * @return the number of accounts that were cached and got refreshed
+     */
+    public int refreshAccounts(@NonNull Collection<UUID> uuids) {
+        List<Account> accounts = new ArrayList<>(uuids.size());
+        for (UUID uuid : uuids) {
+            Optional<Account> cached = cache.getIfPresent(uuid);
+            if (cached != null && cached.isPresent()) {
+                accounts.add(cached.get());
+            }
+        }
+        if (!accounts.isEmpty()) {
+            plugin.getDataStore().updateAccounts(accounts);
+            accounts.forEach(plugin.getBalanceTopRepository()::onAccountLoaded);
+        }
+        return accounts.size();
+    }
+
+    /**
+     * Applies the changes received from other servers to the accounts that are currently cached.
+     * <p>
+     * Accounts which can't apply the changes directly (e.g. because of a version gap) are reloaded from database in
+     * one batch. This method blocks until all the accounts are updated.
+     *
+     * @param deltas the changes of accounts
+     * @return the number of accounts that had to be reloaded from database
+     */
+    public int applyDeltas(@NonNull Collection<AccountDelta> deltas) {
+        List<UUID> reloads = new ArrayList<>();
+        for (AccountDelta delta : deltas) {
+            Optional<Account> cached = cache.getIfPresent(delta.account());
+            if (cached == null || cached.isEmpty()) {
+                continue; // Not interested in it
+            }
+            if (!(cached.get() instanceof PlayerAccount account) || !account.applyDelta(delta)) {
+                reloads.add(delta.account());
+            }
+        }
+        return reloads.isEmpty() ? 0 : refreshAccounts(reloads);
+    }
+
     /**
      * Discards specific account object from memory.
      *
@@ -294,6 +573,51 @@ public class AccountManager {
         return cache.asMap().values().stream().filter(Optional::isPresent).map(Optional::get).toList();
     }
 
+    /**
+     * Returns the {@link BalanceHold}s of all accounts, which are kept here so that they survive account reloads.
+     *
+     * @return the balance holds of all accounts
+     */
+    public @NonNull HoldRegistry getHolds() {
+        return holds;
+    }
+
+    /**
+     * Returns the timer wheel which reclaims expired {@link BalanceHold}s of all accounts.
+     *
+     * @return the timer wheel of balance holds
+     */
+    public @NonNull HoldTimerWheel getHoldTimer() {
+        return holdTimer;
+    }
+
+    /**
+     * Returns the tracker of accounts being handed off between servers.
+     *
+     * @return the tracker of account handoffs
+     */
+    public @NonNull HandoffTracker getHandoffTracker() {
+        return handoffTracker;
+    }
+
+    /**
+     * Returns the keeper of the write leases of accounts, which decides whether a change is saved immediately.
+     *
+     * @return the keeper of write leases
+     */
+    public @NonNull LeaseKeeper getLeaseKeeper() {
+        return leaseKeeper;
+    }
+
+    /**
+     * Returns the engine which applies the changes of accounts.
+     *
+     * @return the transaction engine
+     */
+    public @NonNull TransactionEngine getTransactionEngine() {
+        return transactionEngine;
+    }
+
     /**
      * It's simply a wrapper of {@link DataStorage#getOfflineAccounts()}.
      */
@@ -0,0 +1,22 @@
+package me.xanium.gemseconomy.account;
+
+import me.xanium.gemseconomy.api.Currency;
+
+import java.util.UUID;
+
+/**
+ * Represents an amount of balance reserved by an {@link me.xanium.gemseconomy.api.Account}.
+ * <p>
+ * The amount is not available for spending until the hold is captured, released, or expired.
+ *
+ * @param id        the unique ID of the hold
+ * @param currency  the currency being reserved
+ * @param amount    the amount being reserved
+ * @param expiresAt the epoch millis when the hold expires
+ * @see HoldTimerWheel
+ */
+public record BalanceHold(UUID id, Currency currency, double amount, long expiresAt) {
+    public boolean expired(long now) {
+        return now >= this.expiresAt;
+    }
+}
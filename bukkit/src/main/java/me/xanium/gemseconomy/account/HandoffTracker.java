@@ -0,0 +1,100 @@
+package me.xanium.gemseconomy.account;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tracks which server currently holds the player of each account, so that a server receiving a player can wait for
+ * the previous server to save the account before loading it.
+ * <p>
+ * Servers announce when a player joins (acquire) and when the player leaves after the account is saved (release).
+ * When switching servers, the proxy connects the player to the new server before disconnecting it from the old one,
+ * so the new server usually sees the acquire of the old server, and asks it to release the account right away rather
+ * than waiting for the player to leave (see {@link LeaseKeeper#takeOver(UUID)}).
+ */
+@DefaultQualifier(NonNull.class)
+public class HandoffTracker {
+
+    /**
+     * How long a release is remembered, in case it arrives before the player logs in.
+     */
+    private static final long RELEASE_MEMORY_MILLIS = 30_000L;
+
+    private final Map<UUID, String> holders = new ConcurrentHashMap<>();
+    private final Map<UUID, Release> releases = new ConcurrentHashMap<>();
+    private final Map<UUID, CompletableFuture<Long>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * Records that specific server now holds the player of an account.
+     */
+    public void acquired(String server, UUID uuid) {
+        holders.put(uuid, server);
+        releases.remove(uuid);
+    }
+
+    /**
+     * Records that specific server has released an account, and wakes up whoever is waiting for it.
+     */
+    public void released(String server, UUID uuid, long version) {
+        holders.remove(uuid, server);
+        releases.put(uuid, new Release(version, System.currentTimeMillis()));
+        CompletableFuture<Long> waiter = waiters.remove(uuid);
+        if (waiter != null) {
+            waiter.complete(version);
+        }
+    }
+
+    /**
+     * Checks whether another server currently holds the player of specific account.
+     */
+    public boolean isHeld(UUID uuid) {
+        return holders.containsKey(uuid);
+    }
+
+    /**
+     * Waits until the account is released by the server holding it, if any.
+     *
+     * @param uuid          the uuid of the account
+     * @param timeoutMillis the maximum time to wait
+     * @return the version of the account when it was released, or -1 if it's unknown
+     */
+    public long awaitRelease(UUID uuid, long timeoutMillis) {
+        if (!holders.containsKey(uuid)) {
+            return recentRelease(uuid);
+        }
+        CompletableFuture<Long> waiter = waiters.computeIfAbsent(uuid, k -> new CompletableFuture<>());
+        if (!holders.containsKey(uuid)) {
+            waiters.remove(uuid, waiter); // Released in the meantime
+            return recentRelease(uuid);
+        }
+        try {
+            return waiter.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // The holder may have crashed - don't keep waiting for it next time
+            holders.remove(uuid);
+        }
+        waiters.remove(uuid, waiter);
+        return -1;
+    }
+
+    private long recentRelease(UUID uuid) {
+        Release release = releases.remove(uuid);
+        if (release == null || System.currentTimeMillis() - release.at() > RELEASE_MEMORY_MILLIS) {
+            return -1;
+        }
+        return release.version();
+    }
+
+    private record Release(long version, long at) {}
+
+}
@@ -0,0 +1,98 @@
+package me.xanium.gemseconomy.account;
+
+import me.xanium.gemseconomy.api.Currency;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the {@link BalanceHold}s of all accounts, keyed by account uuid.
+ * <p>
+ * Holds are only kept in memory, while account objects are replaced whenever the cache reloads or flushes them (e.g.
+ * after a currency is deleted or balances are cleared). So holds are kept here instead of in the account objects, and
+ * any object of the same account sees the same holds.
+ */
+@DefaultQualifier(NonNull.class)
+public class HoldRegistry {
+
+    /**
+     * The holds of each account. The inner maps are only mutated inside {@link Map#compute} of the outer map, so that
+     * a hold is never added to a map which is being removed.
+     */
+    private final Map<UUID, Map<UUID, BalanceHold>> holds = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a hold to specific account.
+     */
+    public void put(UUID account, BalanceHold hold) {
+        holds.compute(account, (k, accountHolds) -> {
+            if (accountHolds == null) {
+                accountHolds = new ConcurrentHashMap<>(4, 1f);
+            }
+            accountHolds.put(hold.id(), hold);
+            return accountHolds;
+        });
+    }
+
+    /**
+     * Gets a hold of specific account.
+     *
+     * @return the hold, or null if it's settled or has never existed
+     */
+    public @Nullable BalanceHold get(UUID account, UUID holdId) {
+        Map<UUID, BalanceHold> accountHolds = holds.get(account);
+        return accountHolds != null ? accountHolds.get(holdId) : null;
+    }
+
+    /**
+     * Removes a hold of specific account.
+     *
+     * @param expected the hold expected to be removed, or null to remove whatever it is
+     * @return the removed hold, or null if it's already settled (or isn't the expected one)
+     */
+    public @Nullable BalanceHold remove(UUID account, UUID holdId, @Nullable BalanceHold expected) {
+        BalanceHold[] removed = new BalanceHold[1];
+        holds.computeIfPresent(account, (k, accountHolds) -> {
+            BalanceHold hold = accountHolds.get(holdId);
+            if (hold != null && (expected == null || hold.equals(expected))) {
+                accountHolds.remove(holdId);
+                removed[0] = hold;
+            }
+            return accountHolds.isEmpty() ? null : accountHolds;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Gets the total amount held by specific account in specific currency.
+     */
+    public double getHeldAmount(UUID account, Currency currency) {
+        Map<UUID, BalanceHold> accountHolds = holds.get(account);
+        if (accountHolds == null) {
+            return 0D;
+        }
+        double held = 0D;
+        for (BalanceHold hold : accountHolds.values()) {
+            if (hold.currency().equals(currency))
+                held += hold.amount();
+        }
+        return held;
+    }
+
+    /**
+     * Drops all the holds of specific currency, e.g. when the currency is deleted.
+     */
+    public void removeAll(Currency currency) {
+        for (UUID account : holds.keySet()) {
+            holds.computeIfPresent(account, (k, accountHolds) -> {
+                accountHolds.values().removeIf(hold -> hold.currency().equals(currency));
+                return accountHolds.isEmpty() ? null : accountHolds;
+            });
+        }
+    }
+
+}
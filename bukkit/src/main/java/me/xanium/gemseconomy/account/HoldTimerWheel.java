@@ -0,0 +1,70 @@
+package me.xanium.gemseconomy.account;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hashed timer wheel which reclaims expired {@link BalanceHold}s.
+ * <p>
+ * Instead of scheduling a task for every single hold, holds are put into the bucket of the tick in which they expire,
+ * and a single repeating task calls {@link #advance()} to process one bucket per tick. Holds that are settled before
+ * they expire are simply ignored when their bucket comes up.
+ */
+public class HoldTimerWheel {
+
+    private final long tickMillis;
+    private final Queue<Entry>[] buckets;
+    private final long startMillis;
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public HoldTimerWheel(long tickMillis, int bucketCount) {
+        this.tickMillis = tickMillis;
+        this.buckets = new Queue[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            this.buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.startMillis = System.currentTimeMillis();
+        this.currentTick = 0;
+    }
+
+    /**
+     * Schedules specific hold to be expired at its deadline.
+     *
+     * @param account the account which owns the hold
+     * @param hold    the hold
+     */
+    public void schedule(@NonNull PlayerAccount account, @NonNull BalanceHold hold) {
+        // Never put it into a bucket which has been processed already
+        long deadlineTick = Math.max(currentTick + 1, (hold.expiresAt() - startMillis + tickMillis - 1) / tickMillis);
+        buckets[(int) (deadlineTick % buckets.length)].add(new Entry(account, hold.id(), deadlineTick));
+    }
+
+    /**
+     * Processes the bucket of the next tick, expiring all the holds which are due.
+     * <p>
+     * This method is meant to be called by one repeating task every {@code tickMillis}.
+     */
+    public void advance() {
+        long tick = ++currentTick;
+        Queue<Entry> bucket = buckets[(int) (tick % buckets.length)];
+        List<Entry> pending = new ArrayList<>();
+        Entry entry;
+        while ((entry = bucket.poll()) != null) {
+            if (entry.deadlineTick > tick) {
+                pending.add(entry); // it belongs to a later round of the wheel
+            } else {
+                entry.account.expireHold(entry.holdId);
+            }
+        }
+        bucket.addAll(pending);
+    }
+
+    private record Entry(PlayerAccount account, UUID holdId, long deadlineTick) {}
+
+}
@@ -0,0 +1,381 @@
+package me.xanium.gemseconomy.account;
+
+import me.lucko.helper.terminable.Terminable;
+import me.lucko.helper.utils.Players;
+import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.api.Account;
+import me.xanium.gemseconomy.data.DataStorage;
+import me.xanium.gemseconomy.utils.UtilServer;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the write leases of the accounts whose players are online on this server.
+ * <p>
+ * While this server holds the lease of an account, no other server writes it, so its changes are only applied in
+ * memory and saved to database in batches by {@link #tick()}, instead of once per transaction. Another server which
+ * has to change a leased account asks this server to give the lease up, and waits until the account is saved (see
+ * {@link #prepareWrite(Account)}). This server takes the lease back on a later tick.
+ * <p>
+ * Who holds which account is learned from the acquire and release messages of other servers. Only if they tell of
+ * no holder, the lease is looked up in database, and the result is kept for one lease period.
+ * <p>
+ * Leases are stored by {@link DataStorage} with an expiry time, so the leases of a crashed server run out by
+ * themselves. This server stops trusting a lease well before it expires, so that it never writes behind while
+ * another server may have taken the lease over.
+ */
+@DefaultQualifier(NonNull.class)
+public class LeaseKeeper implements Terminable {
+
+    private final GemsEconomyPlugin plugin;
+    private final boolean enabled;
+    private final long ttlMillis;
+
+    private final Map<UUID, Long> leases = new ConcurrentHashMap<>(); // account -> until when the lease is trusted
+    private final Map<UUID, Long> revoked = new ConcurrentHashMap<>(); // account -> when the lease was revoked
+    private final Map<UUID, Account> dirty = new ConcurrentHashMap<>(); // accounts with changes not saved yet
+    private final Map<UUID, Long> unheld = new ConcurrentHashMap<>(); // account -> until when no other holder is assumed, as looked up in database
+    private final Set<UUID> lookingUp = ConcurrentHashMap.newKeySet(); // accounts whose leases are being looked up in background
+    private final Set<UUID> catchingUp = ConcurrentHashMap.newKeySet(); // accounts waiting in background for their holders to release them
+    private final ReadWriteLock ownership = new ReentrantReadWriteLock(); // guards giving up a lease against writes
+
+    public LeaseKeeper(GemsEconomyPlugin plugin) {
+        this.plugin = plugin;
+        this.enabled = plugin.getConfig().getBoolean("lease.enabled", false);
+        this.ttlMillis = plugin.getConfig().getLong("lease.ttl_millis", 15_000L);
+    }
+
+    private static String resourceOf(UUID uuid) {
+        return "account:" + uuid;
+    }
+
+    private long trustedUntil(long acquiredAt) {
+        return acquiredAt + ttlMillis * 2 / 3;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks if this server holds the write lease of specific account.
+     *
+     * @param uuid the uuid of the account
+     * @return true if changes of the account can be kept in memory
+     */
+    public boolean owns(UUID uuid) {
+        Long until = leases.get(uuid);
+        return until != null && System.currentTimeMillis() < until;
+    }
+
+    /**
+     * Tries to acquire the write lease of specific account. It blocks on the database.
+     *
+     * @param uuid the uuid of the account
+     * @return true if this server holds the lease now
+     */
+    public boolean acquire(UUID uuid) {
+        if (!enabled) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (!plugin.getDataStore().acquireLease(resourceOf(uuid), plugin.getServerId(), ttlMillis)) {
+            return false;
+        }
+        leases.put(uuid, trustedUntil(now));
+        revoked.remove(uuid);
+        UtilServer.consoleLog("Lease acquired: " + uuid);
+        return true;
+    }
+
+    /**
+     * Saves specific account to database, unless this server holds its lease, in which case it's saved by the next
+     * {@link #tick()}.
+     *
+     * @param account the account to save
+     */
+    public void save(Account account) {
+        ownership.readLock().lock();
+        try {
+            if (owns(account.getUuid())) {
+                dirty.put(account.getUuid(), account);
+                return;
+            }
+        } finally {
+            ownership.readLock().unlock();
+        }
+        plugin.getDataStore().saveAccount(account);
+    }
+
+    /**
+     * Saves all the specific accounts, in one batch for those whose leases this server doesn't hold.
+     *
+     * @param accounts the accounts to save
+     * @see #save(Account)
+     */
+    public void saveAll(Collection<Account> accounts) {
+        List<Account> writeThrough = new ArrayList<>(accounts.size());
+        ownership.readLock().lock();
+        try {
+            for (Account account : accounts) {
+                if (owns(account.getUuid())) {
+                    dirty.put(account.getUuid(), account);
+                } else {
+                    writeThrough.add(account);
+                }
+            }
+        } finally {
+            ownership.readLock().unlock();
+        }
+        if (!writeThrough.isEmpty()) {
+            plugin.getDataStore().saveAccounts(writeThrough);
+        }
+    }
+
+    /**
+     * Makes sure that specific account can be changed by this server.
+     * <p>
+     * If another server holds the lease of the account, it may have changes of the account not saved yet. In that
+     * case, this asks that server to save the account and give the lease up, and waits for it (bounded by the handoff
+     * timeout), then reloads the account if it's behind. Otherwise, it returns immediately.
+     * <p>
+     * The messages about who holds which player may have been missed (e.g. if this server started late), so the lease
+     * itself is looked up in database when they don't tell of any holder.
+     * <p>
+     * The main thread and the partitions of {@link TransactionEngine} never block here: the lease is looked up in
+     * background, and nobody else is assumed to hold it until found otherwise - saves are compare-and-swap, so a write
+     * behind a holder is re-applied rather than lost. If another server is known to hold the account, it's asked to
+     * give it up, and the write fails fast until the account is caught up, so that the caller can try again.
+     *
+     * @param account the account about to be changed
+     * @return true if the account can be changed now; false if the caller must not block and the account is held by
+     *     another server
+     */
+    public boolean prepareWrite(Account account) {
+        UUID uuid = account.getUuid();
+        if (!enabled || owns(uuid)) {
+            return true;
+        }
+        boolean mayBlock = !Bukkit.isPrimaryThread() && !TransactionEngine.isPartitionThread();
+        if (!mayBlock && catchingUp.contains(uuid)) {
+            return false;
+        }
+        if (!findHolder(uuid, mayBlock)) {
+            return true; // Nobody else writes behind it
+        }
+        plugin.getMessenger().sendLeaseRevoke(uuid);
+        if (!mayBlock) {
+            if (catchingUp.add(uuid)) {
+                plugin.getIoExecutor().execute(() -> {
+                    try {
+                        catchUp(account);
+                    } finally {
+                        catchingUp.remove(uuid);
+                    }
+                });
+            }
+            return false;
+        }
+        catchUp(account);
+        return true;
+    }
+
+    /**
+     * Waits for the holder of specific account to release it, bounded by the handoff timeout, then reloads the account
+     * if it's behind.
+     */
+    private void catchUp(Account account) {
+        UUID uuid = account.getUuid();
+        long releasedVersion = plugin.getAccountManager().getHandoffTracker().awaitRelease(uuid, plugin.getHandoffTimeout());
+        if (account.getVersion() < releasedVersion) {
+            plugin.getAccountManager().refreshAccounts(List.of(uuid));
+        }
+    }
+
+    /**
+     * Takes specific account over from the server holding its player, e.g. when the player is switching to this
+     * server.
+     * <p>
+     * The holder only gives the account up by itself when the player leaves it, which the proxy does after the player
+     * has joined here. So the holder is asked to save the account and give it up right away, as in
+     * {@link #prepareWrite(Account)}. It blocks until the account is released, bounded by the handoff timeout.
+     *
+     * @param uuid the uuid of the account
+     * @return the version of the account when it was released, or -1 if it's unknown
+     */
+    public long takeOver(UUID uuid) {
+        if (findHolder(uuid, true)) {
+            plugin.getMessenger().sendLeaseRevoke(uuid);
+        }
+        return plugin.getAccountManager().getHandoffTracker().awaitRelease(uuid, plugin.getHandoffTimeout());
+    }
+
+    /**
+     * Checks whether another server holds specific account, looking the lease up in database if neither the messages
+     * nor a recent lookup tell of any holder.
+     *
+     * @param mayBlock whether it may block on the database; if not, the lease is looked up in background and nobody
+     *                 is assumed to hold it for now
+     */
+    private boolean findHolder(UUID uuid, boolean mayBlock) {
+        HandoffTracker tracker = plugin.getAccountManager().getHandoffTracker();
+        if (tracker.isHeld(uuid)) {
+            return true;
+        }
+        if (!enabled) {
+            return false;
+        }
+        Long until = unheld.get(uuid);
+        if (until != null && System.currentTimeMillis() < until) {
+            return false; // A holder would have announced itself since
+        }
+        if (!mayBlock) {
+            if (lookingUp.add(uuid)) {
+                plugin.getIoExecutor().execute(() -> {
+                    try {
+                        findHolder(uuid, true);
+                    } finally {
+                        lookingUp.remove(uuid);
+                    }
+                });
+            }
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        @Nullable String owner = plugin.getDataStore().getLeaseOwner(resourceOf(uuid));
+        if (owner == null || owner.equals(plugin.getServerId())) {
+            unheld.put(uuid, now + ttlMillis);
+            return false;
+        }
+        tracker.acquired(owner, uuid); // So that its release is waited for
+        return true;
+    }
+
+    /**
+     * Gives up the lease of specific account because another server has to change it.
+     * <p>
+     * The account is saved first, then the release is announced so that the other server can go on. The lease is not
+     * taken back for one lease period, so that the other server has the time to write.
+     *
+     * @param uuid the uuid of the account
+     */
+    public void revoke(UUID uuid) {
+        @Nullable Account account = plugin.getAccountManager().getCachedAccount(uuid);
+        if (account == null) {
+            return; // Not held here - the sender will stop waiting at the timeout
+        }
+        revoked.put(uuid, System.currentTimeMillis());
+        release(account);
+        plugin.getMessenger().sendAccountReleased(uuid, account.getVersion());
+    }
+
+    /**
+     * Saves specific account, and gives up its lease if this server holds it. It blocks on the database.
+     *
+     * @param account the account to release
+     */
+    public void release(Account account) {
+        UUID uuid = account.getUuid();
+        boolean held;
+        ownership.writeLock().lock();
+        try {
+            held = leases.remove(uuid) != null;
+            dirty.remove(uuid);
+        } finally {
+            ownership.writeLock().unlock();
+        }
+        plugin.getDataStore().saveAccount(account);
+        if (held) {
+            plugin.getDataStore().releaseLeases(List.of(resourceOf(uuid)), plugin.getServerId());
+            UtilServer.consoleLog("Lease released: " + uuid);
+        }
+    }
+
+    /**
+     * Saves all the changes kept in memory in one batch.
+     */
+    public void flush() {
+        List<Account> pending = new ArrayList<>(dirty.size());
+        for (UUID uuid : dirty.keySet()) {
+            Account account = dirty.remove(uuid);
+            if (account != null) {
+                pending.add(account);
+            }
+        }
+        if (!pending.isEmpty()) {
+            plugin.getDataStore().saveAccounts(pending);
+        }
+    }
+
+    /**
+     * Saves the changes kept in memory, renews the leases held by this server, and takes back the leases of the
+     * players online on this server. It must run more often than the leases expire.
+     */
+    public void tick() {
+        flush();
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        unheld.values().removeIf(until -> now >= until);
+
+        // Renew what we hold - whatever can't be renewed is written through from now on
+        if (!leases.isEmpty()) {
+            Map<String, UUID> byResource = new HashMap<>(leases.size());
+            leases.keySet().forEach(uuid -> byResource.put(resourceOf(uuid), uuid));
+            Set<String> renewed = plugin.getDataStore().renewLeases(byResource.keySet(), plugin.getServerId(), ttlMillis);
+            byResource.forEach((resource, uuid) -> {
+                if (renewed.contains(resource)) {
+                    leases.computeIfPresent(uuid, (k, until) -> trustedUntil(now));
+                } else if (leases.remove(uuid) != null) {
+                    UtilServer.consoleLog("Lease lost: " + uuid);
+                }
+            });
+        }
+
+        // Take back the leases of online players
+        revoked.values().removeIf(at -> now - at >= ttlMillis);
+        for (Player player : Players.all()) {
+            UUID uuid = player.getUniqueId();
+            if (leases.containsKey(uuid) || revoked.containsKey(uuid) || !plugin.getAccountManager().cached(uuid)) {
+                continue;
+            }
+            if (acquire(uuid)) {
+                plugin.getMessenger().sendAccountAcquired(uuid); // Other servers have to ask us again before writing
+            }
+        }
+    }
+
+    /**
+     * Saves everything and gives up all the leases held by this server.
+     */
+    @Override public void close() {
+        List<String> resources = new ArrayList<>(leases.size());
+        ownership.writeLock().lock();
+        try {
+            leases.keySet().forEach(uuid -> resources.add(resourceOf(uuid)));
+            leases.clear();
+        } finally {
+            ownership.writeLock().unlock();
+        }
+        flush();
+        if (!resources.isEmpty()) {
+            plugin.getDataStore().releaseLeases(resources, plugin.getServerId());
+        }
+    }
+
+}
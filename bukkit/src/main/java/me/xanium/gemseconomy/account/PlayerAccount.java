@@ -4,19 +4,26 @@ import com.google.common.base.Preconditions;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
 import me.xanium.gemseconomy.api.Account;
 import me.xanium.gemseconomy.api.Currency;
+import me.xanium.gemseconomy.currency.CurrencyManager;
 import me.xanium.gemseconomy.event.GemsPostTransactionEvent;
 import me.xanium.gemseconomy.event.GemsPreTransactionEvent;
-import me.xanium.gemseconomy.message.Action;
+import me.xanium.gemseconomy.message.AccountDelta;
 import me.xanium.gemseconomy.utils.TransactionType;
+import me.xanium.gemseconomy.utils.UtilServer;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.DoubleUnaryOperator;
 
 public class PlayerAccount implements Account {
     private final @NonNull UUID uuid;
@@ -26,6 +33,12 @@ public class PlayerAccount implements Account {
     private boolean canReceiveCurrency = true;
 
     private final Map<Currency, ReadWriteLock> locks;
+    private final AtomicLong version; // bumped on every change, used to apply sync messages in order
+
+    // The state last loaded from or saved to database, which is where a save expects to find it; guarded by this
+    private long savedVersion;
+    private final @NonNull Map<Currency, Double> savedBalances;
+    private final @NonNull Map<Currency, Double> savedHeapBalances;
 
     public PlayerAccount(@NonNull UUID uuid) {
         Preconditions.checkNotNull(uuid, "uuid");
@@ -33,6 +46,9 @@ public class PlayerAccount implements Account {
         this.balances = new HashMap<>(8, 1f);
         this.heapBalances = new HashMap<>(8, 1f);
         this.locks = new ConcurrentHashMap<>(8, 1f); // Ensure thread safety
+        this.version = new AtomicLong();
+        this.savedBalances = new HashMap<>(8, 1f);
+        this.savedHeapBalances = new HashMap<>(8, 1f);
     }
 
     public PlayerAccount(@NonNull UUID uuid, @Nullable String nickname) {
@@ -43,29 +59,45 @@ public class PlayerAccount implements Account {
     @Override
     public boolean withdraw(@NonNull Currency currency, double amount) {
         Preconditions.checkNotNull(currency, "currency");
-        GemsPreTransactionEvent preEvent = new GemsPreTransactionEvent(currency, this, amount, TransactionType.WITHDRAW);
-        if (!preEvent.callEvent())
+        if (!callPreTransaction(currency, amount, TransactionType.WITHDRAW))
+            return false;
+        if (!engine().call(uuid, () -> withdraw(currency, amount, true)))
             return false;
+        callPostTransaction(currency, amount, TransactionType.WITHDRAW);
+        return true;
+    }
 
+    /**
+     * Withdraws specific amount from this account, without firing any event (see {@link #callPreTransaction}).
+     *
+     * @param currency the currency to withdraw from
+     * @param amount   the amount to withdraw
+     * @param commit   whether to save the change immediately; if false, the caller is responsible for saving it
+     * @return true if the withdrawal succeeded
+     * @see AccountManager#withdrawAll(Map, Currency)
+     */
+    boolean withdraw(@NonNull Currency currency, double amount, boolean commit) {
+        Preconditions.checkNotNull(currency, "currency");
+        if (!GemsEconomyPlugin.getInstance().getAccountManager().getLeaseKeeper().prepareWrite(this)) // Catch up with the server writing behind it, if any
+            return false; // Held by another server, and this thread must not wait for it
         if (!hasEnough(currency, amount))
             return false;
 
         ReadWriteLock lock = locks.computeIfAbsent(currency, k -> new ReentrantReadWriteLock());
         lock.writeLock().lock();
         try {
-            double finalAmount = getBalance(currency) - amount;
-            double cappedAmount = Math.min(finalAmount, currency.getMaximumBalance());
-            balances.put(currency, cappedAmount); // Update balance
-            GemsEconomyPlugin.getInstance().getDataStore().saveAccount(this); // Save it to database
-            GemsEconomyPlugin.getInstance().getMessenger().sendMessage(Action.UPDATE_ACCOUNT, getUuid()); // Sync between servers
-            GemsEconomyPlugin.getInstance().getEconomyLogger().log("[WITHDRAW] Account: " + getDisplayName() + " were withdrawn: " + currency.simpleFormat(amount) + " and now has " + currency.simpleFormat(cappedAmount));
+            long newVersion = commit(currency, balance -> Math.min(balance - amount, currency.getMaximumBalance()), 0D); // Update balance
+            double cappedAmount = getBalance(currency);
+            if (commit) {
+                GemsEconomyPlugin.getInstance().getAccountManager().getLeaseKeeper().save(this); // Save it to database, or later if leased
+            }
+            GemsEconomyPlugin.getInstance().getMessenger().sendAccountUpdate(AccountDelta.of(this, currency, newVersion)); // Sync between servers
+            GemsEconomyPlugin.getInstance().getBalanceTopRepository().onBalanceChanged(this, currency, cappedAmount); // Keep the leaderboard live
+            GemsEconomyPlugin.getInstance().getEconomyLogger().log(() -> "[WITHDRAW] Account: " + getDisplayName() + " were withdrawn: " + currency.simpleFormat(amount) + " and now has " + currency.simpleFormat(cappedAmount));
         } finally {
             lock.writeLock().unlock();
         }
 
-        GemsPostTransactionEvent postEvent = new GemsPostTransactionEvent(currency, this, amount, TransactionType.WITHDRAW);
-        postEvent.callEvent();
-
         return true;
     }
 
@@ -74,52 +106,104 @@ public class PlayerAccount implements Account {
         Preconditions.checkNotNull(currency, "currency");
         if (!canReceiveCurrency)
             return false;
+        if (!callPreTransaction(currency, amount, TransactionType.DEPOSIT))
+            return false;
+        if (!engine().call(uuid, () -> deposit(currency, amount, true)))
+            return false;
+        callPostTransaction(currency, amount, TransactionType.DEPOSIT);
+        return true;
+    }
 
-        GemsPreTransactionEvent preEvent = new GemsPreTransactionEvent(currency, this, amount, TransactionType.DEPOSIT);
-        if (!preEvent.callEvent())
+    /**
+     * Deposits specific amount into this account, without firing any event (see {@link #callPreTransaction}).
+     *
+     * @param currency the currency to deposit
+     * @param amount   the amount to deposit
+     * @param commit   whether to save the change immediately; if false, the caller is responsible for saving it
+     * @return true if the deposit succeeded
+     * @see AccountManager#depositAll(Map, Currency)
+     */
+    boolean deposit(@NonNull Currency currency, double amount, boolean commit) {
+        Preconditions.checkNotNull(currency, "currency");
+        if (!canReceiveCurrency)
             return false;
 
+        if (!GemsEconomyPlugin.getInstance().getAccountManager().getLeaseKeeper().prepareWrite(this)) // Catch up with the server writing behind it, if any
+            return false; // Held by another server, and this thread must not wait for it
         ReadWriteLock lock = locks.computeIfAbsent(currency, k -> new ReentrantReadWriteLock());
         lock.writeLock().lock();
         try {
-            double finalAmount = getBalance(currency) + amount;
-            double cappedAmount = Math.min(finalAmount, currency.getMaximumBalance());
-            balances.put(currency, cappedAmount); // Update balance
-            heapBalances.merge(currency, amount, Double::sum); // Accumulate deposited amount
-            GemsEconomyPlugin.getInstance().getDataStore().saveAccount(this); // Save it to database
-            GemsEconomyPlugin.getInstance().getMessenger().sendMessage(Action.UPDATE_ACCOUNT, getUuid()); // Sync between servers
-            GemsEconomyPlugin.getInstance().getEconomyLogger().log("[DEPOSIT] Account: " + getDisplayName() + " were deposited: " + currency.simpleFormat(amount) + " and now has " + currency.simpleFormat(cappedAmount));
+            long newVersion = commit(currency, balance -> Math.min(balance + amount, currency.getMaximumBalance()), amount); // Update balance, and accumulate deposited amount
+            double cappedAmount = getBalance(currency);
+            double heapBalance = getHeapBalance(currency);
+            if (commit) {
+                GemsEconomyPlugin.getInstance().getAccountManager().getLeaseKeeper().save(this); // Save it to database, or later if leased
+            }
+            GemsEconomyPlugin.getInstance().getMessenger().sendAccountUpdate(AccountDelta.of(this, currency, newVersion)); // Sync between servers
+            GemsEconomyPlugin.getInstance().getBalanceTopRepository().onBalanceChanged(this, currency, cappedAmount); // Keep the leaderboard live
+            GemsEconomyPlugin.getInstance().getBalanceTopRepository().onHeapBalanceChanged(this, currency, heapBalance);
+            GemsEconomyPlugin.getInstance().getEconomyLogger().log(() -> "[DEPOSIT] Account: " + getDisplayName() + " were deposited: " + currency.simpleFormat(amount) + " and now has " + currency.simpleFormat(cappedAmount));
         } finally {
             lock.writeLock().unlock();
         }
 
-        GemsPostTransactionEvent postEvent = new GemsPostTransactionEvent(currency, this, amount, TransactionType.DEPOSIT);
-        postEvent.callEvent();
-
         return true;
     }
 
     @Override
     public void setBalance(@NonNull Currency currency, double amount) {
         Preconditions.checkNotNull(currency, "currency");
-        GemsPreTransactionEvent preEvent = new GemsPreTransactionEvent(currency, this, amount, TransactionType.SET);
-        if (!preEvent.callEvent())
+        if (!callPreTransaction(currency, amount, TransactionType.SET))
+            return;
+        if (!engine().call(uuid, () -> setBalanceNow(currency, amount)))
             return;
+        callPostTransaction(currency, amount, TransactionType.SET);
+    }
 
+    private boolean setBalanceNow(@NonNull Currency currency, double amount) {
+        if (!GemsEconomyPlugin.getInstance().getAccountManager().getLeaseKeeper().prepareWrite(this)) { // Catch up with the server writing behind it, if any
+            UtilServer.consoleLog("§cBalance not set, as account " + getDisplayName() + " is held by another server: " + currency.getName());
+            return false;
+        }
         ReadWriteLock lock = locks.computeIfAbsent(currency, k -> new ReentrantReadWriteLock());
         lock.writeLock().lock();
         try {
             double cappedAmount = Math.min(amount, currency.getMaximumBalance());
-            balances.put(currency, cappedAmount); // Update balance
-            GemsEconomyPlugin.getInstance().getDataStore().saveAccount(this); // Save it to database
-            GemsEconomyPlugin.getInstance().getMessenger().sendMessage(Action.UPDATE_ACCOUNT, getUuid()); // Sync between servers
-            GemsEconomyPlugin.getInstance().getEconomyLogger().log("[BALANCE SET] Account: " + getDisplayName() + " were set to: " + currency.simpleFormat(cappedAmount));
+            long newVersion = commit(currency, balance -> cappedAmount, 0D); // Update balance
+            GemsEconomyPlugin.getInstance().getAccountManager().getLeaseKeeper().save(this); // Save it to database, or later if leased
+            GemsEconomyPlugin.getInstance().getMessenger().sendAccountUpdate(AccountDelta.of(this, currency, newVersion)); // Sync between servers
+            GemsEconomyPlugin.getInstance().getBalanceTopRepository().onBalanceChanged(this, currency, cappedAmount); // Keep the leaderboard live
+            GemsEconomyPlugin.getInstance().getEconomyLogger().log(() -> "[BALANCE SET] Account: " + getDisplayName() + " were set to: " + currency.simpleFormat(cappedAmount));
         } finally {
             lock.writeLock().unlock();
         }
+        return true;
+    }
 
-        GemsPostTransactionEvent postEvent = new GemsPostTransactionEvent(currency, this, amount, TransactionType.SET);
-        postEvent.callEvent();
+    /**
+     * Gives back specific amount withdrawn by a transfer whose deposit failed.
+     * <p>
+     * Unlike a deposit, it can't be cancelled, it's not capped by the maximum balance, and it doesn't count in the
+     * accumulated balance, as it only restores what was there before the transfer.
+     *
+     * @param currency the currency of the transfer
+     * @param amount   the amount to give back
+     * @see TransactionEngine#transfer(PlayerAccount, PlayerAccount, Currency, double)
+     */
+    void refund(@NonNull Currency currency, double amount) {
+        Preconditions.checkNotNull(currency, "currency");
+        ReadWriteLock lock = locks.computeIfAbsent(currency, k -> new ReentrantReadWriteLock());
+        lock.writeLock().lock();
+        try {
+            long newVersion = commit(currency, balance -> balance + amount, 0D); // Update balance
+            double finalAmount = getBalance(currency);
+            GemsEconomyPlugin.getInstance().getAccountManager().getLeaseKeeper().save(this); // Save it to database, or later if leased
+            GemsEconomyPlugin.getInstance().getMessenger().sendAccountUpdate(AccountDelta.of(this, currency, newVersion)); // Sync between servers
+            GemsEconomyPlugin.getInstance().getBalanceTopRepository().onBalanceChanged(this, currency, finalAmount); // Keep the leaderboard live
+            GemsEconomyPlugin.getInstance().getEconomyLogger().log(() -> "[REFUND] Account: " + getDisplayName() + " were given back: " + currency.simpleFormat(amount) + " and now has " + currency.simpleFormat(finalAmount));
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -134,6 +218,128 @@ public class PlayerAccount implements Account {
         }
     }
 
+    @Override
+    public double getAvailableBalance(@NonNull Currency currency) {
+        Preconditions.checkNotNull(currency, "currency");
+        ReadWriteLock lock = locks.computeIfAbsent(currency, k -> new ReentrantReadWriteLock());
+        lock.readLock().lock();
+        try {
+            return getBalance(currency) - getHeldAmount(currency);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public @Nullable UUID reserve(@NonNull Currency currency, double amount, @NonNull Duration ttl) {
+        return engine().call(uuid, () -> reserveNow(currency, amount, ttl));
+    }
+
+    private @Nullable UUID reserveNow(@NonNull Currency currency, double amount, @NonNull Duration ttl) {
+        Preconditions.checkNotNull(currency, "currency");
+        Preconditions.checkNotNull(ttl, "ttl");
+        Preconditions.checkArgument(amount > 0, "amount > 0");
+
+        BalanceHold hold;
+        ReadWriteLock lock = locks.computeIfAbsent(currency, k -> new ReentrantReadWriteLock());
+        lock.writeLock().lock();
+        try {
+            if (getAvailableBalance(currency) < amount)
+                return null;
+            hold = new BalanceHold(UUID.randomUUID(), currency, amount, System.currentTimeMillis() + ttl.toMillis());
+            holds().put(uuid, hold); // Only in memory - nothing is changed in database until it's captured
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        GemsEconomyPlugin.getInstance().getAccountManager().getHoldTimer().schedule(this, hold);
+        GemsEconomyPlugin.getInstance().getEconomyLogger().log(() -> "[RESERVE] Account: " + getDisplayName() + " reserved: " + currency.simpleFormat(amount) + " (hold: " + hold.id() + ", ttl: " + ttl.toSeconds() + "s)");
+
+        return hold.id();
+    }
+
+    @Override
+    public boolean capture(@NonNull UUID holdId) {
+        Preconditions.checkNotNull(holdId, "holdId");
+        BalanceHold hold = holds().get(uuid, holdId);
+        return hold != null && capture(holdId, hold.amount());
+    }
+
+    @Override
+    public boolean capture(@NonNull UUID holdId, double amount) {
+        Preconditions.checkNotNull(holdId, "holdId");
+        BalanceHold hold = holds().get(uuid, holdId);
+        if (hold == null)
+            return false;
+        Preconditions.checkArgument(amount >= 0 && amount <= hold.amount(), "0 <= amount <= reserved amount");
+
+        Currency currency = hold.currency();
+        if (!callPreTransaction(currency, amount, TransactionType.WITHDRAW))
+            return false;
+        if (!engine().call(uuid, () -> captureNow(holdId, hold, amount)))
+            return false;
+        callPostTransaction(currency, amount, TransactionType.WITHDRAW);
+        return true;
+    }
+
+    private boolean captureNow(@NonNull UUID holdId, @NonNull BalanceHold hold, double amount) {
+        Currency currency = hold.currency();
+        if (!GemsEconomyPlugin.getInstance().getAccountManager().getLeaseKeeper().prepareWrite(this)) // Catch up with the server writing behind it, if any
+            return false; // Held by another server, and this thread must not wait for it
+        ReadWriteLock lock = locks.computeIfAbsent(currency, k -> new ReentrantReadWriteLock());
+        lock.writeLock().lock();
+        try {
+            if (getBalance(currency) < amount)
+                return false; // The balance was lowered behind the hold (e.g. by another server, or cleared); the hold is kept until it expires
+            if (holds().remove(uuid, holdId, hold) == null)
+                return false; // Settled or expired by another thread in the meantime
+            long newVersion = commit(currency, balance -> balance - amount, 0D); // Update balance
+            double finalAmount = getBalance(currency);
+            GemsEconomyPlugin.getInstance().getAccountManager().getLeaseKeeper().save(this); // Save it to database, or later if leased
+            GemsEconomyPlugin.getInstance().getMessenger().sendAccountUpdate(AccountDelta.of(this, currency, newVersion)); // Sync between servers
+            GemsEconomyPlugin.getInstance().getBalanceTopRepository().onBalanceChanged(this, currency, finalAmount); // Keep the leaderboard live
+            GemsEconomyPlugin.getInstance().getEconomyLogger().log(() -> "[CAPTURE] Account: " + getDisplayName() + " were withdrawn: " + currency.simpleFormat(amount) + " (hold: " + holdId + ") and now has " + currency.simpleFormat(finalAmount));
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean release(@NonNull UUID holdId) {
+        Preconditions.checkNotNull(holdId, "holdId");
+        BalanceHold hold = holds().remove(uuid, holdId, null);
+        if (hold == null)
+            return false;
+        GemsEconomyPlugin.getInstance().getEconomyLogger().log(() -> "[RELEASE] Account: " + getDisplayName() + " released: " + hold.currency().simpleFormat(hold.amount()) + " (hold: " + holdId + ")");
+        return true;
+    }
+
+    /**
+     * Releases specific hold if it has expired.
+     * <p>
+     * This method is specifically used by {@link HoldTimerWheel}.
+     *
+     * @param holdId the unique ID of the hold
+     */
+    void expireHold(@NonNull UUID holdId) {
+        BalanceHold hold = holds().get(uuid, holdId);
+        if (hold == null)
+            return; // Already settled
+        if (!hold.expired(System.currentTimeMillis())) {
+            GemsEconomyPlugin.getInstance().getAccountManager().getHoldTimer().schedule(this, hold);
+            return;
+        }
+        if (holds().remove(uuid, holdId, hold) != null) {
+            GemsEconomyPlugin.getInstance().getEconomyLogger().log(() -> "[EXPIRE] Account: " + getDisplayName() + " released: " + hold.currency().simpleFormat(hold.amount()) + " (hold: " + holdId + ")");
+        }
+    }
+
+    private double getHeldAmount(@NonNull Currency currency) {
+        return holds().getHeldAmount(uuid, currency);
+    }
+
     @Override
     public double getBalance(@NonNull String identifier) {
         Preconditions.checkNotNull(identifier, "identifier");
@@ -180,6 +386,120 @@ public class PlayerAccount implements Account {
         return heapBalances;
     }
 
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version.set(version);
+    }
+
+    /**
+     * Applies the balances carried by specific delta to this account.
+     * <p>
+     * This method is specifically used by {@link me.xanium.gemseconomy.message.Messenger}.
+     *
+     * @param delta the delta received from another server
+     * @return true if this account is up-to-date after this call; false if there is a version gap, a conflict (or the
+     *     delta refers to unknown currencies) and this account must be reloaded from database
+     */
+    public boolean applyDelta(@NonNull AccountDelta delta) {
+        Preconditions.checkArgument(uuid.equals(delta.account()), "delta of another account");
+        if (delta.isReload())
+            return false;
+        synchronized (this) {
+            long local = version.get();
+            if (local == delta.toVersion())
+                return matches(delta); // Otherwise both servers made this version at the same time - the one which lost the save re-applies its changes, so reload
+            if (local > delta.toVersion())
+                return true; // Already has the changes
+            if (local < delta.fromVersion())
+                return false; // Missed some changes in between
+            if (local != savedVersion)
+                return false; // Our own changes are not saved yet - reloading keeps them, overwriting would lose them
+
+            CurrencyManager currencyManager = GemsEconomyPlugin.getInstance().getCurrencyManager();
+            for (UUID currencyId : delta.balances().keySet()) {
+                if (currencyManager.getCurrency(currencyId) == null)
+                    return false;
+            }
+            for (Map.Entry<UUID, Double> entry : delta.balances().entrySet()) {
+                Currency currency = currencyManager.getCurrency(entry.getKey());
+                balances.put(currency, entry.getValue());
+                savedBalances.put(currency, entry.getValue());
+                Double heapBalance = delta.heapBalances().get(entry.getKey());
+                if (heapBalance != null) {
+                    heapBalances.put(currency, heapBalance);
+                    savedHeapBalances.put(currency, heapBalance);
+                }
+            }
+            version.set(delta.toVersion());
+            savedVersion = delta.toVersion(); // The other server saved it
+            return true;
+        }
+    }
+
+    /**
+     * Checks if this account has the balances carried by specific delta.
+     */
+    private boolean matches(@NonNull AccountDelta delta) {
+        CurrencyManager currencyManager = GemsEconomyPlugin.getInstance().getCurrencyManager();
+        for (Map.Entry<UUID, Double> entry : delta.balances().entrySet()) {
+            Currency currency = currencyManager.getCurrency(entry.getKey());
+            if (currency == null || Double.compare(balances.getOrDefault(currency, currency.getDefaultBalance()), entry.getValue()) != 0)
+                return false; // Not through getBalance(), as the caller holds the monitor
+        }
+        return true;
+    }
+
+    /**
+     * Removes specific currency from this account, without saving or broadcasting it.
+     * <p>
+     * This method is specifically used by {@link me.xanium.gemseconomy.message.Messenger}, as the origin server
+     * already did it in the database.
+     *
+     * @param currency the deleted currency
+     */
+    public void dropCurrency(@NonNull Currency currency) {
+        ReadWriteLock lock = locks.computeIfAbsent(currency, k -> new ReentrantReadWriteLock());
+        lock.writeLock().lock();
+        try {
+            synchronized (this) {
+                balances.remove(currency);
+                savedBalances.remove(currency);
+                version.incrementAndGet(); // The origin server bumped it in the database as well
+                savedVersion++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the balance of specific currency to its default value, without saving or broadcasting it.
+     * <p>
+     * This method is specifically used by {@link me.xanium.gemseconomy.message.Messenger}, as the origin server
+     * already did it in the database.
+     *
+     * @param currency the cleared currency
+     */
+    public void resetBalance(@NonNull Currency currency) {
+        ReadWriteLock lock = locks.computeIfAbsent(currency, k -> new ReentrantReadWriteLock());
+        lock.writeLock().lock();
+        try {
+            synchronized (this) {
+                balances.put(currency, currency.getDefaultBalance());
+                savedBalances.put(currency, currency.getDefaultBalance());
+                version.incrementAndGet(); // The origin server bumped it in the database as well
+                savedVersion++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     @Override
     public @NonNull String getDisplayName() {
         return nickname != null ? nickname : uuid.toString();
@@ -212,7 +532,7 @@ public class PlayerAccount implements Account {
         ReadWriteLock lock = locks.computeIfAbsent(currency, k -> new ReentrantReadWriteLock());
         lock.readLock().lock();
         try {
-            return getBalance(currency) >= amount;
+            return getAvailableBalance(currency) >= amount;
         } finally {
             lock.readLock().unlock();
         }
@@ -245,4 +565,168 @@ public class PlayerAccount implements Account {
     public int hashCode() {
         return uuid.hashCode();
     }*/
+
+    /**
+     * Fires the event before a change of this account.
+     * <p>
+     * Events are always fired on the thread which asks for the change, before and after it's applied. The changes
+     * applied by the partitions of {@link TransactionEngine} never fire events themselves.
+     *
+     * @return false if the change is cancelled
+     */
+    boolean callPreTransaction(@NonNull Currency currency, double amount, @NonNull TransactionType type) {
+        return new GemsPreTransactionEvent(currency, this, amount, type).callEvent();
+    }
+
+    /**
+     * Fires the event after a change of this account.
+     *
+     * @see #callPreTransaction(Currency, double, TransactionType)
+     */
+    void callPostTransaction(@NonNull Currency currency, double amount, @NonNull TransactionType type) {
+        new GemsPostTransactionEvent(currency, this, amount, type).callEvent();
+    }
+
+    /**
+     * Updates the balance of specific currency and bumps the version, as one step with respect to {@link #snapshot()}
+     * and {@link #rebase(Account)}.
+     * <p>
+     * The new balance is computed from the current one in that step, so that a concurrent rebase is never overwritten
+     * by a balance read before it.
+     *
+     * @param currency  the currency to update
+     * @param update    computes the new balance from the current one
+     * @param deposited the amount to add to the accumulated balance
+     * @return the new version
+     */
+    private synchronized long commit(@NonNull Currency currency, @NonNull DoubleUnaryOperator update, double deposited) {
+        balances.put(currency, update.applyAsDouble(balances.computeIfAbsent(currency, Currency::getDefaultBalance)));
+        if (deposited != 0D) {
+            heapBalances.merge(currency, deposited, Double::sum);
+        }
+        return version.incrementAndGet();
+    }
+
+    /**
+     * Takes the state of this account to save, along with the version it's expected to replace in database.
+     * <p>
+     * This method is specifically used by {@link me.xanium.gemseconomy.data.DataStorage}.
+     *
+     * @return the state of this account
+     */
+    public synchronized @NonNull Snapshot snapshot() {
+        return new Snapshot(version.get(), savedVersion, Map.copyOf(balances), Map.copyOf(heapBalances));
+    }
+
+    /**
+     * Records that specific state of this account is now in database, unless a newer one already is.
+     * <p>
+     * This method is specifically used by {@link me.xanium.gemseconomy.data.DataStorage}.
+     *
+     * @param snapshot the saved state
+     */
+    public synchronized void markSaved(@NonNull Snapshot snapshot) {
+        if (snapshot.version() < savedVersion)
+            return;
+        savedVersion = snapshot.version();
+        savedBalances.clear();
+        savedBalances.putAll(snapshot.balances());
+        savedHeapBalances.clear();
+        savedHeapBalances.putAll(snapshot.heapBalances());
+    }
+
+    /**
+     * Records that the current state of this account is the one in database, e.g. after it's loaded.
+     * <p>
+     * This method is specifically used by {@link me.xanium.gemseconomy.data.DataStorage}.
+     */
+    public synchronized void markSaved() {
+        savedVersion = version.get();
+        savedBalances.clear();
+        savedBalances.putAll(balances);
+        savedHeapBalances.clear();
+        savedHeapBalances.putAll(heapBalances);
+    }
+
+    /**
+     * Checks whether this account has changes which are not in database yet.
+     */
+    public synchronized boolean isUnsaved() {
+        return version.get() != savedVersion;
+    }
+
+    /**
+     * Moves this account onto the state stored in database, and re-applies the changes not saved yet on top of it.
+     * <p>
+     * The changes are re-applied as differences from the state they were made on, so that the changes another server
+     * saved in the meantime are kept as well. A currency removed here stays removed. If there are changes to re-apply,
+     * the account gets a version newer than both, so that the next save replaces the stored one.
+     * <p>
+     * This method is specifically used by {@link me.xanium.gemseconomy.data.DataStorage}, when loading an account which
+     * is already cached, or when a save finds that another server saved the account first.
+     *
+     * @param stored the account as stored in database
+     */
+    public synchronized void rebase(@NonNull Account stored) {
+        boolean unsaved = isUnsaved();
+        Set<Currency> currencies = new HashSet<>(stored.getBalances().keySet());
+        currencies.addAll(balances.keySet());
+        for (Currency currency : currencies) {
+            Double storedBalance = stored.getBalances().get(currency);
+            Double current = balances.get(currency);
+            Double saved = savedBalances.get(currency);
+            if (!unsaved) {
+                if (storedBalance != null) {
+                    balances.put(currency, storedBalance);
+                } else {
+                    balances.remove(currency);
+                }
+            } else if (current == null && saved != null) {
+                balances.remove(currency); // Removed here
+            } else {
+                double base = storedBalance != null ? storedBalance : currency.getDefaultBalance();
+                double change = (current != null ? current : base) - (saved != null ? saved : currency.getDefaultBalance());
+                balances.put(currency, base + change);
+            }
+
+            double storedHeap = stored.getHeapBalances().getOrDefault(currency, 0D);
+            double heapChange = unsaved ? heapBalances.getOrDefault(currency, 0D) - savedHeapBalances.getOrDefault(currency, 0D) : 0D;
+            heapBalances.put(currency, storedHeap + heapChange);
+        }
+        canReceiveCurrency = stored.canReceiveCurrency();
+
+        savedBalances.clear();
+        savedBalances.putAll(stored.getBalances());
+        savedHeapBalances.clear();
+        savedHeapBalances.putAll(stored.getHeapBalances());
+        savedVersion = stored.getVersion();
+        version.set(unsaved ? Math.max(version.get(), savedVersion) + 1 : savedVersion);
+    }
+
+    /**
+     * The state of an account taken to save it.
+     *
+     * @param version       the version of the state
+     * @param savedVersion  the version expected in database, which the state replaces
+     * @param balances      the balances
+     * @param heapBalances  the accumulated balances
+     */
+    public record Snapshot(long version, long savedVersion, @NonNull Map<Currency, Double> balances, @NonNull Map<Currency, Double> heapBalances) {
+    }
+
+    /**
+     * All the changes of this account are routed through the engine, so that they're applied by one thread if it's
+     * enabled.
+     */
+    private static TransactionEngine engine() {
+        return GemsEconomyPlugin.getInstance().getAccountManager().getTransactionEngine();
+    }
+
+    /**
+     * The holds of this account are kept outside of it, so that they survive when the account is reloaded.
+     */
+    private static HoldRegistry holds() {
+        return GemsEconomyPlugin.getInstance().getAccountManager().getHolds();
+    }
+
 }
@@ -0,0 +1,256 @@
+package me.xanium.gemseconomy.account;
+
+import me.lucko.helper.terminable.Terminable;
+import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.api.Currency;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies the changes of accounts on a fixed number of single-threaded partitions, chosen by the account UUID.
+ * <p>
+ * All changes of an account are applied one after another by the same thread, so the locks of the account are never
+ * contended, and the latency of a change only depends on the queue of its partition. Each partition takes its work
+ * from a bounded ring buffer. When a buffer is full, the caller applies the change by itself - the account locks are
+ * kept for that reason, and for the synchronous changes made from inside another partition (e.g. by an event
+ * listener), which must never wait for it.
+ * <p>
+ * When the engine is disabled, every change is simply applied by the caller.
+ */
+@DefaultQualifier(NonNull.class)
+public class TransactionEngine implements Terminable {
+
+    private final Logger logger;
+    private final @Nullable Partition[] partitions;
+
+    // --- Metrics ---
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    public TransactionEngine(GemsEconomyPlugin plugin) {
+        this.logger = plugin.getLogger();
+        if (!plugin.getConfig().getBoolean("engine.enabled", false)) {
+            this.partitions = null;
+            return;
+        }
+        int count = plugin.getConfig().getInt("engine.partitions", 0);
+        if (count <= 0) {
+            count = Runtime.getRuntime().availableProcessors();
+        }
+        int bufferSize = plugin.getConfig().getInt("engine.buffer_size", 4096);
+        this.partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            this.partitions[i] = new Partition("GemsEconomy Partition " + i, bufferSize, logger);
+        }
+    }
+
+    public boolean isEnabled() {
+        return partitions != null;
+    }
+
+    /**
+     * Checks whether the current thread is a partition, which must never block on anything but its own work.
+     */
+    public static boolean isPartitionThread() {
+        return Thread.currentThread() instanceof PartitionThread;
+    }
+
+    /**
+     * Applies a change of specific account on its partition.
+     *
+     * @param account  the uuid of the account
+     * @param mutation the change to apply
+     * @return a future completed with the result of the change, on the partition thread
+     */
+    public <T> CompletableFuture<T> submit(UUID account, Supplier<T> mutation) {
+        Partition partition = partitionOf(account);
+        if (partition == null || partition.isCurrentThread()) {
+            return runNow(mutation);
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        boolean queued = partition.offer(() -> {
+            try {
+                future.complete(mutation.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        if (!queued) {
+            callerRuns.incrementAndGet();
+            return runNow(mutation); // Full - don't let the caller wait for it
+        }
+        submitted.incrementAndGet();
+        return future;
+    }
+
+    /**
+     * Applies a change of specific account on its partition, and waits for the result.
+     * <p>
+     * It's how the synchronous methods of {@link PlayerAccount} route themselves.
+     *
+     * @param account  the uuid of the account
+     * @param mutation the change to apply
+     * @return the result of the change
+     */
+    public <T> T call(UUID account, Supplier<T> mutation) {
+        if (partitions == null || Thread.currentThread() instanceof PartitionThread) {
+            return mutation.get(); // A partition must never wait for another one
+        }
+        return submit(account, mutation).join();
+    }
+
+    /**
+     * Moves specific amount from an account to another.
+     * <p>
+     * The transfer is made in steps, each on the partition of the account it changes: the amount is first withdrawn
+     * from the source account, then deposited into the target account, and given back to the source account if the
+     * deposit failed. Since nothing is credited before it's debited, a failed step never creates money. No partition
+     * ever waits for another one.
+     * <p>
+     * The steps don't fire any event, as they may run on the partitions - the caller fires them instead, see
+     * {@link AccountManager#transfer}.
+     *
+     * @param from     the account to withdraw from
+     * @param to       the account to deposit into
+     * @param currency the currency to transfer
+     * @param amount   the amount to transfer
+     * @return a future completed with the outcome of the transfer
+     */
+    public CompletableFuture<TransferResult> transfer(PlayerAccount from, PlayerAccount to, Currency currency, double amount) {
+        return submit(from.getUuid(), () -> from.withdraw(currency, amount, true)).thenCompose(withdrawn -> {
+            if (!withdrawn) {
+                return CompletableFuture.completedFuture(TransferResult.WITHDRAW_FAILED); // Insufficient funds, or cancelled
+            }
+            return submit(to.getUuid(), () -> to.deposit(currency, amount, true))
+                .exceptionally(e -> {
+                    logger.log(Level.SEVERE, "Failed to deposit into account " + to.getUuid() + ", refunding " + from.getUuid(), e);
+                    return false;
+                })
+                .thenCompose(deposited -> {
+                    if (deposited) {
+                        return CompletableFuture.completedFuture(TransferResult.SUCCESS);
+                    }
+                    return submit(from.getUuid(), () -> {
+                        from.refund(currency, amount);
+                        return TransferResult.DEPOSIT_FAILED;
+                    });
+                });
+        });
+    }
+
+    private @Nullable Partition partitionOf(UUID account) {
+        if (partitions == null) {
+            return null;
+        }
+        int hash = account.hashCode();
+        hash ^= hash >>> 16; // Spread the higher bits, as UUIDs of one kind may only differ there
+        return partitions[Math.floorMod(hash, partitions.length)];
+    }
+
+    private static <T> CompletableFuture<T> runNow(Supplier<T> mutation) {
+        try {
+            return CompletableFuture.completedFuture(mutation.get());
+        } catch (Throwable e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public int getPartitionCount() {
+        return partitions == null ? 0 : partitions.length;
+    }
+
+    /**
+     * @return the number of changes waiting on all partitions
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        if (partitions != null) {
+            for (Partition partition : partitions) {
+                depth += partition.ring.size();
+            }
+        }
+        return depth;
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * @return the number of changes applied by their callers because the partition was full
+     */
+    public long getCallerRuns() {
+        return callerRuns.get();
+    }
+
+    @Override public void close() {
+        if (partitions == null) {
+            return;
+        }
+        for (Partition partition : partitions) {
+            partition.running = false;
+        }
+        try {
+            for (Partition partition : partitions) {
+                partition.thread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class PartitionThread extends Thread {
+        PartitionThread(Runnable target, String name) {
+            super(target, name);
+            setDaemon(true);
+        }
+    }
+
+    private static final class Partition implements Runnable {
+        private final ArrayBlockingQueue<Runnable> ring;
+        private final Thread thread;
+        private final Logger logger;
+        private volatile boolean running = true;
+
+        Partition(String name, int bufferSize, Logger logger) {
+            this.ring = new ArrayBlockingQueue<>(bufferSize);
+            this.logger = logger;
+            this.thread = new PartitionThread(this, name);
+            this.thread.start();
+        }
+
+        boolean offer(Runnable task) {
+            return running && ring.offer(task);
+        }
+
+        boolean isCurrentThread() {
+            return Thread.currentThread() == thread;
+        }
+
+        @Override public void run() {
+            while (running || !ring.isEmpty()) {
+                try {
+                    Runnable task = ring.poll(100, TimeUnit.MILLISECONDS);
+                    if (task != null) {
+                        task.run();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Throwable e) {
+                    logger.log(Level.SEVERE, "Uncaught exception on " + thread.getName(), e);
+                }
+            }
+        }
+    }
+
+}
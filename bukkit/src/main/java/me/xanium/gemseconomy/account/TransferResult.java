@@ -0,0 +1,29 @@
+package me.xanium.gemseconomy.account;
+
+/**
+ * The outcome of a transfer between two accounts.
+ *
+ * @see TransactionEngine#transfer(PlayerAccount, PlayerAccount, me.xanium.gemseconomy.api.Currency, double)
+ */
+public enum TransferResult {
+
+    /**
+     * The amount was moved.
+     */
+    SUCCESS,
+    /**
+     * Nothing was changed, as the amount couldn't be withdrawn from the source account (insufficient funds, or the
+     * withdrawal was cancelled).
+     */
+    WITHDRAW_FAILED,
+    /**
+     * Nothing was changed, as the amount couldn't be deposited into the target account - it was given back to the
+     * source account.
+     */
+    DEPOSIT_FAILED;
+
+    public boolean isSuccess() {
+        return this == SUCCESS;
+    }
+
+}
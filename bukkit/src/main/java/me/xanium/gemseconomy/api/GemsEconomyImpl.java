@@ -10,10 +10,13 @@ package me.xanium.gemseconomy.api;
 
 import com.google.common.base.Preconditions;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.currency.BalanceType;
+import me.xanium.gemseconomy.data.TransientBalance;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @SuppressWarnings("unused")
@@ -58,6 +61,18 @@ public class GemsEconomyImpl implements GemsEconomy {
         pullAccount(uuid).withdraw(currency, amount);
     }
 
+    @Override public @NonNull Map<UUID, Boolean> depositAll(@NonNull Map<UUID, Double> amounts, @NonNull Currency currency) {
+        Preconditions.checkNotNull(amounts, "amounts");
+        Preconditions.checkNotNull(currency, "currency");
+        return plugin.getAccountManager().depositAll(amounts, currency);
+    }
+
+    @Override public @NonNull Map<UUID, Boolean> withdrawAll(@NonNull Map<UUID, Double> amounts, @NonNull Currency currency) {
+        Preconditions.checkNotNull(amounts, "amounts");
+        Preconditions.checkNotNull(currency, "currency");
+        return plugin.getAccountManager().withdrawAll(amounts, currency);
+    }
+
     @Override public double getBalance(@NonNull UUID uuid) {
         Preconditions.checkNotNull(uuid, "uuid");
         return pullAccount(uuid).getBalance(plugin.getCurrencyManager().getDefaultCurrency());
@@ -81,4 +96,30 @@ public class GemsEconomyImpl implements GemsEconomy {
     @Override public @NonNull List<Currency> getLoadedCurrencies() {
         return plugin.getCurrencyManager().getLoadedCurrencies();
     }
+
+    @Override public int getRank(@NonNull UUID uuid, @NonNull Currency currency) {
+        Preconditions.checkNotNull(uuid, "uuid");
+        Preconditions.checkNotNull(currency, "currency");
+        return plugin.getBalanceTopRepository().getRank(currency, BalanceType.BALANCE, uuid);
+    }
+
+    @Override public @Nullable RankedBalance getEntryAt(@NonNull Currency currency, int rank) {
+        Preconditions.checkNotNull(currency, "currency");
+        return toRankedBalance(plugin.getBalanceTopRepository().getEntryAt(currency, BalanceType.BALANCE, rank), rank);
+    }
+
+    @Override public int getHeapRank(@NonNull UUID uuid, @NonNull Currency currency) {
+        Preconditions.checkNotNull(uuid, "uuid");
+        Preconditions.checkNotNull(currency, "currency");
+        return plugin.getBalanceTopRepository().getRank(currency, BalanceType.HEAP, uuid);
+    }
+
+    @Override public @Nullable RankedBalance getHeapEntryAt(@NonNull Currency currency, int rank) {
+        Preconditions.checkNotNull(currency, "currency");
+        return toRankedBalance(plugin.getBalanceTopRepository().getEntryAt(currency, BalanceType.HEAP, rank), rank);
+    }
+
+    private static @Nullable RankedBalance toRankedBalance(@Nullable TransientBalance entry, int rank) {
+        return entry == null ? null : new RankedBalance(entry.uuid(), entry.name(), entry.amount(), rank);
+    }
 }
@@ -9,11 +9,15 @@ import me.xanium.gemseconomy.command.AbstractCommand;
 import me.xanium.gemseconomy.command.CommandManager;
 import me.xanium.gemseconomy.command.argument.CurrencyArgument;
 import me.xanium.gemseconomy.currency.BalanceTop;
+import me.xanium.gemseconomy.currency.BalanceType;
 import me.xanium.gemseconomy.data.TransientBalance;
+import net.kyori.adventure.text.TextReplacementConfig;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static me.xanium.gemseconomy.GemsMessages.AMOUNT_REPLACEMENT;
 import static me.xanium.gemseconomy.GemsMessages.CURRENCY_REPLACEMENT;
@@ -31,10 +35,12 @@ public class BalanceTopCommand extends AbstractCommand {
             .permission("gemseconomy.command.baltop")
             .argument(CurrencyArgument.optional("currency"))
             .argument(IntegerArgument.<CommandSender>builder("page").withMin(1).asOptional())
+            .flag(this.manager.flagBuilder("acc"))
             .handler(context -> {
                 CommandSender sender = context.getSender();
                 Currency currency = context.getOrDefault("currency", GemsEconomyPlugin.getInstance().getCurrencyManager().getDefaultCurrency());
                 int page = context.getOrDefault("page", 1);
+                BalanceType type = context.flags().hasFlag("acc") ? BalanceType.HEAP : BalanceType.BALANCE;
 
                 if (!GemsEconomyPlugin.getInstance().getDataStore().isTopSupported()) {
                     GemsEconomyPlugin.lang().sendComponent(sender, "err_balance_top_no_support");
@@ -45,32 +51,64 @@ public class BalanceTopCommand extends AbstractCommand {
                     return;
                 }
 
-                Promise<BalanceTop> promise = this.plugin.getBalanceTopRepository().computeByCurrency(currency);
+                Promise<BalanceTop> promise = this.plugin.getBalanceTopRepository().computeByCurrency(currency, type);
                 if (promise.isDone()) { // it's completed - send the top list
-                    sendTopList(sender, currency, promise.join(), page);
+                    sendTopList(sender, currency, type, promise.join(), page);
                 } else { // tell sender we're still computing it
                     GemsEconomyPlugin.lang().sendComponent(sender, GemsEconomyPlugin.lang().component(sender, "msg_balance_top_computing"));
-                    promise.thenAcceptSync(topList -> sendTopList(sender, currency, topList, page));
+                    promise.thenAcceptSync(topList -> sendTopList(sender, currency, type, topList, page));
                 }
             })
             .build();
 
-        this.manager.register(List.of(balanceTop));
+        Command<CommandSender> balanceTopMe = this.manager
+            .commandBuilder("balancetop", "baltop")
+            .literal("me")
+            .permission("gemseconomy.command.baltop")
+            .argument(CurrencyArgument.optional("currency"))
+            .flag(this.manager.flagBuilder("acc"))
+            .senderType(Player.class)
+            .handler(context -> {
+                Player sender = (Player) context.getSender();
+                Currency currency = context.getOrDefault("currency", GemsEconomyPlugin.getInstance().getCurrencyManager().getDefaultCurrency());
+                BalanceType type = context.flags().hasFlag("acc") ? BalanceType.HEAP : BalanceType.BALANCE;
+
+                if (!GemsEconomyPlugin.getInstance().getDataStore().isTopSupported()) {
+                    GemsEconomyPlugin.lang().sendComponent(sender, "err_balance_top_no_support");
+                    return;
+                }
+                if (!sender.hasPermission("gemseconomy.command.baltop." + currency.getName())) {
+                    GemsEconomyPlugin.lang().sendComponent(sender, "err_balance_top_no_permission");
+                    return;
+                }
+
+                Promise<BalanceTop> promise = this.plugin.getBalanceTopRepository().computeByCurrency(currency, type);
+                if (promise.isDone()) {
+                    sendRank(sender, currency, type, promise.join());
+                } else {
+                    GemsEconomyPlugin.lang().sendComponent(sender, GemsEconomyPlugin.lang().component(sender, "msg_balance_top_computing"));
+                    promise.thenAcceptSync(topList -> sendRank(sender, currency, type, topList));
+                }
+            })
+            .build();
+
+        this.manager.register(List.of(balanceTop, balanceTopMe));
     }
 
     /**
      * @param sender     (omitted)
      * @param currency   (omitted)
+     * @param type       the type of balance ranked on
      * @param balanceTop (omitted)
      * @param page       page index starting from 1
      */
-    private static void sendTopList(final CommandSender sender, final Currency currency, final BalanceTop balanceTop, final int page) {
+    private static void sendTopList(final CommandSender sender, final Currency currency, final BalanceType type, final BalanceTop balanceTop, final int page) {
         // in case the user input a non-existent page number
         final int pageBounded = Math.min(page, balanceTop.getMaxPage());
 
         // send list header
         GemsEconomyPlugin.lang().sendComponent(sender, GemsEconomyPlugin.lang()
-            .component(sender, "msg_balance_top_header")
+            .component(sender, type == BalanceType.HEAP ? "msg_balance_top_header_acc" : "msg_balance_top_header")
             .replaceText(CURRENCY_REPLACEMENT.apply(currency))
             .replaceText(config -> config.matchLiteral("{page}").replacement(Integer.toString(pageBounded)))
         );
@@ -94,12 +132,40 @@ public class BalanceTopCommand extends AbstractCommand {
             GemsEconomyPlugin.lang().sendComponent(sender, GemsEconomyPlugin.lang()
                 .component(sender, "msg_balance_top_next")
                 .replaceText(CURRENCY_REPLACEMENT.apply(currency))
+                .replaceText(flagsReplacement(type))
                 .replaceText(config -> config.matchLiteral("{page}").replacement(String.valueOf(pageBounded + 1)))
             );
         }
 
         // send last update
-        GemsEconomyPlugin.lang().sendComponent(sender, "msg_balance_top_last_update", "time", balanceTop.getLastUpdate());
+        GemsEconomyPlugin.lang().sendComponent(sender, "msg_balance_top_last_update", "time", balanceTop.getLastUpdate(), "age", balanceTop.getAge());
+    }
+
+    private static void sendRank(final Player sender, final Currency currency, final BalanceType type, final BalanceTop balanceTop) {
+        final int rank = balanceTop.getRank(sender.getUniqueId());
+        if (rank == 0) {
+            GemsEconomyPlugin.lang().sendComponent(sender, GemsEconomyPlugin.lang()
+                .component(sender, "err_balance_top_unranked")
+                .replaceText(CURRENCY_REPLACEMENT.apply(currency))
+                .replaceText(config -> config.matchLiteral("{limit}").replacement(String.valueOf(balanceTop.getLimit())))
+            );
+        } else {
+            GemsEconomyPlugin.lang().sendComponent(sender, GemsEconomyPlugin.lang()
+                .component(sender, "msg_balance_top_rank")
+                .replaceText(CURRENCY_REPLACEMENT.apply(currency))
+                .replaceText(flagsReplacement(type))
+                .replaceText(config -> config.matchLiteral("{rank}").replacement(String.valueOf(rank)))
+                .replaceText(config -> config.matchLiteral("{total}").replacement(String.valueOf(balanceTop.getTotal())))
+                .replaceText(config -> config.matchLiteral("{page}").replacement(String.valueOf((rank - 1) / BalanceTop.ENTRY_PER_PAGE + 1)))
+            );
+        }
+    }
+
+    /**
+     * Replaces "{flags}" with the flags to repeat the command with the same type of balance.
+     */
+    private static Consumer<TextReplacementConfig.Builder> flagsReplacement(final BalanceType type) {
+        return config -> config.matchLiteral("{flags}").replacement(type == BalanceType.HEAP ? " --acc" : "");
     }
 
 }
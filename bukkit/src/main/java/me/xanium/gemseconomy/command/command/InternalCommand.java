@@ -4,6 +4,10 @@ import cloud.commandframework.Command;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
 import me.xanium.gemseconomy.command.AbstractCommand;
 import me.xanium.gemseconomy.command.CommandManager;
+import me.xanium.gemseconomy.data.IoExecutor;
+import me.xanium.gemseconomy.message.AbstractMessenger;
+import me.xanium.gemseconomy.message.PluginSyncReceiver;
+import me.xanium.gemseconomy.message.StripedExecutor;
 import org.bukkit.command.CommandSender;
 
 import java.util.List;
@@ -34,7 +38,47 @@ public class InternalCommand extends AbstractCommand {
             })
             .build();
 
-        manager.register(List.of(reloadLanguages));
+        Command<CommandSender> stats = builder
+            .literal("stats")
+            .permission("gemseconomy.command.stats")
+            .handler(context -> {
+                CommandSender sender = context.getSender();
+                long sent = 0, received = 0, dropped = 0, queued = 0, maxQueued = 0;
+                if (GemsEconomyPlugin.getInstance().getMessenger() instanceof AbstractMessenger messenger) {
+                    sent = messenger.getPacketsSent();
+                    received = messenger.getPacketsReceived();
+                    dropped = messenger.getPacketsDropped();
+                    if (messenger.getReceiver() instanceof PluginSyncReceiver receiver) {
+                        StripedExecutor executor = receiver.getExecutor();
+                        queued = executor.getQueueDepth();
+                        maxQueued = executor.getMaxQueueDepth();
+                    }
+                }
+                GemsEconomyPlugin.lang().sendComponent(sender, "msg_sync_stats",
+                    "sent", Long.toString(sent),
+                    "received", Long.toString(received),
+                    "dropped", Long.toString(dropped),
+                    "queued", Long.toString(queued),
+                    "max_queued", Long.toString(maxQueued)
+                );
+                sendStats(sender, "msg_io_stats", GemsEconomyPlugin.getInstance().getIoExecutor());
+                sendStats(sender, "msg_message_io_stats", GemsEconomyPlugin.getInstance().getMessageExecutor());
+            })
+            .build();
+
+        manager.register(List.of(reloadLanguages, stats));
+    }
+
+    private static void sendStats(CommandSender sender, String key, IoExecutor io) {
+        GemsEconomyPlugin.lang().sendComponent(sender, key,
+            "type", io.isVirtual() ? "virtual" : "platform",
+            "active", Integer.toString(io.getActive()),
+            "permits", Integer.toString(io.getPermits()),
+            "waiting", Long.toString(io.getWaiting()),
+            "max_waiting", Long.toString(io.getMaxWaiting()),
+            "avg_wait", "%.2f".formatted(io.getAverageWaitMillis()),
+            "completed", Long.toString(io.getCompleted())
+        );
     }
 
 }
@@ -3,7 +3,9 @@ package me.xanium.gemseconomy.command.command;
 import cloud.commandframework.Command;
 import cloud.commandframework.bukkit.arguments.selector.MultiplePlayerSelector;
 import cloud.commandframework.bukkit.parsers.selector.MultiplePlayerSelectorArgument;
+import me.lucko.helper.scheduler.HelperExecutors;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.account.TransferResult;
 import me.xanium.gemseconomy.api.Account;
 import me.xanium.gemseconomy.api.Currency;
 import me.xanium.gemseconomy.command.AbstractCommand;
@@ -18,6 +20,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.framework.qual.DefaultQualifier;
 
 import java.util.List;
+import java.util.logging.Level;
 
 import static me.xanium.gemseconomy.GemsMessages.*;
 
@@ -116,10 +119,34 @@ public class PayCommand extends AbstractCommand {
         GemsPayEvent event = new GemsPayEvent(currency, myselfAccount, targetAccount, amount);
         if (!event.callEvent()) return;
 
-        myselfAccount.withdraw(currency, amount);
-        targetAccount.deposit(currency, amount);
+        // Withdraw first, so the amount is given back if the deposit fails
+        // and reply on the main thread once it's done, instead of holding the command thread until then
+        GemsEconomyPlugin.getInstance().getAccountManager().transfer(myselfAccount, targetAccount, currency, amount)
+            .thenAcceptAsync(result -> sendResult(sender, targetPlayer, myselfAccount, targetAccount, amount, currency, result), HelperExecutors.sync())
+            .exceptionally(e -> {
+                GemsEconomyPlugin.getInstance().getLogger().log(Level.SEVERE, "Failed to pay " + targetAccount.getDisplayName() + " from " + myselfAccount.getDisplayName(), e);
+                return null;
+            });
+    }
+
+    private void sendResult(Player sender, Player targetPlayer, Account myselfAccount, Account targetAccount, double amount, Currency currency, TransferResult result) {
+        if (result == TransferResult.WITHDRAW_FAILED) {
+            GemsEconomyPlugin.lang().sendComponent(sender, GemsEconomyPlugin.lang()
+                .component(sender, "err_insufficient_funds")
+                .replaceText(CURRENCY_REPLACEMENT.apply(currency))
+            );
+            return;
+        }
+        if (result == TransferResult.DEPOSIT_FAILED) {
+            GemsEconomyPlugin.lang().sendComponent(sender, GemsEconomyPlugin.lang()
+                .component(sender, "err_pay_deposit_failed")
+                .replaceText(ACCOUNT_REPLACEMENT.apply(targetAccount))
+                .replaceText(CURRENCY_REPLACEMENT.apply(currency))
+            );
+            return;
+        }
 
-        GemsEconomyPlugin.getInstance().getEconomyLogger().log(
+        GemsEconomyPlugin.getInstance().getEconomyLogger().log(() ->
             "[PAYMENT] " + myselfAccount.getDisplayName() +
             " (New bal: " + currency.simpleFormat(myselfAccount.getBalance(currency)) + ") -> paid " + targetAccount.getDisplayName() +
             " (New bal: " + currency.simpleFormat(targetAccount.getBalance(currency)) + ") - An amount of " + currency.simpleFormat(amount)
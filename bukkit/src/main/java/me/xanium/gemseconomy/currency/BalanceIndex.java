@@ -0,0 +1,424 @@
+package me.xanium.gemseconomy.currency;
+
+import me.xanium.gemseconomy.data.TransientBalance;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An order-statistic index of the balances of one currency, sorted from the highest balance to the lowest (ties are
+ * broken by uuid).
+ * <p>
+ * It's a treap whose nodes know the size of their subtrees, so that a balance is updated, and a rank or an entry at
+ * specific rank is found in O(log n), and a page of entries is read in O(log n + page size).
+ * <p>
+ * Only {@link TransientBalance#significant() significant} balances are indexed, and only up to the capacity of the
+ * index: when it's exceeded, the lowest balance is dropped. A balance which drops out of the top this way is only
+ * found again when the index is reset.
+ * <p>
+ * Once the index is full, the balances below its lowest entry are not known, so they're not indexed until the next
+ * reset either: otherwise a balance inserted there would get a rank above the unknown balances higher than it.
+ */
+@DefaultQualifier(NonNull.class)
+public class BalanceIndex {
+
+    private final int capacity;
+    private final Map<UUID, Node> nodes = new HashMap<>();
+    private @Nullable Node root;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The resets whose entries are being loaded, each tracking the accounts updated since it began.
+     */
+    private final Set<Reset> resets = new HashSet<>();
+
+    /**
+     * The lowest entry known since the index was last full, below which balances are refused; or null if all the
+     * significant balances are known.
+     */
+    private @Nullable TransientBalance floor;
+
+    /**
+     * @param capacity the maximum number of indexed balances
+     */
+    public BalanceIndex(int capacity) {
+        this.capacity = Math.max(0, capacity);
+    }
+
+    /**
+     * @return the maximum number of indexed balances
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the balance of specific account.
+     *
+     * @param uuid   the uuid of the account
+     * @param name   the name of the account
+     * @param amount the new balance
+     */
+    public void update(UUID uuid, String name, double amount) {
+        lock.writeLock().lock();
+        try {
+            for (Reset reset : resets) {
+                reset.updated.add(uuid);
+            }
+            put(uuid, name, amount);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts tracking the updates made while the entries of a reset are being loaded.
+     * <p>
+     * The returned reset must be passed to either {@link #reset(Reset, Collection)} or {@link #abortReset(Reset)}.
+     * Several resets may be pending at once (e.g. a scan of database, and a top list received from another server),
+     * each tracking its own updates.
+     *
+     * @return the pending reset
+     */
+    public Reset beginReset() {
+        lock.writeLock().lock();
+        try {
+            Reset reset = new Reset();
+            resets.add(reset);
+            return reset;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stops tracking the updates of a pending reset whose entries can't be loaded.
+     *
+     * @param reset the pending reset
+     */
+    public void abortReset(Reset reset) {
+        lock.writeLock().lock();
+        try {
+            resets.remove(reset);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces all the entries of this index.
+     *
+     * @param entries the new entries
+     */
+    public void reset(Collection<TransientBalance> entries) {
+        lock.writeLock().lock();
+        try {
+            replace(entries, Set.of());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces all the entries of this index, except those updated since specific reset began.
+     *
+     * @param reset   the pending reset, see {@link #beginReset()}
+     * @param entries the new entries
+     */
+    public void reset(Reset reset, Collection<TransientBalance> entries) {
+        lock.writeLock().lock();
+        try {
+            resets.remove(reset);
+            replace(entries, reset.updated);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void replace(Collection<TransientBalance> entries, Set<UUID> updated) {
+        Map<UUID, Node> kept = new HashMap<>();
+        for (UUID uuid : updated) {
+            Node node = nodes.get(uuid);
+            if (node != null) {
+                kept.put(uuid, node);
+            }
+        }
+        nodes.clear();
+        root = null;
+        floor = null;
+        for (TransientBalance entry : entries) {
+            if (!updated.contains(entry.uuid())) {
+                put(entry.uuid(), entry.name(), entry.amount());
+            }
+        }
+        if (entries.size() >= capacity && entries.stream().allMatch(TransientBalance::significant)) {
+            // The entries are the top of all balances, so the significant balances below the lowest one are unknown
+            floor = lowest();
+        }
+        kept.values().forEach(node -> put(node.uuid, node.name, node.amount));
+    }
+
+    /**
+     * @return the number of indexed balances
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the rank of specific account.
+     *
+     * @param uuid the uuid of the account
+     * @return the rank starting from 1, or 0 if the account is not indexed (i.e. not in the top)
+     */
+    public int rank(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            Node target = nodes.get(uuid);
+            if (target == null) {
+                return 0;
+            }
+            int before = 0;
+            Node node = root;
+            while (node != null) {
+                int cmp = compare(target.amount, target.uuid, node);
+                if (cmp < 0) {
+                    node = node.left;
+                } else {
+                    before += size(node.left);
+                    if (cmp == 0) {
+                        break;
+                    }
+                    before += 1;
+                    node = node.right;
+                }
+            }
+            return before + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the entry at specific rank.
+     *
+     * @param rank the rank starting from 1
+     * @return the entry, or null if the rank is out of range
+     */
+    public @Nullable TransientBalance entryAt(int rank) {
+        lock.readLock().lock();
+        try {
+            if (rank < 1 || rank > size(root)) {
+                return null;
+            }
+            int k = rank - 1;
+            Node node = root;
+            while (node != null) {
+                int leftSize = size(node.left);
+                if (k < leftSize) {
+                    node = node.left;
+                } else if (k == leftSize) {
+                    return node.toBalance();
+                } else {
+                    k -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets a range of entries in order.
+     *
+     * @param from  the index of the first entry, starting from 0
+     * @param count the maximum number of entries
+     * @return the entries
+     */
+    public List<TransientBalance> range(int from, int count) {
+        lock.readLock().lock();
+        try {
+            List<TransientBalance> result = new ArrayList<>(Math.max(0, Math.min(count, size(root) - from)));
+            collect(root, from, count, result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Treap ---
+
+    private void put(UUID uuid, String name, double amount) {
+        Node old = nodes.remove(uuid);
+        if (old != null) {
+            root = delete(root, old.amount, old.uuid);
+        }
+        if (amount > 1 && (floor == null || compare(amount, uuid, floor.amount(), floor.uuid()) <= 0)) { // Same as TransientBalance#significant()
+            Node node = new Node(uuid, name, amount);
+            nodes.put(uuid, node);
+            Node[] parts = split(root, amount, uuid);
+            root = merge(merge(parts[0], node), parts[1]);
+        }
+        if (nodes.size() > capacity) {
+            Node lowest = last(root);
+            if (lowest != null) {
+                nodes.remove(lowest.uuid);
+                root = delete(root, lowest.amount, lowest.uuid);
+                floor = lowest(); // The dropped balance isn't known anymore
+            }
+        }
+    }
+
+    private @Nullable TransientBalance lowest() {
+        Node lowest = last(root);
+        return lowest != null ? lowest.toBalance() : null;
+    }
+
+    private static @Nullable Node last(@Nullable Node node) {
+        while (node != null && node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    private static void collect(@Nullable Node node, int from, int count, List<TransientBalance> out) {
+        if (node == null || out.size() >= count) {
+            return;
+        }
+        int leftSize = size(node.left);
+        if (from < leftSize) {
+            collect(node.left, from, count, out);
+        }
+        if (out.size() < count && from <= leftSize) {
+            out.add(node.toBalance());
+        }
+        collect(node.right, Math.max(0, from - leftSize - 1), count, out);
+    }
+
+    /**
+     * Splits a tree into the nodes ordered before specific key, and the rest.
+     */
+    private static @Nullable Node[] split(@Nullable Node node, double amount, UUID uuid) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (compare(amount, uuid, node) > 0) {
+            Node[] parts = split(node.right, amount, uuid);
+            node.right = parts[0];
+            node.update();
+            parts[0] = node;
+            return parts;
+        } else {
+            Node[] parts = split(node.left, amount, uuid);
+            node.left = parts[1];
+            node.update();
+            parts[1] = node;
+            return parts;
+        }
+    }
+
+    private static @Nullable Node merge(@Nullable Node left, @Nullable Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            right.update();
+            return right;
+        }
+    }
+
+    private static @Nullable Node delete(@Nullable Node node, double amount, UUID uuid) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(amount, uuid, node);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        }
+        if (cmp < 0) {
+            node.left = delete(node.left, amount, uuid);
+        } else {
+            node.right = delete(node.right, amount, uuid);
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * Compares a key with a node, where higher balances come first.
+     */
+    private static int compare(double amount, UUID uuid, Node node) {
+        return compare(amount, uuid, node.amount, node.uuid);
+    }
+
+    private static int compare(double amount, UUID uuid, double otherAmount, UUID otherUuid) {
+        int cmp = Double.compare(otherAmount, amount);
+        return cmp != 0 ? cmp : uuid.compareTo(otherUuid);
+    }
+
+    private static int size(@Nullable Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node {
+        final UUID uuid;
+        final String name;
+        final double amount;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        int size = 1;
+        @Nullable Node left;
+        @Nullable Node right;
+
+        Node(UUID uuid, String name, double amount) {
+            this.uuid = uuid;
+            this.name = name;
+            this.amount = amount;
+        }
+
+        void update() {
+            size = 1 + BalanceIndex.size(left) + BalanceIndex.size(right);
+        }
+
+        TransientBalance toBalance() {
+            return new TransientBalance(uuid, name, amount);
+        }
+    }
+
+    /**
+     * A reset whose entries are being loaded, see {@link #beginReset()}.
+     */
+    public static final class Reset {
+        private final Set<UUID> updated = new HashSet<>(); // Guarded by the lock of the index
+
+        private Reset() {
+        }
+    }
+
+}
@@ -1,35 +1,35 @@
 package me.xanium.gemseconomy.currency;
 
-import com.google.common.collect.Lists;
 import me.xanium.gemseconomy.data.TransientBalance;
 import me.xanium.gemseconomy.utils.UtilTime;
 
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * Represents a sorted list of balances associated with a {@link me.xanium.gemseconomy.api.Currency}.
+ * <p>
+ * It's a live view of a {@link BalanceIndex}, so the pages are always up-to-date.
  */
 public class BalanceTop {
 
     /**
      * Fallback in case sth wrong.
      */
-    public static final BalanceTop EMPTY = new BalanceTop(new ArrayList<>());
+    public static final BalanceTop EMPTY = new BalanceTop(new BalanceIndex(0), 0, 0L);
     /**
      * Number of entries in a page.
      */
     public static final int ENTRY_PER_PAGE = 10;
 
-    private final List<List<TransientBalance>> partition;
-    private final String lastUpdate;
+    private final BalanceIndex index;
+    private final int total;
+    private final long lastUpdate;
 
-    BalanceTop(List<TransientBalance> results) {
-        List<TransientBalance> sorted = new ArrayList<>(results);
-        sorted.sort(Comparator.comparingDouble(TransientBalance::amount).reversed()); // sort entries
-        this.partition = Lists.partition(sorted, ENTRY_PER_PAGE);
-        this.lastUpdate = UtilTime.now();
+    BalanceTop(BalanceIndex index, int total, long lastUpdate) {
+        this.index = index;
+        this.total = total;
+        this.lastUpdate = lastUpdate;
     }
 
     /**
@@ -39,22 +39,72 @@ public class BalanceTop {
      * @return the entries at specific page index
      */
     public List<TransientBalance> getResultsAt(int page) {
-        if (this.partition.isEmpty())
-            return new ArrayList<>();
-        return this.partition.get(page);
+        if (page < 0)
+            return List.of();
+        return this.index.range(page * ENTRY_PER_PAGE, ENTRY_PER_PAGE);
     }
 
     /**
      * @return the number of pages this BalanceTop has
      */
     public int getMaxPage() {
-        return this.partition.size();
+        return (this.index.size() + ENTRY_PER_PAGE - 1) / ENTRY_PER_PAGE;
     }
 
     /**
-     * @return the formatted timestamp when last update
+     * Gets the rank of specific account.
+     *
+     * @param account the uuid of the account
+     * @return the rank starting from 1, or 0 if the account is not in the top {@link #getLimit()}
      */
-    public String getLastUpdate() {
+    public int getRank(UUID account) {
+        return this.index.rank(account);
+    }
+
+    /**
+     * @return the maximum number of ranked accounts
+     */
+    public int getLimit() {
+        return this.index.getCapacity();
+    }
+
+    /**
+     * @return the number of accounts with balance, ranked or not, as of the last reconcile
+     */
+    public int getTotal() {
+        return Math.max(this.total, this.index.size());
+    }
+
+    long getLastUpdateMillis() {
         return this.lastUpdate;
     }
+
+    /**
+     * @return a copy of the entries, for persisting them
+     */
+    BalanceTopSnapshots.Snapshot toSnapshot() {
+        return new BalanceTopSnapshots.Snapshot(this.lastUpdate, this.total, this.index.range(0, this.index.size()));
+    }
+
+    /**
+     * @return the formatted timestamp when the balances were last reconciled with database
+     */
+    public String getLastUpdate() {
+        return UtilTime.when(this.lastUpdate);
+    }
+
+    /**
+     * @return the formatted time elapsed since the balances were last reconciled with database
+     */
+    public String getAge() {
+        return UtilTime.ago(this.lastUpdate);
+    }
+
+    /**
+     * @param millis the maximum age in milliseconds
+     * @return true if the balances were last reconciled with database longer ago than specific age
+     */
+    public boolean isOlderThan(long millis) {
+        return UtilTime.elapsed(this.lastUpdate, millis);
+    }
 }
@@ -1,56 +1,472 @@
 package me.xanium.gemseconomy.currency;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import me.lucko.helper.promise.Promise;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.api.Account;
 import me.xanium.gemseconomy.api.Currency;
+import me.xanium.gemseconomy.data.LeaderElection;
 import me.xanium.gemseconomy.data.TransientBalance;
+import me.xanium.gemseconomy.message.AccountDelta;
+import me.xanium.gemseconomy.message.LeaderboardChunk;
+import me.xanium.gemseconomy.utils.UtilServer;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
-import java.time.Duration;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Provides access to get {@link BalanceTop} instances.
+ * <p>
+ * The balances of each currency and {@link BalanceType} are kept in a {@link BalanceIndex}, which is seeded from
+ * database once, then updated on every balance change made by this server or received from other servers. Since
+ * changes of accounts nobody holds in memory are not seen, the indexes are also reconciled with database once they're
+ * older than the refresh interval.
+ * <p>
+ * Only the top {@code balance_top.size} balances of each currency are kept, since nobody pages further anyway.
+ * <p>
+ * The last top lists are always served immediately, even when they're old: asking for an old one only starts a
+ * reconcile in the background (refresh-ahead). The balances of all the currencies and types are loaded by a single
+ * scan of database, and at most one scan runs at a time. When it's done, the top lists of all the currencies are
+ * published at once, and saved to a file so that they're served right after a restart (see {@link #loadSnapshots()}).
+ * <p>
+ * When several servers share the database, only the {@link LeaderElection leader} scans it, and sends the top lists
+ * it built to the others, in chunks small enough for any messenger. The others only scan it by themselves if they
+ * never got a top list, or if the leader is overdue.
  */
 public class BalanceTopRepository {
 
+    /**
+     * The maximum number of entries sent in one leaderboard chunk, so that a chunk stays well under the size limit of
+     * plugin messages.
+     */
+    private static final int CHUNK_SIZE = 200;
+
+    /**
+     * Identifies a balance top list.
+     *
+     * @param currency the currency uuid
+     * @param type     the type of balance
+     */
+    record Key(UUID currency, BalanceType type) {
+    }
+
     private final GemsEconomyPlugin plugin;
-    private final LoadingCache<UUID, Promise<BalanceTop>> topLists;
+    private final int limit;
+    private final long refreshIntervalMillis;
+    private final Path snapshotFile;
+    private final Object snapshotLock = new Object();
+    private final Map<Key, BalanceIndex> indexes = new ConcurrentHashMap<>();
+    private volatile Map<Key, BalanceTop> topLists = Map.of(); // replaced as a whole
+    private final Map<Key, ReceivedList> receiving = new ConcurrentHashMap<>(); // top lists sent by the leader, in parts
+
+    // --- Guarded by this ---
+    private @Nullable Promise<Map<Key, BalanceTop>> rebuilding; // the scan in progress
+    private boolean rebuildAgain; // whether the scan in progress started before a change it must see
 
     public BalanceTopRepository(GemsEconomyPlugin plugin) {
         this.plugin = plugin;
-        this.topLists = CacheBuilder.newBuilder()
-            .expireAfterWrite(Duration.ofMinutes(5))
-            .build(CacheLoader.from(uuid -> {
-                Currency currency = this.plugin.getCurrencyManager().getCurrency(uuid);
-
-                if (currency == null)
-                    return Promise.completed(BalanceTop.EMPTY); // should not happen, but anyway
-
-                return this.plugin.getDataStore()
-                    .getTransientBalances(currency)
-                    .thenApplyAsync(result -> result.stream().filter(TransientBalance::significant).toList()) // ignore "ghost" accounts
-                    .thenApplyAsync(BalanceTop::new);
-            }));
+        this.limit = plugin.getConfig().getInt("balance_top.size", 1000);
+        this.refreshIntervalMillis = plugin.getConfig().getLong("balance_top.refresh_interval_seconds", 300L) * 1000L;
+        this.snapshotFile = plugin.getDataFolder().toPath().resolve("balance_top.dat");
     }
 
     /**
      * Gets a balance top list for specific currency.
      *
      * @param currency the currency from which the balance top list is fetched
-     * @return a promise which contains the results
+     * @return a promise which contains the results, already completed unless the balances were never loaded
      */
     public Promise<BalanceTop> computeByCurrency(Currency currency) {
-        return this.topLists.getUnchecked(currency.getUuid());
+        return computeByCurrency(currency, BalanceType.BALANCE);
+    }
+
+    /**
+     * Gets a balance top list for specific currency and type of balance.
+     *
+     * @param currency the currency from which the balance top list is fetched
+     * @param type     the type of balance to rank on
+     * @return a promise which contains the results, already completed unless the balances were never loaded
+     */
+    public Promise<BalanceTop> computeByCurrency(Currency currency, BalanceType type) {
+        Key key = new Key(currency.getUuid(), type);
+        BalanceTop topList = this.topLists.get(key);
+        if (topList != null) {
+            if (isOverdue(topList)) {
+                rebuild(false); // Serve it anyway, and refresh it for the next ones
+            }
+            return Promise.completed(topList);
+        }
+        return this.plugin.getIoExecutor().thenApply(rebuild(false), result -> result.getOrDefault(key, BalanceTop.EMPTY));
+    }
+
+    /**
+     * Rebuilds the indexes of all the loaded currencies from database, in a single scan.
+     *
+     * @param fresh whether a scan which is already in progress is not good enough, because it started before a change
+     *              of database, in which case another scan is started after it
+     * @return a promise of the top lists of all the loaded currencies
+     */
+    private synchronized Promise<Map<Key, BalanceTop>> rebuild(boolean fresh) {
+        if (this.rebuilding != null) {
+            this.rebuildAgain |= fresh;
+            return this.rebuilding;
+        }
+        List<Currency> currencies = List.copyOf(this.plugin.getCurrencyManager().getLoadedCurrencies());
+        Map<Key, BalanceIndex.Reset> resets = new HashMap<>();
+        for (Currency currency : currencies) {
+            for (BalanceType type : BalanceType.values()) {
+                Key key = new Key(currency.getUuid(), type);
+                resets.put(key, indexOf(key).beginReset());
+            }
+        }
+        Promise<Map<Key, BalanceTop>> promise = this.plugin.getIoExecutor()
+            .thenApply(this.plugin.getDataStore().getTopBalances(currencies, this.limit), result -> {
+                long now = System.currentTimeMillis();
+                Map<Key, BalanceTop> published = new HashMap<>();
+                result.forEach((type, byCurrency) -> byCurrency.forEach((currency, balances) -> {
+                    Key key = new Key(currency, type);
+                    BalanceIndex index = this.indexes.get(key);
+                    BalanceIndex.Reset reset = resets.get(key);
+                    if (index != null && reset != null) { // Unless removed in the meantime
+                        index.reset(reset, balances.getBalances()); // "ghost" accounts are ignored by the index
+                        published.put(key, new BalanceTop(index, balances.getTotal(), now));
+                    }
+                }));
+                Map<Key, BalanceTop> topLists = publish(published);
+                LeaderElection election = this.plugin.getLeaderElection();
+                if (election != null && election.isClustered() && election.isLeader()) {
+                    broadcast(topLists);
+                }
+                saveSnapshots();
+                return topLists;
+            });
+        this.rebuilding = promise;
+        promise.toCompletableFuture().whenComplete((result, e) -> {
+            if (e != null) {
+                e.printStackTrace();
+            }
+            // Stop tracking the updates for the resets which didn't happen (failed scan, or missing from it)
+            resets.forEach((key, reset) -> {
+                BalanceIndex index = this.indexes.get(key);
+                if (index != null) {
+                    index.abortReset(reset);
+                }
+            });
+            synchronized (this) {
+                this.rebuilding = null;
+                if (this.rebuildAgain) {
+                    this.rebuildAgain = false;
+                    rebuild(false);
+                }
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Replaces the top lists of all the currencies at once.
+     */
+    private synchronized Map<Key, BalanceTop> publish(Map<Key, BalanceTop> rebuilt) {
+        rebuilt.keySet().retainAll(this.indexes.keySet()); // Unless removed in the meantime
+        this.topLists = Map.copyOf(rebuilt);
+        return this.topLists;
     }
 
     /**
-     * Flush all cached lists.
+     * Replaces the top list of one currency and type.
+     */
+    private synchronized void publish(Key key, BalanceTop topList) {
+        if (!this.indexes.containsKey(key)) {
+            return; // Removed in the meantime
+        }
+        Map<Key, BalanceTop> topLists = new HashMap<>(this.topLists);
+        topLists.put(key, topList);
+        this.topLists = Map.copyOf(topLists);
+    }
+
+    /**
+     * Sends specific top lists to the other servers.
+     */
+    private void broadcast(Map<Key, BalanceTop> topLists) {
+        List<LeaderboardChunk> chunks = new ArrayList<>();
+        topLists.forEach((key, topList) -> {
+            BalanceTopSnapshots.Snapshot snapshot = topList.toSnapshot();
+            List<TransientBalance> balances = snapshot.balances();
+            int count = Math.max(1, (balances.size() + CHUNK_SIZE - 1) / CHUNK_SIZE); // An empty list is sent too
+            for (int i = 0; i < count; i++) {
+                List<TransientBalance> part = balances.subList(Math.min(balances.size(), i * CHUNK_SIZE), Math.min(balances.size(), (i + 1) * CHUNK_SIZE));
+                chunks.add(new LeaderboardChunk(key.currency(), key.type(), snapshot.lastUpdate(), snapshot.total(), i, count, List.copyOf(part)));
+            }
+        });
+        this.plugin.getMessenger().sendLeaderboard(chunks);
+    }
+
+    /**
+     * Assembles a top list sent by the leader, and replaces the local one with it once all its chunks are received.
+     * <p>
+     * Chunks of a list which is not newer than the local one are ignored, as well as those of a list older than the one
+     * being assembled.
+     *
+     * @param chunk a chunk of the top list
+     * @return true if the chunk completed the top list, which is now published
+     */
+    public boolean onLeaderboardReceived(LeaderboardChunk chunk) {
+        Key key = new Key(chunk.currency(), chunk.type());
+        if (this.plugin.getCurrencyManager().getCurrency(chunk.currency()) == null) {
+            return false; // Not loaded here (yet)
+        }
+        BalanceTop current = this.topLists.get(key);
+        if (current != null && current.getLastUpdateMillis() >= chunk.lastUpdate()) {
+            return false;
+        }
+        BalanceIndex index = indexOf(key);
+        ReceivedList list = this.receiving.compute(key, (k, pending) -> {
+            if (pending != null && pending.lastUpdate >= chunk.lastUpdate()) {
+                return pending;
+            }
+            if (pending != null) {
+                index.abortReset(pending.reset); // Superseded by a newer list
+            }
+            return new ReceivedList(chunk.lastUpdate(), chunk.count(), index.beginReset()); // Keep the changes received while the chunks are coming
+        });
+        if (list.lastUpdate != chunk.lastUpdate() || !list.add(chunk)) {
+            return false;
+        }
+        this.receiving.remove(key, list);
+        index.reset(list.reset, list.balances());
+        publish(key, new BalanceTop(index, chunk.total(), chunk.lastUpdate()));
+        this.plugin.getIoExecutor().execute(this::saveSnapshots);
+        return true;
+    }
+
+    /**
+     * Checks if specific top list should be reconciled with database by this server.
+     * <p>
+     * The followers of the leader give it twice the refresh interval, before they scan the database by themselves.
+     */
+    private boolean isOverdue(BalanceTop topList) {
+        LeaderElection election = this.plugin.getLeaderElection();
+        boolean leader = election == null || election.isLeader();
+        return topList.isOlderThan(leader ? this.refreshIntervalMillis : this.refreshIntervalMillis * 2);
+    }
+
+    /**
+     * Serves the top lists saved before the last shutdown, until they're reconciled with database.
+     *
+     * @return true if there is a snapshot for every loaded currency, false if a scan of database is needed anyway
+     */
+    public boolean loadSnapshots() {
+        Map<Key, BalanceTopSnapshots.Snapshot> snapshots;
+        try {
+            synchronized (this.snapshotLock) {
+                snapshots = BalanceTopSnapshots.read(this.snapshotFile);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        boolean complete = true;
+        Map<Key, BalanceTop> loaded = new HashMap<>();
+        for (Currency currency : this.plugin.getCurrencyManager().getLoadedCurrencies()) {
+            for (BalanceType type : BalanceType.values()) {
+                Key key = new Key(currency.getUuid(), type);
+                BalanceTopSnapshots.Snapshot snapshot = snapshots.get(key);
+                if (snapshot == null) {
+                    complete = false;
+                    continue;
+                }
+                BalanceIndex index = indexOf(key);
+                index.reset(snapshot.balances());
+                loaded.put(key, new BalanceTop(index, snapshot.total(), snapshot.lastUpdate()));
+            }
+        }
+        publish(loaded);
+        UtilServer.consoleLog("Loaded " + loaded.size() + " balance top snapshots");
+        return complete;
+    }
+
+    /**
+     * Saves the current top lists, so that they're served right after a restart. It blocks on the file system.
+     */
+    public void saveSnapshots() {
+        Map<Key, BalanceTopSnapshots.Snapshot> snapshots = new HashMap<>();
+        this.topLists.forEach((key, topList) -> snapshots.put(key, topList.toSnapshot()));
+        if (snapshots.isEmpty()) {
+            return; // Never seeded - keep the previous ones
+        }
+        try {
+            synchronized (this.snapshotLock) {
+                BalanceTopSnapshots.write(this.snapshotFile, snapshots);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private BalanceIndex indexOf(Key key) {
+        return this.indexes.computeIfAbsent(key, k -> new BalanceIndex(this.limit));
+    }
+
+    /**
+     * Gets the rank of specific account, without loading anything.
+     *
+     * @param currency the currency of the balance top list
+     * @param type     the type of balance of the balance top list
+     * @param account  the uuid of the account
+     * @return the rank starting from 1, or 0 if the account is not in the top (or the index is not seeded yet)
+     */
+    public int getRank(Currency currency, BalanceType type, UUID account) {
+        BalanceIndex index = this.indexes.get(new Key(currency.getUuid(), type));
+        return index == null ? 0 : index.rank(account);
+    }
+
+    /**
+     * Gets the entry at specific rank, without loading anything.
+     *
+     * @param currency the currency of the balance top list
+     * @param type     the type of balance of the balance top list
+     * @param rank     the rank starting from 1
+     * @return the entry, or null if the rank is out of range (or the index is not seeded yet)
+     */
+    public @Nullable TransientBalance getEntryAt(Currency currency, BalanceType type, int rank) {
+        BalanceIndex index = this.indexes.get(new Key(currency.getUuid(), type));
+        return index == null ? null : index.entryAt(rank);
+    }
+
+    /**
+     * Updates the balance of specific account in the index of specific currency.
+     * <p>
+     * It's called on every balance change of a {@link me.xanium.gemseconomy.account.PlayerAccount}.
+     */
+    public void onBalanceChanged(Account account, Currency currency, double balance) {
+        indexOf(new Key(currency.getUuid(), BalanceType.BALANCE)).update(account.getUuid(), account.getDisplayName(), balance);
+    }
+
+    /**
+     * Updates the accumulated balance of specific account in the index of specific currency.
+     * <p>
+     * It's called on every deposit into a {@link me.xanium.gemseconomy.account.PlayerAccount}.
+     */
+    public void onHeapBalanceChanged(Account account, Currency currency, double heapBalance) {
+        indexOf(new Key(currency.getUuid(), BalanceType.HEAP)).update(account.getUuid(), account.getDisplayName(), heapBalance);
+    }
+
+    /**
+     * Updates all the balances of specific account, after it's (re)loaded from database.
+     */
+    public void onAccountLoaded(Account account) {
+        account.getBalances().forEach((currency, balance) -> onBalanceChanged(account, currency, balance));
+        account.getHeapBalances().forEach((currency, heapBalance) -> onHeapBalanceChanged(account, currency, heapBalance));
+    }
+
+    /**
+     * Updates the balances changed by other servers, including those of accounts this server doesn't hold.
+     */
+    public void onAccountsUpdated(Collection<AccountDelta> deltas) {
+        for (AccountDelta delta : deltas) {
+            delta.balances().forEach((currency, balance) -> {
+                BalanceIndex index = this.indexes.get(new Key(currency, BalanceType.BALANCE));
+                if (index != null) {
+                    index.update(delta.account(), delta.name(), balance); // So that accounts climbing into the top on other servers show up
+                }
+            });
+            delta.heapBalances().forEach((currency, heapBalance) -> {
+                BalanceIndex index = this.indexes.get(new Key(currency, BalanceType.HEAP));
+                if (index != null) {
+                    index.update(delta.account(), delta.name(), heapBalance);
+                }
+            });
+        }
+    }
+
+    /**
+     * Forgets the balances of specific currency.
+     */
+    public synchronized void removeCurrency(UUID currency) {
+        this.indexes.keySet().removeIf(key -> key.currency().equals(currency));
+        Map<Key, BalanceTop> topLists = new HashMap<>(this.topLists);
+        topLists.keySet().removeIf(key -> key.currency().equals(currency));
+        this.topLists = Map.copyOf(topLists);
+    }
+
+    /**
+     * Rebuilds the balances of all the loaded currencies from database, e.g. after all the balances of a currency are
+     * changed - a single scan loads all the currencies anyway.
+     * <p>
+     * The current top lists are served until the rebuild is done - they're still updated live.
      */
     public void flushLists() {
-        this.topLists.invalidateAll();
+        rebuild(true);
+    }
+
+    /**
+     * Rebuilds the balances of all the loaded currencies from database, if any of them is older than the refresh
+     * interval, or was never loaded.
+     * <p>
+     * Unless this server is the leader, it waits for the leader to send the top lists, and only rebuilds them by itself
+     * when the leader is overdue.
+     */
+    public void refreshStale() {
+        Map<Key, BalanceTop> topLists = this.topLists;
+        boolean stale = this.plugin.getCurrencyManager().getLoadedCurrencies().stream().anyMatch(currency -> {
+            BalanceTop topList = topLists.get(new Key(currency.getUuid(), BalanceType.BALANCE));
+            return topList == null || isOverdue(topList);
+        });
+        if (stale) {
+            rebuild(false);
+        }
+    }
+
+    /**
+     * @return how long the top lists are served before they're reconciled with database, in milliseconds
+     */
+    public long getRefreshInterval() {
+        return this.refreshIntervalMillis;
+    }
+
+    /**
+     * The chunks of a top list received so far.
+     */
+    private static final class ReceivedList {
+        final long lastUpdate;
+        final @Nullable List<TransientBalance>[] chunks;
+        final BalanceIndex.Reset reset;
+        int received;
+
+        @SuppressWarnings("unchecked")
+        ReceivedList(long lastUpdate, int count, BalanceIndex.Reset reset) {
+            this.lastUpdate = lastUpdate;
+            this.chunks = new List[Math.max(1, count)];
+            this.reset = reset;
+        }
+
+        /**
+         * @return true if it was the last missing chunk
+         */
+        synchronized boolean add(LeaderboardChunk chunk) {
+            if (chunk.index() < 0 || chunk.index() >= this.chunks.length || this.chunks[chunk.index()] != null) {
+                return false;
+            }
+            this.chunks[chunk.index()] = chunk.balances();
+            return ++this.received == this.chunks.length;
+        }
+
+        synchronized List<TransientBalance> balances() {
+            List<TransientBalance> balances = new ArrayList<>();
+            for (List<TransientBalance> chunk : this.chunks) {
+                if (chunk != null) {
+                    balances.addAll(chunk);
+                }
+            }
+            return balances;
+        }
     }
 
 }
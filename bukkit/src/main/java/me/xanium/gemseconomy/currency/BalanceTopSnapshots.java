@@ -0,0 +1,117 @@
+package me.xanium.gemseconomy.currency;
+
+import me.xanium.gemseconomy.data.TransientBalance;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Reads and writes the snapshots of the balance top lists, so that they're served right after a restart, instead of
+ * waiting for a full scan of database.
+ * <p>
+ * The file is a compact binary dump: a version, then for each top list its currency uuid, balance type, last update,
+ * total and entries.
+ */
+@DefaultQualifier(NonNull.class)
+final class BalanceTopSnapshots {
+
+    private static final int VERSION = 2;
+
+    /**
+     * The snapshot of a balance top list.
+     *
+     * @param lastUpdate when the balances were last reconciled with database
+     * @param total      the number of accounts with balance
+     * @param balances   the highest balances, from the highest to the lowest
+     */
+    record Snapshot(long lastUpdate, int total, List<TransientBalance> balances) {
+    }
+
+    private BalanceTopSnapshots() {
+        throw new UnsupportedOperationException("This class cannot be instantiated.");
+    }
+
+    /**
+     * Writes the snapshots, replacing the file at once so that a crash never leaves it half written.
+     *
+     * @param file      the file to write
+     * @param snapshots a map from the top list to its snapshot
+     */
+    static void write(Path file, Map<BalanceTopRepository.Key, Snapshot> snapshots) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(VERSION);
+            out.writeInt(snapshots.size());
+            for (Map.Entry<BalanceTopRepository.Key, Snapshot> entry : snapshots.entrySet()) {
+                Snapshot snapshot = entry.getValue();
+                writeUuid(out, entry.getKey().currency());
+                out.writeUTF(entry.getKey().type().name());
+                out.writeLong(snapshot.lastUpdate());
+                out.writeInt(snapshot.total());
+                out.writeInt(snapshot.balances().size());
+                for (TransientBalance balance : snapshot.balances()) {
+                    writeUuid(out, balance.uuid());
+                    out.writeUTF(balance.name());
+                    out.writeDouble(balance.amount());
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the snapshots.
+     *
+     * @param file the file to read
+     * @return a map from the top list to its snapshot, empty if there is no file, or it's of another version
+     */
+    static Map<BalanceTopRepository.Key, Snapshot> read(Path file) throws IOException {
+        Map<BalanceTopRepository.Key, Snapshot> snapshots = new HashMap<>();
+        if (Files.notExists(file)) {
+            return snapshots;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                return snapshots;
+            }
+            int topLists = in.readInt();
+            for (int i = 0; i < topLists; i++) {
+                UUID currency = readUuid(in);
+                BalanceType type = BalanceType.valueOf(in.readUTF());
+                long lastUpdate = in.readLong();
+                int total = in.readInt();
+                int size = in.readInt();
+                List<TransientBalance> balances = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    balances.add(new TransientBalance(readUuid(in), in.readUTF(), in.readDouble()));
+                }
+                snapshots.put(new BalanceTopRepository.Key(currency, type), new Snapshot(lastUpdate, total, balances));
+            }
+        }
+        return snapshots;
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+}
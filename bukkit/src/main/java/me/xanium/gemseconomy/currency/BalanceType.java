@@ -0,0 +1,19 @@
+package me.xanium.gemseconomy.currency;
+
+/**
+ * The kinds of balance an account has for each currency, each of which has its own balance top list.
+ */
+public enum BalanceType {
+    /**
+     * The current balance.
+     *
+     * @see me.xanium.gemseconomy.api.Account#getBalance(me.xanium.gemseconomy.api.Currency)
+     */
+    BALANCE,
+    /**
+     * The accumulated balance, i.e. the total amount ever deposited.
+     *
+     * @see me.xanium.gemseconomy.api.Account#getHeapBalance(me.xanium.gemseconomy.api.Currency)
+     */
+    HEAP
+}
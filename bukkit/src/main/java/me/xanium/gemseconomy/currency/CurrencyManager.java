@@ -2,6 +2,8 @@ package me.xanium.gemseconomy.currency;
 
 import com.google.common.collect.ImmutableList;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.account.PlayerAccount;
+import me.xanium.gemseconomy.api.Account;
 import me.xanium.gemseconomy.api.Currency;
 import me.xanium.gemseconomy.message.Action;
 import me.xanium.gemseconomy.message.Messenger;
@@ -9,6 +11,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.framework.qual.DefaultQualifier;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -128,22 +131,26 @@ public class CurrencyManager {
 
     /**
      * Removes specified currency from this manager, all accounts, and database.
+     * <p>
+     * Other servers are told to do the same with {@link #removeCurrencyLocally(UUID)}, so that the database is only
+     * rewritten once.
      *
      * @param currency the currency to remove
      */
     public void removeCurrency(Currency currency) {
         // Remove this currency from all accounts
-        GemsEconomyPlugin.getInstance()
-            .getAccountManager()
-            .getOfflineAccounts()
-            .forEach(account -> {
-                account.getBalances().remove(currency);
-                plugin.getDataStore().saveAccount(account);
-                plugin.getMessenger().sendMessage(Action.UPDATE_ACCOUNT, account.getUuid());
-            });
+        plugin.getAccountManager().getLeaseKeeper().flush(); // Changes kept in memory would be lost when the cache is flushed
+        List<Account> accounts = new ArrayList<>(plugin.getAccountManager().getOfflineAccounts());
+        accounts.forEach(account -> {
+            account.getBalances().remove(currency);
+            account.setVersion(account.getVersion() + 1); // Otherwise the database keeps the balances of the same version
+        });
+        plugin.getDataStore().overwriteAccounts(accounts);
 
         // Remove this currency from this manager
         currencies.remove(currency.getUuid());
+        plugin.getBalanceTopRepository().removeCurrency(currency.getUuid());
+        plugin.getAccountManager().getHolds().removeAll(currency);
 
         // Remove this currency from data storage
         plugin.getDataStore().deleteCurrency(currency);
@@ -164,20 +171,64 @@ public class CurrencyManager {
             removeCurrency(currency);
     }
 
+    /**
+     * Removes specified currency from this manager and all cached accounts, without touching the database.
+     * <p>
+     * This method is specifically used by {@link Messenger}.
+     *
+     * @param uuid the uuid of the currency deleted by another server
+     */
+    public void removeCurrencyLocally(UUID uuid) {
+        Currency currency = currencies.remove(uuid);
+        if (currency == null)
+            return;
+        plugin.getBalanceTopRepository().removeCurrency(uuid);
+        plugin.getAccountManager().getHolds().removeAll(currency);
+        for (Account account : plugin.getAccountManager().getCachedAccounts()) {
+            if (account instanceof PlayerAccount playerAccount)
+                playerAccount.dropCurrency(currency);
+        }
+    }
+
     /**
      * Sets the balances of specific currency to default value for <b>ALL</b> accounts.
+     * <p>
+     * Other servers are told to do the same with {@link #clearBalanceLocally(UUID)}, so that the database is only
+     * rewritten once.
      *
      * @param currency the currency to clear balance
      */
     public void clearBalance(Currency currency) {
-        plugin.getAccountManager().getOfflineAccounts().forEach(account -> {
+        plugin.getAccountManager().getLeaseKeeper().flush(); // Changes kept in memory would be lost when the cache is flushed
+        List<Account> accounts = new ArrayList<>(plugin.getAccountManager().getOfflineAccounts());
+        accounts.forEach(account -> {
             account.getBalances().compute(currency, (c, d) -> c.getDefaultBalance());
-            plugin.getDataStore().saveAccount(account);
-            plugin.getMessenger().sendMessage(Action.UPDATE_ACCOUNT, account.getUuid());
+            account.setVersion(account.getVersion() + 1); // Otherwise the database keeps the balances of the same version
         });
+        plugin.getDataStore().overwriteAccounts(accounts);
+        plugin.getMessenger().sendMessage(Action.CLEAR_BALANCE, currency.getUuid());
+        plugin.getBalanceTopRepository().flushLists();
 
         // Flush accounts in cache
         plugin.getAccountManager().flushAccounts();
     }
 
+    /**
+     * Sets the balances of specific currency to default value for all cached accounts, without touching the database.
+     * <p>
+     * This method is specifically used by {@link Messenger}.
+     *
+     * @param uuid the uuid of the currency cleared by another server
+     */
+    public void clearBalanceLocally(UUID uuid) {
+        Currency currency = currencies.get(uuid);
+        if (currency == null)
+            return;
+        for (Account account : plugin.getAccountManager().getCachedAccounts()) {
+            if (account instanceof PlayerAccount playerAccount)
+                playerAccount.resetBalance(currency);
+        }
+        plugin.getBalanceTopRepository().flushLists();
+    }
+
 }
@@ -12,13 +12,19 @@ import me.lucko.helper.promise.Promise;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
 import me.xanium.gemseconomy.api.Account;
 import me.xanium.gemseconomy.api.Currency;
+import me.xanium.gemseconomy.currency.BalanceType;
 import me.xanium.gemseconomy.listener.EconomyListener;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.jetbrains.annotations.Contract;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 public abstract class DataStorage {
@@ -105,6 +111,28 @@ public abstract class DataStorage {
     @Contract("null -> null; !null -> !null")
     public abstract @Nullable Account updateAccount(final @Nullable Account account);
 
+    /**
+     * Updates all the specific accounts.
+     * <p>
+     * The implementation should load them in as few round trips as possible.
+     *
+     * @param accounts the accounts to be updated
+     */
+    public void updateAccounts(final @NonNull Collection<Account> accounts) {
+        accounts.forEach(this::updateAccount);
+    }
+
+    /**
+     * Checks whether accounts can be loaded on the current thread.
+     * <p>
+     * If not, callers on this thread should load accounts on another thread instead of calling the load methods.
+     *
+     * @return true if accounts can be loaded on the current thread
+     */
+    public boolean canLoadAccounts() {
+        return true;
+    }
+
     /**
      * Loads, and returns an account with specific name from database.
      * <p>
@@ -133,6 +161,30 @@ public abstract class DataStorage {
     @Contract(pure = true)
     public abstract void saveAccount(final @NonNull Account account);
 
+    /**
+     * Saves all the specific accounts to database.
+     * <p>
+     * The implementation should save them in as few round trips as possible.
+     *
+     * @param accounts the accounts to save to database
+     */
+    public void saveAccounts(final @NonNull Collection<Account> accounts) {
+        accounts.forEach(this::saveAccount);
+    }
+
+    /**
+     * Overwrites the balances of all the specific accounts in database with theirs, e.g. when a currency is cleared or
+     * removed from all the accounts loaded by {@link #getOfflineAccounts()}.
+     * <p>
+     * Unlike {@link #saveAccounts(Collection)}, the balances are written as they are, even if the implementation
+     * usually sends the changes of accounts instead.
+     *
+     * @param accounts the accounts to overwrite in database
+     */
+    public void overwriteAccounts(final @NonNull Collection<Account> accounts) {
+        saveAccounts(accounts);
+    }
+
     /**
      * Creates a new record of specific account in database.
      * <p>
@@ -174,16 +226,84 @@ public abstract class DataStorage {
     public abstract @NonNull List<Account> getOfflineAccounts();
 
     /**
-     * Gets a {@link Promise} containing list of ALL offline balances for specific Currency.
+     * Gets a {@link Promise} containing the highest balances of each {@link BalanceType} for each of specific
+     * Currencies, and the number of ALL balances.
      * <p>
-     * The implementation should not store any data in memory for long time.
+     * The implementation should stream the balances through {@link TopBalances}, instead of loading them all into
+     * memory at once, and read each account only once for all the currencies and types. Accounts which can't be
+     * decoded should be skipped, but if the scan can't complete, the promise should fail rather than supply what has
+     * been read so far, so that the previous top lists are kept.
      *
-     * @param currency the currency which the balances are fetched from
-     * @return a promise
+     * @param currencies the currencies which the balances are fetched from
+     * @param limit      the maximum number of balances to keep per currency and type
+     * @return a promise of a map from the balance type to a map from the currency uuid to its highest balances
      */
     @Contract(pure = true)
-    public @NonNull Promise<List<TransientBalance>> getTransientBalances(final @NonNull Currency currency) {
-        return Promise.completed(new ArrayList<>());
+    public @NonNull Promise<Map<BalanceType, Map<UUID, TopBalances>>> getTopBalances(final @NonNull Collection<Currency> currencies, int limit) {
+        Map<BalanceType, Map<UUID, TopBalances>> result = new EnumMap<>(BalanceType.class);
+        for (BalanceType type : BalanceType.values()) {
+            Map<UUID, TopBalances> byCurrency = new HashMap<>();
+            currencies.forEach(currency -> byCurrency.put(currency.getUuid(), new TopBalances(limit)));
+            result.put(type, byCurrency);
+        }
+        return Promise.completed(result);
+    }
+
+    /**
+     * Acquires the lease of specific resource for specific owner, unless another owner holds an unexpired one.
+     * <p>
+     * If the owner already holds the lease, it's renewed. Storages which don't support leases never grant them, so
+     * that the callers keep writing everything through.
+     *
+     * @param resource  the name of the leased resource
+     * @param owner     the unique name of the server asking for the lease
+     * @param ttlMillis how long the lease lasts without being renewed
+     * @return true if the owner holds the lease now
+     */
+    public boolean acquireLease(final @NonNull String resource, final @NonNull String owner, long ttlMillis) {
+        return false;
+    }
+
+    /**
+     * Renews all the specific leases still held by specific owner.
+     * <p>
+     * The implementation should renew them in as few round trips as possible.
+     *
+     * @param resources the names of the leased resources
+     * @param owner     the unique name of the server holding the leases
+     * @param ttlMillis how long the leases last from now without being renewed
+     * @return the names of the resources whose leases are still held by the owner
+     */
+    public @NonNull Set<String> renewLeases(final @NonNull Collection<String> resources, final @NonNull String owner, long ttlMillis) {
+        return Set.of();
+    }
+
+    /**
+     * Gives up all the specific leases held by specific owner.
+     *
+     * @param resources the names of the leased resources
+     * @param owner     the unique name of the server holding the leases
+     */
+    public void releaseLeases(final @NonNull Collection<String> resources, final @NonNull String owner) {
+    }
+
+    /**
+     * Gets the owner of the unexpired lease of specific resource.
+     *
+     * @param resource the name of the leased resource
+     * @return the unique name of the server holding the lease, or null if nobody holds it
+     */
+    public @Nullable String getLeaseOwner(final @NonNull String resource) {
+        return null;
+    }
+
+    /**
+     * Checks if this storage grants leases, i.e. if it can arbitrate between servers.
+     *
+     * @return true if {@link #acquireLease(String, String, long)} may return true
+     */
+    public boolean isLeaseSupported() {
+        return false;
     }
 
     /**
@@ -204,11 +324,20 @@ public abstract class DataStorage {
         return this.topSupported;
     }
 
+    /**
+     * Returns how many calls this storage can serve at the same time, e.g. the size of its connection pool.
+     *
+     * @return the maximum number of concurrent calls
+     */
+    public int getMaxConnections() {
+        return 4;
+    }
+
     /**
      * @see #loadAccount(UUID)
      */
     public Promise<Account> loadAccountAsync(final @NonNull UUID uuid) {
-        return Promise.supplyingAsync(() -> loadAccount(uuid));
+        return plugin.getIoExecutor().supply(() -> loadAccount(uuid));
     }
 
 }
@@ -0,0 +1,240 @@
+package me.xanium.gemseconomy.data;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import me.lucko.helper.promise.Promise;
+import me.lucko.helper.terminable.Terminable;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the blocking I/O of this plugin (database and messenger calls), so that it never starves the shared pool of
+ * helper, which every other plugin uses too.
+ * <p>
+ * Tasks run on virtual threads when the runtime supports them, or on a fixed pool of platform threads otherwise. In
+ * both cases, at most {@code permits} tasks run at the same time - it should match what the resource behind it can
+ * serve (e.g. the size of the connection pool), since more concurrent tasks would only wait for it anyway. So each
+ * resource gets its own executor: database calls never wait behind messenger calls, and the other way around.
+ */
+@DefaultQualifier(NonNull.class)
+public class IoExecutor implements Executor, Terminable {
+
+    private final ExecutorService delegate;
+    private final ScheduledExecutorService timer;
+    private final Semaphore permits;
+    private final int permitCount;
+    private final boolean virtual;
+
+    // --- Metrics ---
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong waiting = new AtomicLong();
+    private final AtomicLong maxWaiting = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    public IoExecutor(String name, int permits) {
+        this.permitCount = Math.max(1, permits);
+        this.permits = new Semaphore(permitCount, true);
+        @Nullable ExecutorService virtualExecutor = newVirtualThreadExecutor(name);
+        if (virtualExecutor != null) {
+            this.delegate = virtualExecutor;
+            this.virtual = true;
+        } else {
+            this.delegate = new ThreadPoolExecutor(permitCount, permitCount, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat(name + " %d").setDaemon(true).build()
+            );
+            this.virtual = false;
+        }
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat(name + " Timer").setDaemon(true).build()
+        );
+    }
+
+    /**
+     * Creates an executor which starts a virtual thread per task, if the runtime supports it.
+     * <p>
+     * It's looked up reflectively, so that the plugin still runs on runtimes without virtual threads.
+     */
+    private static @Nullable ExecutorService newVirtualThreadExecutor(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + " ", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+            return null; // Not supported, or still a preview feature
+        }
+    }
+
+    @Override public void execute(Runnable task) {
+        submitted.incrementAndGet();
+        maxWaiting.accumulateAndGet(waiting.incrementAndGet(), Math::max);
+        long queuedAt = System.nanoTime();
+        delegate.execute(() -> {
+            permits.acquireUninterruptibly();
+            waiting.decrementAndGet();
+            waitNanos.addAndGet(System.nanoTime() - queuedAt);
+            try {
+                task.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            } finally {
+                permits.release();
+                completed.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Computes a value on this executor.
+     *
+     * @param supplier the blocking computation
+     * @return a promise of the value
+     */
+    public <T> Promise<T> supply(Supplier<T> supplier) {
+        Promise<T> promise = Promise.empty();
+        execute(() -> {
+            try {
+                promise.supply(supplier.get());
+            } catch (Throwable e) {
+                promise.supplyException(e);
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Transforms the value of a promise on this executor, once it's completed.
+     * <p>
+     * Unlike {@link Promise#thenApplyAsync}, which runs on the shared async pool of helper, the transformation is
+     * counted against the permits of this executor.
+     *
+     * @param source   the promise of the value
+     * @param function the blocking transformation
+     * @return a promise of the transformed value
+     */
+    public <T, R> Promise<R> thenApply(Promise<T> source, Function<? super T, ? extends R> function) {
+        Promise<R> promise = Promise.empty();
+        source.toCompletableFuture().whenComplete((value, e) -> {
+            if (e != null) {
+                promise.supplyException(e);
+                return;
+            }
+            execute(() -> {
+                try {
+                    promise.supply(function.apply(value));
+                } catch (Throwable t) {
+                    promise.supplyException(t);
+                }
+            });
+        });
+        return promise;
+    }
+
+    /**
+     * Runs a task on this executor after specific delay.
+     *
+     * @param task        the task to run
+     * @param delayMillis the delay in milliseconds
+     */
+    public void runLater(Runnable task, long delayMillis) {
+        timer.schedule(() -> execute(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a task on this executor repeatedly.
+     * <p>
+     * A run is skipped if the previous one hasn't finished yet, so that runs of the task never overlap.
+     *
+     * @param task           the task to run
+     * @param intervalMillis the interval in milliseconds
+     * @return a terminable which stops the repetition
+     */
+    public Terminable runRepeating(Runnable task, long intervalMillis) {
+        AtomicBoolean running = new AtomicBoolean();
+        ScheduledFuture<?> future = timer.scheduleAtFixedRate(() -> {
+            if (running.compareAndSet(false, true)) {
+                execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        running.set(false);
+                    }
+                });
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return () -> future.cancel(false);
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public int getPermits() {
+        return permitCount;
+    }
+
+    /**
+     * @return the number of tasks running right now
+     */
+    public int getActive() {
+        return permitCount - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of tasks waiting to run
+     */
+    public long getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * @return the highest number of tasks ever waiting to run
+     */
+    public long getMaxWaiting() {
+        return maxWaiting.get();
+    }
+
+    /**
+     * @return the average time tasks waited before running, in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        long done = submitted.get() - waiting.get();
+        return done <= 0 ? 0D : waitNanos.get() / 1_000_000D / done;
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    @Override public void close() {
+        timer.shutdown();
+        delegate.shutdown();
+        try {
+            delegate.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
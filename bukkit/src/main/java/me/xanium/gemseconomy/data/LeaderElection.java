@@ -0,0 +1,93 @@
+package me.xanium.gemseconomy.data;
+
+import me.lucko.helper.terminable.Terminable;
+import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.message.impl.EmptyMessenger;
+import me.xanium.gemseconomy.utils.UtilServer;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.List;
+
+/**
+ * Elects one server among the servers sharing the same database to run the periodic heavy jobs, such as rebuilding
+ * the balance top lists, and to distribute their results to the others.
+ * <p>
+ * The leader is whoever holds a lease stored by {@link DataStorage}, so a crashed leader is replaced once its lease
+ * expires. Like the account leases, this server stops trusting its leadership well before the lease expires.
+ * <p>
+ * If the storage can't grant leases, or there is no messenger to distribute the results, this server is always the
+ * leader (local fallback), as it's on its own anyway.
+ */
+@DefaultQualifier(NonNull.class)
+public class LeaderElection implements Terminable {
+
+    private static final String RESOURCE = "leader:jobs";
+
+    private final GemsEconomyPlugin plugin;
+    private final long ttlMillis;
+    private final boolean clustered;
+    private volatile long trustedUntil;
+
+    public LeaderElection(GemsEconomyPlugin plugin) {
+        this.plugin = plugin;
+        this.ttlMillis = plugin.getConfig().getLong("leader.ttl_millis", 30_000L);
+        this.clustered = plugin.getDataStore().isLeaseSupported() && !(plugin.getMessenger() instanceof EmptyMessenger);
+        if (!clustered) {
+            UtilServer.consoleLog("Leader election is not available - this server runs all the periodic jobs");
+        }
+    }
+
+    /**
+     * Checks if this server should run the periodic heavy jobs.
+     *
+     * @return true if this server is the leader, or on its own
+     */
+    public boolean isLeader() {
+        return !clustered || System.currentTimeMillis() < trustedUntil;
+    }
+
+    /**
+     * @return true if the leader is elected among several servers, false if this server is always the leader
+     */
+    public boolean isClustered() {
+        return clustered;
+    }
+
+    /**
+     * Renews the leadership of this server, or tries to take it over. It blocks on the database, and must run more
+     * often than the lease expires.
+     */
+    public void tick() {
+        if (!clustered) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean wasLeader = isLeader();
+        boolean leader = wasLeader
+            ? !plugin.getDataStore().renewLeases(List.of(RESOURCE), plugin.getServerId(), ttlMillis).isEmpty()
+            : plugin.getDataStore().acquireLease(RESOURCE, plugin.getServerId(), ttlMillis);
+        trustedUntil = leader ? now + ttlMillis * 2 / 3 : 0L;
+        if (leader != wasLeader) {
+            UtilServer.consoleLog(leader ? "This server is now the leader" : "This server is no longer the leader");
+        }
+    }
+
+    /**
+     * @return how often {@link #tick()} should run, in milliseconds
+     */
+    public long getTickInterval() {
+        return ttlMillis / 3;
+    }
+
+    /**
+     * Gives up the leadership, so that another server takes over right away.
+     */
+    @Override public void close() {
+        if (clustered && isLeader()) {
+            trustedUntil = 0L;
+            plugin.getDataStore().releaseLeases(List.of(RESOURCE), plugin.getServerId());
+        }
+    }
+
+}
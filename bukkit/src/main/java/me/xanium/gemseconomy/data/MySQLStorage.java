@@ -8,6 +8,7 @@
 
 package me.xanium.gemseconomy.data;
 
+import com.google.common.collect.Lists;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import me.lucko.helper.promise.Promise;
@@ -15,7 +16,9 @@ import me.xanium.gemseconomy.GemsEconomyPlugin;
 import me.xanium.gemseconomy.account.PlayerAccount;
 import me.xanium.gemseconomy.api.Account;
 import me.xanium.gemseconomy.api.Currency;
+import me.xanium.gemseconomy.currency.BalanceType;
 import me.xanium.gemseconomy.currency.ServerCurrency;
+import me.xanium.gemseconomy.message.AccountDelta;
 import me.xanium.gemseconomy.utils.UtilServer;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextColor;
@@ -31,10 +34,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static java.util.Objects.requireNonNull;
@@ -43,11 +51,24 @@ public final class MySQLStorage extends DataStorage {
     // --- Table Names ---
     private final String currencyTable = getTablePrefix() + "_currencies";
     private final String accountsTable = getTablePrefix() + "_accounts";
+    private final String leasesTable = getTablePrefix() + "_leases";
 
     // --- SQL Statements ---
-    private final String SAVE_ACCOUNT = "INSERT INTO `" + getTablePrefix() + "_accounts` (`nickname`, `uuid`, `payable`, `balance_data`, `balance_acc`) VALUES(?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE `nickname` = VALUES(`nickname`), `uuid` = VALUES(`uuid`), `payable` = VALUES(`payable`), `balance_data` = VALUES(`balance_data`), `balance_acc` = VALUES(`balance_acc`)";
+    // Accounts are saved with a compare-and-swap on their version: a save only lands on the version it was made from,
+    // otherwise another server saved the account first, and the changes are re-applied on top of what it saved.
+    private final String INSERT_ACCOUNT = "INSERT IGNORE INTO `" + getTablePrefix() + "_accounts` (`nickname`, `uuid`, `payable`, `balance_data`, `balance_acc`, `version`) VALUES(?, ?, ?, ?, ?, ?)";
+    private final String UPDATE_ACCOUNT = "UPDATE `" + getTablePrefix() + "_accounts` SET `nickname` = ?, `payable` = ?, `balance_data` = ?, `balance_acc` = ?, `version` = ? WHERE `uuid` = ? AND `version` = ?";
     private final String SAVE_CURRENCY = "INSERT INTO `" + getTablePrefix() + "_currencies` (`uuid`, `name`, `default_balance`, `max_balance`, `symbol`, `decimals_supported`, `is_default`, `payable`, `color`, `exchange_rate`) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE `uuid` = VALUES(`uuid`), `name` = VALUES(`name`), `default_balance` = VALUES(`default_balance`), `max_balance` = VALUES(`max_balance`), `symbol` = VALUES(`symbol`), `decimals_supported` = VALUES(`decimals_supported`), `is_default` = VALUES(`is_default`), `payable` = VALUES(`payable`), `color` = VALUES(`color`), `exchange_rate` = VALUES(`exchange_rate`)";
 
+    // The clock of the database is used for leases, so that clock skew between servers doesn't matter
+    private static final String NOW_MILLIS = "CAST(UNIX_TIMESTAMP(NOW(3)) * 1000 AS SIGNED)";
+    // Assignments are evaluated from left to right, so `expires_at` sees the new `owner`
+    private final String ACQUIRE_LEASE = "INSERT INTO `" + getTablePrefix() + "_leases` (`resource`, `owner`, `expires_at`) VALUES(?, ?, " + NOW_MILLIS + " + ?) ON DUPLICATE KEY UPDATE `owner` = IF(`owner` = VALUES(`owner`) OR `expires_at` < " + NOW_MILLIS + ", VALUES(`owner`), `owner`), `expires_at` = IF(`owner` = VALUES(`owner`), VALUES(`expires_at`), `expires_at`)";
+
+    // --- Limits ---
+    private static final int MAX_IN_CLAUSE = 500;
+    private static final int MAX_SAVE_ATTEMPTS = 5;
+
     // --- Hikari ---
     private @Nullable HikariDataSource hikari;
     private final @NonNull HikariConfig hikariConfig;
@@ -59,7 +80,7 @@ public final class MySQLStorage extends DataStorage {
         this.database = database;
 
         this.hikariConfig = new HikariConfig();
-        this.hikariConfig.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database + "?allowPublicKeyRetrieval=true&useSSL=false");
+        this.hikariConfig.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database + "?allowPublicKeyRetrieval=true&useSSL=false&rewriteBatchedStatements=true");
         this.hikariConfig.setPassword(password);
         this.hikariConfig.setUsername(username);
         this.hikariConfig.setMaxLifetime(1500000);
@@ -69,6 +90,17 @@ public final class MySQLStorage extends DataStorage {
         this.hikariConfig.addDataSourceProperty("userServerPrepStmts", "true");
     }
 
+    /**
+     * Sets the maximum size of the connection pool. It must be called before {@link #initialize()}.
+     *
+     * @param size the maximum number of connections
+     * @return this storage
+     */
+    public @NonNull MySQLStorage withPoolSize(int size) {
+        this.hikariConfig.setMaximumPoolSize(size);
+        return this;
+    }
+
     public @NonNull HikariDataSource getHikari() {
         if (hikari == null) {
             throw new IllegalStateException();
@@ -83,10 +115,12 @@ public final class MySQLStorage extends DataStorage {
     private void setupTables(Connection conn) throws SQLException {
         try (
             PreparedStatement stmt1 = conn.prepareStatement("CREATE TABLE IF NOT EXISTS " + this.currencyTable + " (uuid VARCHAR(255) NOT NULL PRIMARY KEY, name VARCHAR(255), default_balance DECIMAL, max_balance DECIMAL, symbol VARCHAR(255), decimals_supported TINYINT, is_default TINYINT, payable TINYINT, color VARCHAR(255), exchange_rate DECIMAL);");
-            PreparedStatement stmt2 = conn.prepareStatement("CREATE TABLE IF NOT EXISTS " + this.accountsTable + " (nickname VARCHAR(255), uuid VARCHAR(255) NOT NULL PRIMARY KEY, payable TINYINT, balance_data LONGTEXT NULL);")
+            PreparedStatement stmt2 = conn.prepareStatement("CREATE TABLE IF NOT EXISTS " + this.accountsTable + " (nickname VARCHAR(255), uuid VARCHAR(255) NOT NULL PRIMARY KEY, payable TINYINT, balance_data LONGTEXT NULL, balance_acc LONGTEXT NULL, version BIGINT NOT NULL DEFAULT 0);");
+            PreparedStatement stmt3 = conn.prepareStatement("CREATE TABLE IF NOT EXISTS " + this.leasesTable + " (resource VARCHAR(255) NOT NULL PRIMARY KEY, owner VARCHAR(255) NOT NULL, expires_at BIGINT NOT NULL);")
         ) {
             stmt1.execute();
             stmt2.execute();
+            stmt3.execute();
         }
     }
 
@@ -212,6 +246,14 @@ public final class MySQLStorage extends DataStorage {
                         UtilServer.consoleLog("Altered table " + accountsTable + " to support the records of accumulated balance");
                     }
                 }
+                if (!accountTableColumns.contains("version")) {
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                        "ALTER TABLE " + accountsTable + " ADD version BIGINT NOT NULL DEFAULT 0 AFTER `balance_acc`;"
+                    )) {
+                        stmt.execute();
+                        UtilServer.consoleLog("Altered table " + accountsTable + " to support the versions of accounts");
+                    }
+                }
             }
             // endregion
         } catch (SQLException e) {
@@ -226,6 +268,11 @@ public final class MySQLStorage extends DataStorage {
         }
     }
 
+    @Override
+    public int getMaxConnections() {
+        return getHikari().getMaximumPoolSize();
+    }
+
     @Override
     public List<Currency> loadCurrencies() {
         requireNonNull(hikari, "hikari");
@@ -312,7 +359,7 @@ public final class MySQLStorage extends DataStorage {
             stmt.setString(1, account.getUuid().toString());
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return updateAccountFromDatabase(rs, account);
+                    return refreshAccountFromDatabase(rs, account);
                 }
             }
         } catch (SQLException | ParseException e) {
@@ -321,6 +368,33 @@ public final class MySQLStorage extends DataStorage {
         return account;
     }
 
+    @Override
+    public void updateAccounts(final @NonNull Collection<Account> accounts) {
+        Map<String, Account> byUuid = new HashMap<>(accounts.size());
+        accounts.forEach(account -> byUuid.put(account.getUuid().toString(), account));
+        for (List<String> chunk : Lists.partition(new ArrayList<>(byUuid.keySet()), MAX_IN_CLAUSE)) {
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            try (
+                Connection conn = getHikari().getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT * FROM " + accountsTable + " WHERE uuid IN (" + placeholders + ")")
+            ) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Account account = byUuid.get(rs.getString("uuid"));
+                        if (account != null) {
+                            refreshAccountFromDatabase(rs, account);
+                        }
+                    }
+                }
+            } catch (SQLException | ParseException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     @Override
     public @Nullable Account loadAccount(final @NonNull String name) {
         try (
@@ -342,22 +416,23 @@ public final class MySQLStorage extends DataStorage {
 
     @Override
     public @Nullable Account loadAccount(final @NonNull UUID uuid) {
-        try (
-            Connection conn = getHikari().getConnection();
-            PreparedStatement stmt = conn.prepareStatement("SELECT * FROM " + accountsTable + " WHERE uuid = ? LIMIT 1")
-        ) {
-            stmt.setString(1, uuid.toString());
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return loadAccountFromDatabase(rs);
-                }
-            }
+        try (Connection conn = getHikari().getConnection()) {
+            return loadAccount(conn, uuid);
         } catch (SQLException | ParseException e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    private @Nullable Account loadAccount(final Connection conn, final @NonNull UUID uuid) throws SQLException, ParseException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM " + accountsTable + " WHERE uuid = ? LIMIT 1")) {
+            stmt.setString(1, uuid.toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? loadAccountFromDatabase(rs) : null;
+            }
+        }
+    }
+
     @Override
     public void createAccount(final @NonNull Account account) {
         saveAccountToDatabase(account);
@@ -370,6 +445,41 @@ public final class MySQLStorage extends DataStorage {
         UtilServer.consoleLog("Account saved: " + account.getNickname() + " - " + account.getUuid());
     }
 
+    @Override
+    public void saveAccounts(final @NonNull Collection<Account> accounts) {
+        if (accounts.isEmpty()) {
+            return;
+        }
+        try (
+            Connection conn = getHikari().getConnection();
+            PreparedStatement stmt = conn.prepareStatement(UPDATE_ACCOUNT)
+        ) {
+            List<PlayerAccount> batched = new ArrayList<>(accounts.size());
+            List<PlayerAccount.Snapshot> snapshots = new ArrayList<>(accounts.size());
+            for (Account account : accounts) {
+                PlayerAccount playerAccount = (PlayerAccount) account;
+                PlayerAccount.Snapshot snapshot = playerAccount.snapshot();
+                writeUpdateToStatement(stmt, playerAccount, snapshot);
+                stmt.addBatch();
+                batched.add(playerAccount);
+                snapshots.add(snapshot);
+            }
+            int[] counts = stmt.executeBatch(); // Unlike INSERT batches, UPDATE batches are rewritten to multi-queries, which keep the count of each
+            int conflicts = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 1) {
+                    batched.get(i).markSaved(snapshots.get(i));
+                } else {
+                    saveAccountToDatabase(conn, batched.get(i)); // Missing, or saved by another server first
+                    conflicts++;
+                }
+            }
+            UtilServer.consoleLog("Accounts saved in batch: " + accounts.size() + " (saved one by one: " + conflicts + ")");
+        } catch (SQLException | ParseException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     public void deleteAccount(final @NonNull Account account) {
         deleteAccount(account.getUuid());
@@ -423,37 +533,176 @@ public final class MySQLStorage extends DataStorage {
     }
 
     @Override
-    public @NonNull Promise<List<TransientBalance>> getTransientBalances(final @NonNull Currency currency) {
-        return Promise.supplyingAsync(() -> {
-            List<TransientBalance> balances = new ArrayList<>();
+    public @NonNull Promise<Map<BalanceType, Map<UUID, TopBalances>>> getTopBalances(final @NonNull Collection<Currency> currencies, int limit) {
+        return plugin.getIoExecutor().supply(() -> {
+            Map<String, TopBalances> balanceByKey = new HashMap<>();
+            Map<String, TopBalances> heapByKey = new HashMap<>();
+            currencies.forEach(currency -> {
+                balanceByKey.put(currency.getUuid().toString(), new TopBalances(limit));
+                heapByKey.put(currency.getUuid().toString(), new TopBalances(limit));
+            });
             try (
                 Connection conn = getHikari().getConnection();
-                PreparedStatement stmt = conn.prepareStatement("SELECT * FROM " + accountsTable);
-                ResultSet rs = stmt.executeQuery()
+                PreparedStatement stmt = conn.prepareStatement("SELECT uuid, nickname, balance_data, balance_acc FROM " + accountsTable, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
             ) {
-                while (rs.next()) {
-                    String json = rs.getString("balance_data");
-                    JSONObject data = (JSONObject) new JSONParser().parse(json);
-                    Number bal = (Number) data.get(currency.getUuid().toString());
-                    if (bal == null)
-                        continue; // Should rarely happen, but anyway
-                    balances.add(new TransientBalance(rs.getString("nickname"), bal.doubleValue()));
+                stmt.setFetchSize(Integer.MIN_VALUE); // Stream the rows instead of buffering the whole table
+                try (ResultSet rs = stmt.executeQuery()) {
+                    JSONParser parser = new JSONParser();
+                    while (rs.next()) {
+                        // Decode each row once, for all the currencies and types
+                        String key = rs.getString("uuid");
+                        try {
+                            UUID uuid = UUID.fromString(key);
+                            String nickname = rs.getString("nickname");
+                            offerAll(parser, rs.getString("balance_data"), balanceByKey, uuid, nickname);
+                            offerAll(parser, rs.getString("balance_acc"), heapByKey, uuid, nickname);
+                        } catch (ParseException | RuntimeException ex) {
+                            // One broken row must not cut the whole leaderboard short
+                            UtilServer.consoleLog("§cSkipped malformed account in leaderboard scan: " + key + " (" + ex + ")");
+                        }
+                    }
                 }
-            } catch (SQLException | ParseException ex) {
-                ex.printStackTrace();
+            } catch (SQLException ex) {
+                // Fail instead of publishing what has been read so far, so that the previous leaderboards stay
+                throw new IllegalStateException("Failed to scan the accounts for leaderboards", ex);
             }
+            Map<BalanceType, Map<UUID, TopBalances>> balances = new EnumMap<>(BalanceType.class);
+            balances.put(BalanceType.BALANCE, byCurrencyUuid(balanceByKey));
+            balances.put(BalanceType.HEAP, byCurrencyUuid(heapByKey));
             return balances;
         });
     }
 
+    private static void offerAll(JSONParser parser, @Nullable String json, Map<String, TopBalances> byKey, UUID uuid, String nickname) throws ParseException {
+        if (json == null)
+            return;
+        JSONObject data = (JSONObject) parser.parse(json);
+        for (Map.Entry<String, TopBalances> entry : byKey.entrySet()) {
+            Number bal = (Number) data.get(entry.getKey());
+            if (bal == null)
+                continue; // Should rarely happen, but anyway
+            entry.getValue().offer(uuid, nickname, bal.doubleValue());
+        }
+    }
+
+    private static Map<UUID, TopBalances> byCurrencyUuid(Map<String, TopBalances> byKey) {
+        Map<UUID, TopBalances> result = new HashMap<>(byKey.size());
+        byKey.forEach((key, value) -> result.put(UUID.fromString(key), value));
+        return result;
+    }
+
+    @Override
+    public boolean isLeaseSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean acquireLease(final @NonNull String resource, final @NonNull String owner, long ttlMillis) {
+        try (
+            Connection conn = getHikari().getConnection();
+            PreparedStatement stmt1 = conn.prepareStatement(ACQUIRE_LEASE);
+            PreparedStatement stmt2 = conn.prepareStatement("SELECT owner FROM " + leasesTable + " WHERE resource = ? LIMIT 1")
+        ) {
+            stmt1.setString(1, resource);
+            stmt1.setString(2, owner);
+            stmt1.setLong(3, ttlMillis);
+            stmt1.execute();
+            stmt2.setString(1, resource);
+            try (ResultSet rs = stmt2.executeQuery()) {
+                return rs.next() && owner.equals(rs.getString("owner"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    @Override
+    public @Nullable String getLeaseOwner(final @NonNull String resource) {
+        try (
+            Connection conn = getHikari().getConnection();
+            PreparedStatement stmt = conn.prepareStatement("SELECT owner FROM " + leasesTable + " WHERE resource = ? AND expires_at > " + NOW_MILLIS + " LIMIT 1")
+        ) {
+            stmt.setString(1, resource);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString("owner") : null;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public @NonNull Set<String> renewLeases(final @NonNull Collection<String> resources, final @NonNull String owner, long ttlMillis) {
+        Set<String> renewed = new HashSet<>(resources.size());
+        for (List<String> chunk : Lists.partition(new ArrayList<>(resources), MAX_IN_CLAUSE)) {
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            try (
+                Connection conn = getHikari().getConnection();
+                PreparedStatement stmt1 = conn.prepareStatement("UPDATE " + leasesTable + " SET expires_at = " + NOW_MILLIS + " + ? WHERE owner = ? AND resource IN (" + placeholders + ")");
+                PreparedStatement stmt2 = conn.prepareStatement("SELECT resource FROM " + leasesTable + " WHERE owner = ? AND resource IN (" + placeholders + ")")
+            ) {
+                stmt1.setLong(1, ttlMillis);
+                stmt1.setString(2, owner);
+                stmt2.setString(1, owner);
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt1.setString(i + 3, chunk.get(i));
+                    stmt2.setString(i + 2, chunk.get(i));
+                }
+                stmt1.execute();
+                try (ResultSet rs = stmt2.executeQuery()) {
+                    while (rs.next()) {
+                        renewed.add(rs.getString("resource"));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return renewed;
+    }
+
+    @Override
+    public void releaseLeases(final @NonNull Collection<String> resources, final @NonNull String owner) {
+        for (List<String> chunk : Lists.partition(new ArrayList<>(resources), MAX_IN_CLAUSE)) {
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            try (
+                Connection conn = getHikari().getConnection();
+                PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + leasesTable + " WHERE owner = ? AND resource IN (" + placeholders + ")")
+            ) {
+                stmt.setString(1, owner);
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 2, chunk.get(i));
+                }
+                stmt.execute();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Common logics of loading an account from database.
      */
     private Account loadAccountFromDatabase(final ResultSet rs) throws SQLException, ParseException {
-        Account account = new PlayerAccount(
+        PlayerAccount account = new PlayerAccount(
             UUID.fromString(rs.getString("uuid")),
             rs.getString("nickname")
         );
+        updateAccountFromDatabase(rs, account);
+        account.markSaved(); // It's what a save of this account expects to find in database
+        return account;
+    }
+
+    /**
+     * Common logics of updating an account, which may have changes not saved yet, from database.
+     */
+    private Account refreshAccountFromDatabase(final ResultSet rs, final Account account) throws SQLException, ParseException {
+        if (account instanceof PlayerAccount playerAccount) {
+            playerAccount.rebase(loadAccountFromDatabase(rs)); // Keeps the changes not saved yet
+            return account;
+        }
         return updateAccountFromDatabase(rs, account);
     }
 
@@ -462,6 +711,7 @@ public final class MySQLStorage extends DataStorage {
      */
     private Account updateAccountFromDatabase(final ResultSet resultSet, final Account account) throws SQLException, ParseException {
         account.setCanReceiveCurrency(resultSet.getInt("payable") == 1);
+        account.setVersion(resultSet.getLong("version"));
 
         // These two columns may contain null values
         String balanceDataRaw = Optional.ofNullable(resultSet.getString("balance_data")).orElse("{}");
@@ -493,28 +743,92 @@ public final class MySQLStorage extends DataStorage {
     /**
      * Common logics of saving an account to database.
      */
-    @SuppressWarnings("unchecked")
     private void saveAccountToDatabase(final @NonNull Account account) {
-        try (
-            Connection conn = getHikari().getConnection();
-            PreparedStatement stmt = conn.prepareStatement(SAVE_ACCOUNT)
-        ) {
-            stmt.setString(1, account.getDisplayName()); // write nickname
-            stmt.setString(2, account.getUuid().toString()); // write uuid
-            stmt.setInt(3, account.canReceiveCurrency() ? 1 : 0); // write payable
+        try (Connection conn = getHikari().getConnection()) {
+            saveAccountToDatabase(conn, (PlayerAccount) account);
+        } catch (SQLException | ParseException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Saves an account with a compare-and-swap on its version.
+     * <p>
+     * If another server saved the account first, the stored account is loaded, the changes of this account are
+     * re-applied on top of it (see {@link PlayerAccount#rebase(Account)}), and the save is tried again. Other servers
+     * are then told to reload the account, since the changes they received from this server were made on the version
+     * which lost.
+     *
+     * @return true if the account is saved
+     */
+    private boolean saveAccountToDatabase(final Connection conn, final @NonNull PlayerAccount account) throws SQLException, ParseException {
+        boolean rebased = false;
+        for (int attempt = 0; attempt < MAX_SAVE_ATTEMPTS; attempt++) {
+            PlayerAccount.Snapshot snapshot = account.snapshot();
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_ACCOUNT)) {
+                writeUpdateToStatement(stmt, account, snapshot);
+                if (stmt.executeUpdate() == 1) {
+                    account.markSaved(snapshot);
+                    if (rebased) {
+                        onRebased(account, snapshot);
+                    }
+                    return true;
+                }
+            }
+            Account stored = loadAccount(conn, account.getUuid());
+            if (stored == null) {
+                try (PreparedStatement stmt = conn.prepareStatement(INSERT_ACCOUNT)) {
+                    writeInsertToStatement(stmt, account, snapshot);
+                    if (stmt.executeUpdate() == 1) {
+                        account.markSaved(snapshot);
+                        return true;
+                    }
+                }
+                continue; // Created by another server in the meantime
+            }
+            account.rebase(stored);
+            rebased = true;
+        }
+        UtilServer.consoleLog("§cAccount not saved, as other servers kept saving it first: " + account.getNickname() + " - " + account.getUuid());
+        return false;
+    }
 
-            final JSONObject balJsonObj = new JSONObject();
-            account.getBalances().forEach((currency, balance) -> balJsonObj.put(currency.getUuid().toString(), balance));
-            stmt.setString(4, balJsonObj.toJSONString()); // write balance
+    private void onRebased(final PlayerAccount account, final PlayerAccount.Snapshot snapshot) {
+        UtilServer.consoleLog("Account saved by another server first, changes re-applied: " + account.getNickname() + " - " + account.getUuid() + " (version: " + snapshot.version() + ")");
+        plugin.getMessenger().sendAccountUpdate(AccountDelta.reload(account.getUuid()));
+        plugin.getBalanceTopRepository().onAccountLoaded(account);
+    }
+
+    /**
+     * Common logics of binding an account to the {@link #UPDATE_ACCOUNT} statement.
+     */
+    private void writeUpdateToStatement(final PreparedStatement stmt, final @NonNull Account account, final PlayerAccount.Snapshot snapshot) throws SQLException {
+        stmt.setString(1, account.getDisplayName()); // write nickname
+        stmt.setInt(2, account.canReceiveCurrency() ? 1 : 0); // write payable
+        stmt.setString(3, toJson(snapshot.balances())); // write balance
+        stmt.setString(4, toJson(snapshot.heapBalances())); // write accumulated balance
+        stmt.setLong(5, snapshot.version()); // write version
+        stmt.setString(6, account.getUuid().toString()); // where uuid
+        stmt.setLong(7, snapshot.savedVersion()); // where version
+    }
 
-            final JSONObject accBalJsonObj = new JSONObject();
-            account.getHeapBalances().forEach((currency, balance) -> accBalJsonObj.put(currency.getUuid().toString(), balance));
-            stmt.setString(5, accBalJsonObj.toJSONString()); // write accumulated balance
+    /**
+     * Common logics of binding an account to the {@link #INSERT_ACCOUNT} statement.
+     */
+    private void writeInsertToStatement(final PreparedStatement stmt, final @NonNull Account account, final PlayerAccount.Snapshot snapshot) throws SQLException {
+        stmt.setString(1, account.getDisplayName()); // write nickname
+        stmt.setString(2, account.getUuid().toString()); // write uuid
+        stmt.setInt(3, account.canReceiveCurrency() ? 1 : 0); // write payable
+        stmt.setString(4, toJson(snapshot.balances())); // write balance
+        stmt.setString(5, toJson(snapshot.heapBalances())); // write accumulated balance
+        stmt.setLong(6, snapshot.version()); // write version
+    }
 
-            stmt.execute();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    @SuppressWarnings("unchecked")
+    private static String toJson(final Map<Currency, Double> balances) {
+        final JSONObject json = new JSONObject();
+        balances.forEach((currency, balance) -> json.put(currency.getUuid().toString(), balance));
+        return json.toJSONString();
     }
 
     /**
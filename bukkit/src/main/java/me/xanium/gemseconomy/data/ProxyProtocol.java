@@ -0,0 +1,59 @@
+package me.xanium.gemseconomy.data;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+
+import java.util.UUID;
+
+/**
+ * The plugin messaging protocol between backend servers and the proxy.
+ * <p>
+ * Requests sent by backends start with a non-zero request id and an operation code, and the proxy responds with
+ * the same request id and a status code. Messages which expect no response - pushes sent by the proxy, and relays or
+ * interest reports sent by backends - start with request id {@code 0}, followed by an operation code.
+ * <p>
+ * Must be kept in sync with {@code me.xanium.gemseconomy.velocity.ProxyProtocol} of the proxy plugin.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public final class ProxyProtocol {
+
+    public static final String CHANNEL = "gemseconomy:main";
+
+    public static final long PUSH = 0L;
+
+    // --- Requests ---
+    public static final byte LOAD_ACCOUNT = 1;
+    public static final byte LOAD_ACCOUNT_BY_NAME = 2;
+    public static final byte LOAD_ACCOUNTS = 3;
+    public static final byte CREATE_ACCOUNT = 4;
+    public static final byte APPLY_TRANSACTION = 5;
+    public static final byte DELETE_ACCOUNT = 6;
+    public static final byte SET_BALANCES = 7;
+    public static final byte LOAD_ALL_ACCOUNTS = 8;
+
+    // --- Pushes ---
+    public static final byte ACCOUNTS_UPDATED = 20;
+    public static final byte ACCOUNTS_DELETED = 21;
+    public static final byte RELAY = 22;
+    public static final byte INTEREST = 23;
+
+    // --- Statuses ---
+    public static final byte OK = 0;
+    public static final byte NOT_FOUND = 1;
+    public static final byte ERROR = 2;
+    public static final byte REJECTED = 3;
+
+    public static UUID readUUID(ByteArrayDataInput in) {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    public static void writeUUID(ByteArrayDataOutput out, UUID uuid) {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private ProxyProtocol() {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,711 @@
+package me.xanium.gemseconomy.data;
+
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import me.lucko.helper.promise.Promise;
+import me.lucko.helper.terminable.Terminable;
+import me.xanium.gemseconomy.account.PlayerAccount;
+import me.xanium.gemseconomy.api.Account;
+import me.xanium.gemseconomy.api.Currency;
+import me.xanium.gemseconomy.currency.BalanceType;
+import me.xanium.gemseconomy.utils.UtilServer;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static me.xanium.gemseconomy.data.ProxyProtocol.*;
+
+/**
+ * A storage which sends account reads and transactions to the proxy plugin, which holds the authoritative cache of
+ * accounts and the only large connection pool of the network.
+ * <p>
+ * Plugin messages can only be sent through an online player, so a small direct connection pool is kept as fallback.
+ * It's only used for currencies (which are loaded before anyone can join) and the read-only scans of leaderboards.
+ * Accounts are never read or written around the proxy, as the proxy may hold changes not written to database yet, and
+ * would overwrite whatever is written behind its back. While this server is empty, account changes are queued and sent
+ * once someone joins, and account reads fail.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public final class ProxyStorage extends DataStorage implements PluginMessageListener {
+
+    private static final long REQUEST_TIMEOUT_MILLIS = 3000L;
+    private static final long RESEND_INTERVAL_MILLIS = 1000L;
+    private static final int MAX_CONCURRENT_REQUESTS = 8;
+    private static final int SCAN_PAGE_SIZE = 64; // Keeps each response well below the size limit of plugin messages
+
+    private final @NonNull MySQLStorage fallback;
+    private final AtomicLong requestIds = new AtomicLong();
+    private final Map<Long, CompletableFuture<ByteArrayDataInput>> pending = new ConcurrentHashMap<>();
+    /**
+     * The ids of requests sent without waiting, whose responses carry the new state of an account.
+     */
+    private final Set<Long> unawaited = ConcurrentHashMap.newKeySet();
+    /**
+     * The balances of each account which the proxy already knows about, so that only the changes are sent.
+     */
+    private final Map<UUID, Snapshot> acknowledged = new ConcurrentHashMap<>();
+    /**
+     * The accounts whose changes couldn't be sent yet, because nobody was online to carry them.
+     */
+    private final Map<UUID, Account> unsent = new ConcurrentHashMap<>();
+    /**
+     * The unsent accounts whose balances are to be overwritten, rather than changed.
+     */
+    private final Set<UUID> unsentOverwrites = ConcurrentHashMap.newKeySet();
+    /**
+     * The accounts created while nobody was online, which the proxy doesn't know about yet.
+     */
+    private final Set<UUID> uncreated = ConcurrentHashMap.newKeySet();
+    /**
+     * The accounts deleted while nobody was online.
+     */
+    private final Set<UUID> undeleted = ConcurrentHashMap.newKeySet();
+    private @Nullable Terminable resendTask;
+    private @Nullable RelayHandler relayHandler;
+
+    public ProxyStorage(@NonNull MySQLStorage fallback) {
+        super(StorageType.PROXY, true);
+        this.fallback = fallback;
+    }
+
+    @Override
+    public void initialize() {
+        fallback.initialize();
+        Bukkit.getMessenger().registerOutgoingPluginChannel(plugin, CHANNEL);
+        Bukkit.getMessenger().registerIncomingPluginChannel(plugin, CHANNEL, this);
+        resendTask = plugin.getMessageExecutor().runRepeating(this::sendUnsent, RESEND_INTERVAL_MILLIS);
+    }
+
+    @Override
+    public void close() {
+        if (resendTask != null) {
+            resendTask.closeSilently();
+        }
+        sendUnsent();
+        if (!unsent.isEmpty() || !undeleted.isEmpty()) {
+            UtilServer.consoleLog("§cNobody is online to carry the changes of " + (unsent.size() + undeleted.size()) + " accounts to proxy, they are lost");
+        }
+        Bukkit.getMessenger().unregisterOutgoingPluginChannel(plugin, CHANNEL);
+        Bukkit.getMessenger().unregisterIncomingPluginChannel(plugin, CHANNEL, this);
+        pending.values().forEach(future -> future.cancel(false));
+        fallback.close();
+    }
+
+    /**
+     * Sets the handler of messages relayed by the proxy from other servers.
+     */
+    public void setRelayHandler(@Nullable RelayHandler relayHandler) {
+        this.relayHandler = relayHandler;
+    }
+
+    /**
+     * Sends a message to be relayed by the proxy to the other servers.
+     *
+     * @return true if the message is sent; false if there is nobody online to carry it
+     */
+    public boolean relay(@NonNull String action, byte @NonNull [] data) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput(data.length + 32);
+        out.writeLong(PUSH);
+        out.writeByte(RELAY);
+        out.writeUTF(action);
+        out.writeInt(data.length);
+        out.write(data);
+        return send(out.toByteArray());
+    }
+
+    /**
+     * Tells the proxy which accounts are now held by this server, so that it only pushes changes of those accounts.
+     *
+     * @param reset   if true, the proxy forgets all the accounts previously reported by this server
+     * @param added   the accounts loaded into the cache
+     * @param removed the accounts removed from the cache
+     * @return true if the report is sent; false if there is nobody online to carry it
+     */
+    public boolean reportInterest(boolean reset, @NonNull Collection<UUID> added, @NonNull Collection<UUID> removed) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput(16 * (added.size() + removed.size()) + 32);
+        out.writeLong(PUSH);
+        out.writeByte(INTEREST);
+        out.writeBoolean(reset);
+        out.writeInt(added.size());
+        added.forEach(uuid -> writeUUID(out, uuid));
+        out.writeInt(removed.size());
+        removed.forEach(uuid -> writeUUID(out, uuid));
+        return send(out.toByteArray());
+    }
+
+    /* ---------------- Currencies ---------------- */
+
+    @Override
+    public List<Currency> loadCurrencies() {
+        return fallback.loadCurrencies();
+    }
+
+    @Override
+    public @Nullable Currency loadCurrency(final @NonNull UUID uuid) {
+        return fallback.loadCurrency(uuid);
+    }
+
+    @Override
+    public void saveCurrency(final @NonNull Currency currency) {
+        fallback.saveCurrency(currency);
+    }
+
+    @Override
+    public void deleteCurrency(final @NonNull Currency currency) {
+        fallback.deleteCurrency(currency);
+    }
+
+    /* ---------------- Accounts ---------------- */
+
+    @Override
+    public @Nullable Account updateAccount(final @Nullable Account account) {
+        if (account == null) {
+            return null;
+        }
+        ByteArrayDataInput in;
+        try {
+            in = request(LOAD_ACCOUNT, out -> writeUUID(out, account.getUuid()));
+        } catch (IllegalStateException e) {
+            UtilServer.consoleLog("§cAccount not updated: " + e.getMessage());
+            return account;
+        }
+        if (in.readByte() == OK) {
+            copyInto(acknowledge(readSnapshot(in)), account);
+        }
+        return account;
+    }
+
+    @Override
+    public void updateAccounts(final @NonNull Collection<Account> accounts) {
+        Map<UUID, Account> byUuid = new HashMap<>(accounts.size());
+        accounts.forEach(account -> byUuid.put(account.getUuid(), account));
+        ByteArrayDataInput in;
+        try {
+            in = request(LOAD_ACCOUNTS, out -> {
+                out.writeInt(byUuid.size());
+                byUuid.keySet().forEach(uuid -> writeUUID(out, uuid));
+            });
+        } catch (IllegalStateException e) {
+            UtilServer.consoleLog("§c" + accounts.size() + " accounts not updated: " + e.getMessage());
+            return;
+        }
+        if (in.readByte() != OK) {
+            return;
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Snapshot snapshot = acknowledge(readSnapshot(in));
+            Account account = byUuid.get(snapshot.uuid());
+            if (account != null) {
+                copyInto(snapshot, account);
+            }
+        }
+    }
+
+    /**
+     * Accounts can't be loaded on the main thread, as the response of the proxy is delivered on that very thread.
+     */
+    @Override
+    public boolean canLoadAccounts() {
+        return !Bukkit.isPrimaryThread();
+    }
+
+    /**
+     * @throws IllegalStateException if the proxy can't be reached, or if it's called on the main thread
+     * @see #canLoadAccounts()
+     */
+    @Override
+    public @Nullable Account loadAccount(final @NonNull String name) {
+        return readAccountResponse(request(LOAD_ACCOUNT_BY_NAME, out -> out.writeUTF(name)));
+    }
+
+    /**
+     * @throws IllegalStateException if the proxy can't be reached, or if it's called on the main thread
+     * @see #canLoadAccounts()
+     */
+    @Override
+    public @Nullable Account loadAccount(final @NonNull UUID uuid) {
+        return readAccountResponse(request(LOAD_ACCOUNT, out -> writeUUID(out, uuid)));
+    }
+
+    @Override
+    public void createAccount(final @NonNull Account account) {
+        Snapshot current = Snapshot.of(account);
+        if (!send(CREATE_ACCOUNT, current::write)) {
+            uncreated.add(account.getUuid());
+            unsent.put(account.getUuid(), account);
+            return;
+        }
+        uncreated.remove(account.getUuid());
+        acknowledged.put(account.getUuid(), current);
+        UtilServer.consoleLog("Account created and sent to proxy: " + account.getNickname() + " - " + account.getUuid());
+    }
+
+    @Override
+    public void saveAccount(final @NonNull Account account) {
+        saveAccount(account, false);
+    }
+
+    /**
+     * Sends the balances which changed since the proxy last heard of the accounts as they are, instead of as changes,
+     * so that the proxy ends up with exactly these balances.
+     */
+    @Override
+    public void overwriteAccounts(final @NonNull Collection<Account> accounts) {
+        accounts.forEach(account -> saveAccount(account, true));
+    }
+
+    /**
+     * Sends the changes of specific account to the proxy.
+     * <p>
+     * Changes are sent as differences, so that they add up with the changes made on other servers at the same time.
+     * The balances are sent as they are instead if they are to be overwritten, or if there is no known state to take
+     * the differences from, or if a currency is removed - a removal can't be expressed as a difference.
+     */
+    private void saveAccount(Account account, boolean overwrite) {
+        UUID uuid = account.getUuid();
+        if (uncreated.contains(uuid)) {
+            createAccount(account); // The creation carries the latest balances
+            return;
+        }
+        Snapshot current = Snapshot.of(account);
+        Snapshot base = acknowledged.put(uuid, current);
+        if (current.equals(base)) {
+            return; // Nothing changed since the proxy last heard of it
+        }
+        boolean absolute = overwrite || base == null || !current.balances().keySet().containsAll(base.balances().keySet());
+        boolean sent = absolute
+            ? send(SET_BALANCES, out -> writeBalances(out, account, current, base))
+            : send(APPLY_TRANSACTION, out -> writeTransaction(out, account, current, base));
+        if (!sent) {
+            // Keep what the proxy knows as the base, so that the changes add up until someone can carry them
+            if (base != null) {
+                acknowledged.replace(uuid, current, base);
+            } else {
+                acknowledged.remove(uuid, current);
+            }
+            if (overwrite) {
+                unsentOverwrites.add(uuid);
+            }
+            unsent.put(uuid, account);
+            return;
+        }
+        UtilServer.consoleLog("Account " + (absolute ? "balances" : "changes") + " sent to proxy: " + account.getNickname() + " - " + account.getUuid());
+    }
+
+    @Override
+    public void deleteAccount(final @NonNull Account account) {
+        deleteAccount(account.getUuid());
+    }
+
+    @Override
+    public void deleteAccount(final @NonNull UUID uuid) {
+        acknowledged.remove(uuid);
+        unsent.remove(uuid);
+        unsentOverwrites.remove(uuid);
+        if (uncreated.remove(uuid)) {
+            return; // The proxy never heard of it
+        }
+        if (!send(DELETE_ACCOUNT, out -> writeUUID(out, uuid))) {
+            undeleted.add(uuid);
+        }
+    }
+
+    @Override
+    public void deleteAccount(final @NonNull String name) {
+        Account account = loadAccount(name);
+        if (account != null) {
+            deleteAccount(account.getUuid());
+        }
+    }
+
+    /**
+     * Loads all the accounts from the proxy page by page, so that the changes not written to database yet are included.
+     *
+     * @throws IllegalStateException if the proxy can't be reached, so that the caller never works on part of the accounts
+     */
+    @Override
+    public @NonNull List<Account> getOfflineAccounts() {
+        List<Account> accounts = new ArrayList<>();
+        UUID after = null;
+        while (true) {
+            UUID last = after;
+            ByteArrayDataInput in = request(LOAD_ALL_ACCOUNTS, out -> {
+                out.writeBoolean(last != null);
+                if (last != null) {
+                    writeUUID(out, last);
+                }
+                out.writeInt(SCAN_PAGE_SIZE);
+            });
+            if (in.readByte() != OK) {
+                throw new IllegalStateException("Proxy failed to load all accounts");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Snapshot snapshot = readSnapshot(in);
+                accounts.add(toAccount(snapshot));
+                after = snapshot.uuid();
+            }
+            if (count < SCAN_PAGE_SIZE) {
+                return accounts;
+            }
+        }
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return Math.max(fallback.getMaxConnections(), MAX_CONCURRENT_REQUESTS); // Requests to the proxy don't hold a connection of the fallback pool
+    }
+
+    @Override
+    public @NonNull Promise<Map<BalanceType, Map<UUID, TopBalances>>> getTopBalances(final @NonNull Collection<Currency> currencies, int limit) {
+        return fallback.getTopBalances(currencies, limit);
+    }
+
+    /**
+     * Sends the account changes queued while nobody was online, if someone is online now.
+     */
+    private void sendUnsent() {
+        if ((unsent.isEmpty() && undeleted.isEmpty()) || Bukkit.getOnlinePlayers().isEmpty()) {
+            return;
+        }
+        for (UUID uuid : undeleted) {
+            if (undeleted.remove(uuid)) {
+                deleteAccount(uuid);
+            }
+        }
+        for (Account account : unsent.values()) {
+            if (unsent.remove(account.getUuid(), account)) {
+                saveAccount(account, unsentOverwrites.remove(account.getUuid()));
+            }
+        }
+    }
+
+    /* ---------------- Messaging ---------------- */
+
+    @Override
+    public void onPluginMessageReceived(final @NonNull String channel, final @NonNull Player player, final byte @NonNull [] message) {
+        if (!channel.equals(CHANNEL)) {
+            return;
+        }
+        ByteArrayDataInput in = ByteStreams.newDataInput(message);
+        long requestId = in.readLong();
+        if (requestId != PUSH) {
+            CompletableFuture<ByteArrayDataInput> future = pending.remove(requestId);
+            if (future != null) {
+                future.complete(in);
+            } else if (unawaited.remove(requestId)) {
+                // Nobody is waiting for it - it's the new state of an account after a transaction
+                plugin.getMessageExecutor().execute(() -> handleTransactionResult(in));
+            }
+            return;
+        }
+        byte op = in.readByte();
+        plugin.getMessageExecutor().execute(() -> {
+            switch (op) {
+                case ACCOUNTS_UPDATED -> {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        applySnapshot(readSnapshot(in));
+                    }
+                }
+                case ACCOUNTS_DELETED -> {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        UUID uuid = readUUID(in);
+                        acknowledged.remove(uuid);
+                        plugin.getAccountManager().flushAccount(uuid);
+                    }
+                }
+                case RELAY -> {
+                    String origin = in.readUTF();
+                    String action = in.readUTF();
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    RelayHandler handler = relayHandler;
+                    if (handler != null) {
+                        handler.receive(origin, action, data);
+                    }
+                }
+            }
+        });
+    }
+
+    private void handleTransactionResult(ByteArrayDataInput in) {
+        byte status = in.readByte();
+        if (status == OK) {
+            applySnapshot(readSnapshot(in));
+        } else if (status == REJECTED) {
+            // Another server spent the same funds first - go back to the real balances, whatever version we are at
+            Snapshot snapshot = readSnapshot(in);
+            acknowledged.put(snapshot.uuid(), snapshot);
+            Account account = plugin.getAccountManager().getCachedAccount(snapshot.uuid());
+            if (account != null) {
+                copyInto(snapshot, account);
+            }
+            UtilServer.consoleLog("§cProxy rejected the transaction of account " + snapshot.nickname() + " - " + snapshot.uuid() + ", balances reverted");
+        }
+    }
+
+    /**
+     * Applies the state of an account decided by the proxy to the cached account, if it's newer than what we know.
+     */
+    private void applySnapshot(Snapshot snapshot) {
+        Snapshot known = acknowledged.get(snapshot.uuid());
+        if (known != null && known.version() > snapshot.version()) {
+            return; // Arrived out of order
+        }
+        acknowledged.put(snapshot.uuid(), snapshot);
+        Account account = plugin.getAccountManager().getCachedAccount(snapshot.uuid());
+        if (account != null) {
+            copyInto(snapshot, account);
+        }
+    }
+
+    /**
+     * Sends a request to the proxy without waiting for the response.
+     * <p>
+     * If the response carries the new state of an account, it will be applied to the cached account.
+     *
+     * @return true if the request is sent; false if there is nobody online to carry it
+     */
+    private boolean send(byte op, Consumer<ByteArrayDataOutput> writer) {
+        long requestId = requestIds.incrementAndGet();
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeLong(requestId);
+        out.writeByte(op);
+        writer.accept(out);
+        boolean updatesAccount = op == CREATE_ACCOUNT || op == APPLY_TRANSACTION || op == SET_BALANCES;
+        if (updatesAccount) {
+            unawaited.add(requestId);
+        }
+        if (send(out.toByteArray())) {
+            return true;
+        }
+        unawaited.remove(requestId);
+        return false;
+    }
+
+    /**
+     * Sends a request to the proxy and waits for the response.
+     *
+     * @return the response
+     * @throws IllegalStateException if it can't be sent, if the proxy doesn't respond in time, or if it's called on the
+     *                               main thread (see {@link #canLoadAccounts()})
+     */
+    private ByteArrayDataInput request(byte op, Consumer<ByteArrayDataOutput> writer) {
+        if (!canLoadAccounts()) {
+            throw new IllegalStateException("Accounts can't be loaded from proxy on the main thread"); // The response would be delivered on this very thread
+        }
+        long requestId = requestIds.incrementAndGet();
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeLong(requestId);
+        out.writeByte(op);
+        writer.accept(out);
+
+        CompletableFuture<ByteArrayDataInput> future = new CompletableFuture<>();
+        pending.put(requestId, future);
+        if (!send(out.toByteArray())) {
+            pending.remove(requestId);
+            throw new IllegalStateException("Nobody is online to carry the request to proxy");
+        }
+        try {
+            return future.get(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for proxy", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Proxy did not respond in time", e);
+        } finally {
+            pending.remove(requestId);
+        }
+    }
+
+    private boolean send(byte[] data) {
+        Player carrier = Iterables.getFirst(Bukkit.getOnlinePlayers(), null);
+        if (carrier == null) {
+            return false;
+        }
+        carrier.sendPluginMessage(plugin, CHANNEL, data);
+        return true;
+    }
+
+    /* ---------------- Codec ---------------- */
+
+    private void writeTransaction(ByteArrayDataOutput out, Account account, Snapshot current, @Nullable Snapshot base) {
+        writeUUID(out, account.getUuid());
+        out.writeBoolean(true);
+        out.writeUTF(account.getNickname());
+        out.writeBoolean(account.canReceiveCurrency());
+        List<UUID> changed = new ArrayList<>();
+        for (UUID currency : current.balances().keySet()) {
+            if (base == null || !current.balances().get(currency).equals(base.balances().get(currency))
+                || !current.heapBalances().getOrDefault(currency, 0D).equals(base.heapBalances().getOrDefault(currency, 0D))) {
+                changed.add(currency);
+            }
+        }
+        out.writeInt(changed.size());
+        for (UUID currency : changed) {
+            writeUUID(out, currency);
+            out.writeDouble(current.balances().get(currency) - (base == null ? 0D : base.balances().getOrDefault(currency, 0D)));
+            out.writeDouble(current.heapBalances().getOrDefault(currency, 0D) - (base == null ? 0D : base.heapBalances().getOrDefault(currency, 0D)));
+        }
+    }
+
+    /**
+     * Writes the balances which changed since the base as they are, and the currencies removed since the base.
+     */
+    private void writeBalances(ByteArrayDataOutput out, Account account, Snapshot current, @Nullable Snapshot base) {
+        writeUUID(out, account.getUuid());
+        out.writeBoolean(true);
+        out.writeUTF(account.getNickname());
+        out.writeBoolean(account.canReceiveCurrency());
+        List<UUID> changed = new ArrayList<>();
+        for (UUID currency : current.balances().keySet()) {
+            if (base == null || !current.balances().get(currency).equals(base.balances().get(currency))
+                || !current.heapBalances().getOrDefault(currency, 0D).equals(base.heapBalances().getOrDefault(currency, 0D))) {
+                changed.add(currency);
+            }
+        }
+        out.writeInt(changed.size());
+        for (UUID currency : changed) {
+            writeUUID(out, currency);
+            out.writeDouble(current.balances().get(currency));
+            out.writeDouble(current.heapBalances().getOrDefault(currency, 0D));
+        }
+        List<UUID> removed = new ArrayList<>();
+        if (base != null) {
+            for (UUID currency : base.balances().keySet()) {
+                if (!current.balances().containsKey(currency)) {
+                    removed.add(currency);
+                }
+            }
+        }
+        out.writeInt(removed.size());
+        removed.forEach(currency -> writeUUID(out, currency));
+    }
+
+    private @Nullable Account readAccountResponse(ByteArrayDataInput in) {
+        if (in.readByte() != OK) {
+            return null;
+        }
+        return toAccount(readSnapshot(in));
+    }
+
+    /**
+     * Records the state of an account sent by the proxy, unless a newer one has already arrived.
+     * <p>
+     * The proxy starts pushing the changes of an account to this server as soon as it serves the load of the account,
+     * so a push may be delivered before the response of the load.
+     *
+     * @return the newest known state of the account
+     */
+    private Snapshot acknowledge(Snapshot snapshot) {
+        return acknowledged.merge(snapshot.uuid(), snapshot, (known, received) -> known.version() > received.version() ? known : received);
+    }
+
+    /**
+     * Common logics of creating an account from the state sent by the proxy.
+     */
+    private Account toAccount(Snapshot received) {
+        Snapshot snapshot = acknowledge(received);
+        Account account = new PlayerAccount(snapshot.uuid(), snapshot.nickname());
+        copyInto(snapshot, account);
+        return account;
+    }
+
+    private Snapshot readSnapshot(ByteArrayDataInput in) {
+        UUID uuid = readUUID(in);
+        String nickname = in.readBoolean() ? in.readUTF() : null;
+        boolean payable = in.readBoolean();
+        long version = in.readLong();
+        int size = in.readInt();
+        Map<UUID, Double> balances = new HashMap<>(size);
+        Map<UUID, Double> heapBalances = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            UUID currency = readUUID(in);
+            balances.put(currency, in.readDouble());
+            heapBalances.put(currency, in.readDouble());
+        }
+        return new Snapshot(uuid, nickname, payable, version, balances, heapBalances);
+    }
+
+    /**
+     * Common logics of updating an account from the state sent by the proxy.
+     */
+    private void copyInto(Snapshot snapshot, Account account) {
+        if (snapshot.nickname() != null) {
+            account.setNickname(snapshot.nickname());
+        }
+        account.setCanReceiveCurrency(snapshot.payable());
+        account.setVersion(snapshot.version());
+        for (Currency currency : plugin.getCurrencyManager().getLoadedCurrencies()) {
+            Double balance = snapshot.balances().get(currency.getUuid());
+            account.getBalances().put(currency, balance != null ? balance : currency.getDefaultBalance());
+            Double heapBalance = snapshot.heapBalances().get(currency.getUuid());
+            if (heapBalance != null) {
+                account.getHeapBalances().put(currency, heapBalance);
+            }
+        }
+        if (account instanceof PlayerAccount playerAccount) {
+            playerAccount.markSaved(); // The proxy holds what has been saved
+        }
+    }
+
+    /**
+     * The state of an account as exchanged with the proxy, with balances keyed by currency uuid.
+     */
+    private record Snapshot(UUID uuid, @Nullable String nickname, boolean payable, long version, Map<UUID, Double> balances, Map<UUID, Double> heapBalances) {
+        static Snapshot of(Account account) {
+            Map<UUID, Double> balances = new HashMap<>();
+            Map<UUID, Double> heapBalances = new HashMap<>();
+            account.getBalances().forEach((currency, balance) -> balances.put(currency.getUuid(), balance));
+            account.getHeapBalances().forEach((currency, balance) -> heapBalances.put(currency.getUuid(), balance));
+            return new Snapshot(account.getUuid(), account.getNickname(), account.canReceiveCurrency(), account.getVersion(), balances, heapBalances);
+        }
+
+        void write(ByteArrayDataOutput out) {
+            writeUUID(out, uuid);
+            out.writeBoolean(nickname != null);
+            if (nickname != null) {
+                out.writeUTF(nickname);
+            }
+            out.writeBoolean(payable);
+            out.writeLong(version);
+            out.writeInt(balances.size());
+            balances.forEach((currency, balance) -> {
+                writeUUID(out, currency);
+                out.writeDouble(balance);
+                out.writeDouble(heapBalances.getOrDefault(currency, 0D));
+            });
+        }
+    }
+
+    /**
+     * Handles messages relayed by the proxy.
+     */
+    @FunctionalInterface
+    public interface RelayHandler {
+        void receive(@NonNull String origin, @NonNull String action, byte @NonNull [] data);
+    }
+
+}
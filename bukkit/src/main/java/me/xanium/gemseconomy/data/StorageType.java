@@ -1,5 +1,5 @@
 package me.xanium.gemseconomy.data;
 
 public enum StorageType {
-    MYSQL, /*MONGODB*/
+    MYSQL, PROXY, /*MONGODB*/
 }
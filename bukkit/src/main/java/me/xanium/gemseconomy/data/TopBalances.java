@@ -0,0 +1,88 @@
+package me.xanium.gemseconomy.data;
+
+import me.xanium.gemseconomy.currency.BalanceTopRepository;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * Collects the highest {@link TransientBalance#significant() significant} balances of a currency from a stream of
+ * balances, and counts all of them.
+ * <p>
+ * It keeps a min-heap bounded to the limit, whose head is the lowest balance kept so far, so a balance lower than the
+ * head is dropped without being allocated. It takes O(limit) memory and O(n log limit) time, however many balances
+ * are streamed through it.
+ *
+ * @see BalanceTopRepository
+ */
+@DefaultQualifier(NonNull.class)
+public class TopBalances {
+
+    /**
+     * Orders the lowest balance first, i.e. the reverse of the balance top list (ties are broken by uuid).
+     */
+    private static final Comparator<TransientBalance> LOWEST_FIRST = (a, b) -> {
+        int cmp = Double.compare(a.amount(), b.amount());
+        return cmp != 0 ? cmp : b.uuid().compareTo(a.uuid());
+    };
+
+    private final int limit;
+    private final PriorityQueue<TransientBalance> heap;
+    private int total;
+
+    public TopBalances(int limit) {
+        this.limit = Math.max(0, limit);
+        this.heap = new PriorityQueue<>(Math.min(this.limit, 1024) + 1, LOWEST_FIRST);
+    }
+
+    /**
+     * Offers a balance to the collector.
+     *
+     * @param uuid   account uuid
+     * @param name   account name
+     * @param amount balance amount
+     */
+    public void offer(UUID uuid, String name, double amount) {
+        if (amount <= 1) { // Same as TransientBalance#significant()
+            return;
+        }
+        this.total++;
+        if (this.heap.size() >= this.limit) {
+            TransientBalance lowest = this.heap.peek();
+            if (lowest == null || amount < lowest.amount() || amount == lowest.amount() && uuid.compareTo(lowest.uuid()) > 0) {
+                return; // Not higher than anything kept
+            }
+            this.heap.poll();
+        }
+        this.heap.add(new TransientBalance(uuid, name, amount));
+    }
+
+    /**
+     * @return the maximum number of balances kept
+     */
+    public int getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * @return the number of significant balances offered, including those not kept
+     */
+    public int getTotal() {
+        return this.total;
+    }
+
+    /**
+     * @return the balances kept, from the highest to the lowest
+     */
+    public List<TransientBalance> getBalances() {
+        List<TransientBalance> balances = new ArrayList<>(this.heap);
+        balances.sort(LOWEST_FIRST.reversed());
+        return balances;
+    }
+
+}
@@ -8,24 +8,32 @@
 
 package me.xanium.gemseconomy.listener;
 
-import me.lucko.helper.Schedulers;
 import me.lucko.helper.terminable.Terminable;
 import me.lucko.helper.utils.Players;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
 import me.xanium.gemseconomy.api.Account;
+import me.xanium.gemseconomy.utils.UtilServer;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class EconomyListener implements Listener, Terminable {
 
     private final GemsEconomyPlugin plugin = GemsEconomyPlugin.getInstance();
+    /**
+     * The players whose accounts couldn't be loaded before login, with the versions released by their last servers.
+     */
+    private final Map<UUID, Long> deferred = new ConcurrentHashMap<>();
 
     @EventHandler(priority = EventPriority.LOWEST)
     public void onLogin(AsyncPlayerPreLoginEvent event) {
@@ -33,25 +41,67 @@ public class EconomyListener implements Listener, Terminable {
             return;
         }
 
+        // If the player is switching from another server, ask that server to save the account and wait for it.
+        // Bounded by the timeout, in case that server is gone.
+
+        final UUID uuid = event.getUniqueId();
+        final long releasedVersion = plugin.getAccountManager().getLeaseKeeper().takeOver(uuid);
+
+        try {
+            setUpAccount(uuid, releasedVersion);
+        } catch (RuntimeException e) {
+            // The storage can't be reached yet, e.g. the proxy storage while this server is empty. Try again once
+            // the player is online
+            UtilServer.consoleLog("§cFailed to load account of " + event.getName() + " before login, retrying after join: " + e.getMessage());
+            deferred.put(uuid, releasedVersion);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        final UUID uuid = event.getPlayer().getUniqueId();
+        final Long releasedVersion = deferred.remove(uuid);
+        if (releasedVersion != null) {
+            plugin.getIoExecutor().execute(() -> setUpAccount(uuid, releasedVersion));
+        }
+    }
+
+    private void setUpAccount(UUID uuid, long releasedVersion) {
         // If the player has never come to this server, we create one for him.
         // If the player already has an account, we simply load it from database.
 
-        final UUID uuid = event.getUniqueId();
         final Account account = plugin.getAccountManager().createAccount(uuid);
+        if (account.getVersion() < releasedVersion) {
+            plugin.getAccountManager().refreshAccounts(List.of(uuid)); // The cached one is older than what was released
+        }
+        plugin.getAccountManager().getLeaseKeeper().acquire(uuid); // Keep the changes in memory while the player is here
+        plugin.getMessenger().sendAccountAcquired(uuid);
 
         // Update nickname of the account
-        Schedulers.async().runLater(() -> Players.get(uuid).map(Player::getName).ifPresent(playerName -> {
+        plugin.getIoExecutor().runLater(() -> Players.get(uuid).map(Player::getName).ifPresent(playerName -> {
             if (!playerName.equals(account.getNickname())) {
                 account.setNickname(playerName);
-                plugin.getDataStore().saveAccount(account);
+                plugin.getAccountManager().getLeaseKeeper().save(account);
                 plugin.getLogger().info("Account name changes detected, updating: " + playerName);
             }
-        }), 20);
+        }), 1000);
     }
 
     @EventHandler
     public void onQuit(PlayerQuitEvent event) {
+        deferred.remove(event.getPlayer().getUniqueId());
         //plugin.getAccountManager().flushAccount(event.getPlayer().getUniqueId()); // LoadingCache will remove it automatically
+
+        // Save the account and give up its lease, then tell the next server it can load it
+        final UUID uuid = event.getPlayer().getUniqueId();
+        final Account account = plugin.getAccountManager().getCachedAccount(uuid);
+        if (account == null) {
+            return;
+        }
+        plugin.getIoExecutor().execute(() -> {
+            plugin.getAccountManager().getLeaseKeeper().release(account);
+            plugin.getMessenger().sendAccountReleased(uuid, account.getVersion());
+        });
     }
 
     @Override public void close() {
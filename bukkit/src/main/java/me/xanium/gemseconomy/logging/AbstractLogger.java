@@ -8,50 +8,122 @@
 
 package me.xanium.gemseconomy.logging;
 
-import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import me.lucko.helper.terminable.Terminable;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
 import me.xanium.gemseconomy.utils.UtilTime;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Writes log lines to {@code logs/LATEST.log}, off the threads which log them.
+ * <p>
+ * Lines are put into a bounded lock-free queue, and a single writer thread drains it into a buffer which is written to
+ * a file channel kept open, then synced to disk at most once per {@code logging.sync_interval_millis}. The time of a line
+ * is taken when it's logged, but only formatted by the writer. If the queue is full, new lines are dropped (and the
+ * number of dropped lines is logged) rather than blocking the caller.
+ * <p>
+ * The writer rolls {@code LATEST.log} over when a line of the next day comes, or when it would grow past
+ * {@code logging.max_file_size_mb}: the file is renamed to {@code <date>-<n>.log} and gzipped in the background, while
+ * the writer goes on with a new {@code LATEST.log}. Since only the writer touches the files, lines are never reordered,
+ * and callers never wait for a rotation. If {@code LATEST.log} can't be opened, the writer tries again every second,
+ * while the lines wait in the queue.
+ * <p>
+ * Nothing is queued if logging is disabled. Prefer {@link #log(Supplier)} on hot paths, so that the message is not
+ * even built in that case.
+ */
 @SuppressWarnings("unused")
-public abstract class AbstractLogger {
+@DefaultQualifier(NonNull.class)
+public abstract class AbstractLogger implements Terminable {
+
+    private static final long WRITE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long REOPEN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter FILE_DATE = DateTimeFormatter.ISO_LOCAL_DATE;
 
     private final GemsEconomyPlugin plugin;
     private final File folder;
     private final File latest;
-    private final Set<String> toAdd;
-    private volatile boolean zipping;
+    private final boolean enabled;
+    private final int capacity;
+    private final long syncIntervalMillis;
+    private final long maxFileSize;
+
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private @Nullable Thread writer;
+    private @Nullable ExecutorService compressor;
+    private volatile boolean running;
+
+    // --- Only used by the writer ---
+    private @Nullable FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private LocalDate fileDate = LocalDate.MIN; // the day of the lines in LATEST.log
+    private long fileSize; // including the buffered lines
+    private long nextDayAt; // when LATEST.log is rolled over by day
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public AbstractLogger(GemsEconomyPlugin plugin) {
         this.plugin = plugin;
         this.folder = new File(plugin.getDataFolder() + File.separator + "logs");
         this.latest = new File(folder, "LATEST.log");
+        this.enabled = plugin.isLogging();
+        this.capacity = Math.max(1, plugin.getConfig().getInt("logging.buffer_size", 65536));
+        this.syncIntervalMillis = plugin.getConfig().getLong("logging.sync_interval_millis", 1000L);
+        this.maxFileSize = plugin.getConfig().getLong("logging.max_file_size_mb", 16L) * 1024L * 1024L;
         if (!folder.exists()) {
             folder.mkdirs();
         }
-        if (!latest.exists()) {
-            try {
-                latest.createNewFile();
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            }
-        }
-        this.toAdd = Sets.newHashSet();
-        this.zipping = false;
     }
 
-    public void save() {
-        zipAndReplace();
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts writing the queued lines.
+     */
+    public synchronized void save() {
+        if (!enabled || writer != null) {
+            return;
+        }
+        running = true;
+        compressor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("GemsEconomy Log Compressor").setDaemon(true).build()
+        );
+        writer = new Thread(this::run, "GemsEconomy Logger");
+        writer.setDaemon(true);
+        writer.start();
     }
 
     public File getLatest() {
@@ -62,104 +134,291 @@ public abstract class AbstractLogger {
         return folder;
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    public void zipAndReplace() {
-        zipping = true;
+    public void log(String message) {
+        enqueue("ECONOMY-LOG", message);
+    }
+
+    /**
+     * Logs a message which is only built if logging is enabled.
+     *
+     * @param message builds the message, on the calling thread
+     */
+    public void log(Supplier<String> message) {
+        if (enabled) {
+            enqueue("ECONOMY-LOG", message.get());
+        }
+    }
 
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+    public void warn(String message) {
+        enqueue("WARNING", message);
+    }
+
+    public void error(String message, Exception ex) {
+        if (!enabled) {
+            return;
+        }
+        StringBuilder builder = new StringBuilder();
+        StackTraceElement element = ex.getStackTrace()[0];
+        builder.append(ex).append(']').append(' ');
+        builder.append('[').append("ERROR - ").append(ex.getMessage()).append(" -- ").append(element.getFileName())
+            .append(" where ").append(element.getMethodName()).append(" at ").append(element.getLineNumber());
+        enqueue(builder.toString(), message);
+    }
+
+    public String getDateAndTime() {
+        return UtilTime.now();
+    }
+
+    private void enqueue(String level, String message) {
+        if (!enabled) {
+            return;
+        }
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet(); // Never block the caller - the writer reports it
+            return;
+        }
+        queue.offer(new Entry(System.currentTimeMillis(), level, message));
+    }
+
+    // --- Writer ---
+
+    private void run() {
+        try {
+            compressLeftovers();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        StringBuilder line = new StringBuilder(256);
+        long lastSync = System.currentTimeMillis();
+        boolean unsynced = false;
+        while (running || !queue.isEmpty()) {
+            if (channel == null) {
+                try {
+                    open(System.currentTimeMillis()); // Not opened yet, or a rollover failed to reopen it
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    if (!running) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, REOPEN_INTERVAL_NANOS); // The lines wait in the queue meanwhile
+                    continue;
+                }
+            }
+            int written = 0;
             try {
-                String date = UtilTime.date();
-                date = date.replace("/", "-");
-                File zFile = new File(folder, date + ".zip");
-                int link = 1;
-                while (zFile.exists()) {
-                    zFile = new File(folder, (date + '[') + link + (']' + ".zip"));
-                    link++;
+                Entry entry;
+                while ((entry = queue.poll()) != null) {
+                    queued.decrementAndGet();
+                    line.setLength(0);
+                    entry.appendTo(line);
+                    write(entry.time(), line);
+                    written++;
                 }
-                FileOutputStream fos = new FileOutputStream(zFile);
-                ZipOutputStream zipOut = new ZipOutputStream(fos);
-                File fileToZip = latest;
-                FileInputStream fis = new FileInputStream(fileToZip);
-                ZipEntry zipEntry = new ZipEntry(date + ".log");
-                zipOut.putNextEntry(zipEntry);
-                final byte[] bytes = new byte[1024];
-                int length;
-                while ((length = fis.read(bytes)) >= 0) {
-                    zipOut.write(bytes, 0, length);
+                long lost = dropped.getAndSet(0);
+                if (lost > 0) {
+                    Entry warning = new Entry(System.currentTimeMillis(), "WARNING", lost + " lines dropped, as the log queue was full");
+                    line.setLength(0);
+                    warning.appendTo(line);
+                    write(warning.time(), line);
                 }
-                zipOut.close();
-                fis.close();
-                fos.close();
-                latest.delete();
-                if (!plugin.isDisabling()) {
-                    latest.createNewFile();
-                    PrintWriter writer = new PrintWriter(new FileWriter(latest, true));
-                    toAdd.forEach(writer::println);
-                    toAdd.clear();
-                    writer.close();
+                if (buffer.position() > 0) {
+                    drain();
+                    unsynced = true;
                 }
-                zipping = false;
-            } catch (Exception e) {
+                long now = System.currentTimeMillis();
+                if (unsynced && now - lastSync >= syncIntervalMillis) {
+                    channel().force(false); // Batched - a crash loses at most one interval
+                    unsynced = false;
+                    lastSync = now;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                buffer.clear();
+            }
+            if (written == 0 && running) {
+                LockSupport.parkNanos(this, WRITE_INTERVAL_NANOS);
+            }
+        }
+        if (channel != null) {
+            try (FileChannel closing = channel) {
+                closing.force(false);
+            } catch (IOException e) {
                 e.printStackTrace();
             }
-        });
+        }
     }
 
-    public void log(String message) {
-        try {
-            StringBuilder builder = new StringBuilder();
-            appendDate(builder);
-            builder.append('[').append("ECONOMY-LOG").append(']').append(' ');
-            builder.append(message);
-            writeToFile(builder.toString());
-        } catch (IOException ex) {
-            ex.printStackTrace();
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            throw new IOException("Log file is not open");
         }
+        return channel;
     }
 
-    public void warn(String message) {
+    /**
+     * Opens {@code LATEST.log} to append lines of specific time, after rolling it over if it's from an earlier day
+     * (i.e. last written before a restart).
+     */
+    private void open(long time) throws IOException {
+        LocalDate date = Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()).toLocalDate();
+        Path path = latest.toPath();
+        if (Files.exists(path) && Files.size(path) > 0) {
+            LocalDate modified = Files.getLastModifiedTime(path).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+            if (!modified.equals(date)) {
+                fileDate = modified;
+                roll();
+            }
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileDate = date;
+        fileSize = channel.size();
+        nextDayAt = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Buffers a line, after rolling {@code LATEST.log} over if the line doesn't belong in it.
+     */
+    private void write(long time, CharSequence line) throws IOException {
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        boolean full = maxFileSize > 0 && fileSize > 0 && fileSize + bytes.length > maxFileSize;
+        if (time >= nextDayAt || full) {
+            drain();
+            try (FileChannel closing = channel()) {
+                closing.force(false);
+            }
+            channel = null;
+            roll();
+            open(time);
+        }
+        if (bytes.length > buffer.remaining()) {
+            drain();
+        }
+        if (bytes.length > buffer.capacity()) {
+            ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+            while (wrapped.hasRemaining()) {
+                channel().write(wrapped);
+            }
+        } else {
+            buffer.put(bytes);
+        }
+        fileSize += bytes.length;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
         try {
-            StringBuilder builder = new StringBuilder();
-            appendDate(builder);
-            builder.append('[').append("WARNING").append(']').append(' ');
-            builder.append(message);
-            writeToFile(builder.toString());
-        } catch (IOException ex) {
-            ex.printStackTrace();
+            while (buffer.hasRemaining()) {
+                channel().write(buffer);
+            }
+        } finally {
+            buffer.clear();
         }
     }
 
-    public void error(String message, Exception ex) {
+    /**
+     * Renames the closed {@code LATEST.log} after the day of its lines, and compresses it in the background.
+     * <p>
+     * If it can't be renamed, the writer keeps appending to it.
+     */
+    private void roll() {
+        String date = FILE_DATE.format(fileDate);
+        Path rolled;
+        int link = 1;
+        do {
+            rolled = folder.toPath().resolve(date + "-" + link + ".log");
+            link++;
+        } while (Files.exists(rolled) || Files.exists(gzipOf(rolled)));
         try {
-            StringBuilder builder = new StringBuilder();
-            appendDate(builder);
-            StackTraceElement element = ex.getStackTrace()[0];
-            builder.append('[').append(ex).append(']').append(' ');
-            builder.append('[').append("ERROR - ").append(ex.getMessage()).append(" -- ").append(element.getFileName())
-                .append(" where ").append(element.getMethodName()).append(" at ").append(element.getLineNumber())
-                .append(']').append(' ');
-            builder.append(message);
-            writeToFile(builder.toString());
+            Files.move(latest.toPath(), rolled, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
-            ex.printStackTrace();
+            e.printStackTrace();
+            return;
+        }
+        Path target = rolled;
+        if (compressor != null) {
+            compressor.execute(() -> compress(target));
         }
     }
 
-    private void appendDate(StringBuilder builder) {
-        builder.append('[').append(getDateAndTime()).append(']').append(' ');
+    /**
+     * Compresses the rolled logs which were not compressed before the last shutdown.
+     */
+    private void compressLeftovers() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder.toPath(), "*-*.log")) {
+            for (Path rolled : stream) {
+                if (compressor != null) {
+                    compressor.execute(() -> compress(rolled));
+                }
+            }
+        }
     }
 
-    private void writeToFile(String string) throws IOException {
-        if (zipping) {
-            toAdd.add(string);
+    private static Path gzipOf(Path log) {
+        return log.resolveSibling(log.getFileName() + ".gz");
+    }
+
+    /**
+     * Gzips a rolled log file, then deletes it. The archive is written to a temporary file first, so that a partial
+     * archive is never left behind; if anything fails, the log file is kept as is.
+     */
+    private static void compress(Path log) {
+        Path gzip = gzipOf(log);
+        Path temp = log.resolveSibling(log.getFileName() + ".gz.tmp");
+        try {
+            try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ);
+                 OutputStream out = new GZIPOutputStream(Channels.newOutputStream(FileChannel.open(temp,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)), BUFFER_SIZE)) {
+                WritableByteChannel target = Channels.newChannel(out);
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, target);
+                }
+            }
+            Files.move(temp, gzip, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(log);
+        } catch (IOException e) {
+            e.printStackTrace();
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Writes the queued lines, and stops the writer. The compressions in progress are finished too.
+     */
+    @Override public void close() {
+        Thread thread;
+        ExecutorService compressor;
+        synchronized (this) {
+            thread = writer;
+            compressor = this.compressor;
+            writer = null;
+        }
+        if (thread == null) {
             return;
         }
-        PrintWriter writer = new PrintWriter(new FileWriter(latest, true));
-        writer.println(string);
-        writer.close();
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+            if (compressor != null) {
+                compressor.shutdown();
+                compressor.awaitTermination(30, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    public String getDateAndTime() {
-        return UtilTime.now();
+    private record Entry(long time, String level, String message) {
+        void appendTo(StringBuilder builder) {
+            builder.append('[').append(UtilTime.when(time)).append(']').append(' ');
+            builder.append('[').append(level).append(']').append(' ');
+            builder.append(message).append('\n');
+        }
     }
 }
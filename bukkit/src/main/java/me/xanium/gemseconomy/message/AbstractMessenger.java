@@ -0,0 +1,266 @@
+package me.xanium.gemseconomy.message;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import me.xanium.gemseconomy.utils.UtilServer;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The transport-independent part of a {@link Messenger}.
+ * <p>
+ * Outgoing messages are queued and coalesced until {@link #flush()} is called, which sends one packet per action.
+ * Every packet is prefixed with the epoch and the sequence number of this messenger, and incoming packets are checked
+ * against a {@link SequenceTracker} before they are handed to the {@link SyncReceiver}.
+ * <p>
+ * Implementations only need to move bytes: send them in {@link #publish(String, byte[])}, and pass what they receive
+ * to {@link #receive(String, String, byte[])}. They are also responsible for calling {@link #flush()} regularly.
+ */
+@SuppressWarnings("UnstableApiUsage")
+@DefaultQualifier(NonNull.class)
+public abstract class AbstractMessenger implements Messenger {
+
+    protected final SyncReceiver receiver;
+
+    /**
+     * Outbound UUIDs waiting to be sent, grouped by action. The sets are only mutated inside
+     * {@link Map#compute} so that nothing is lost when {@link #flush()} removes them.
+     */
+    private final Map<String, Set<UUID>> outbound = new ConcurrentHashMap<>();
+    /**
+     * Outbound account changes waiting to be sent, merged per account.
+     */
+    private final Map<UUID, AccountDelta> outboundDeltas = new ConcurrentHashMap<>();
+    /**
+     * Outbound account releases waiting to be sent, with the latest version per account.
+     */
+    private final Map<UUID, Long> outboundReleases = new ConcurrentHashMap<>();
+    /**
+     * Outbound leaderboard chunks waiting to be sent, one packet each.
+     */
+    private final Queue<LeaderboardChunk> outboundLeaderboards = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Identifies this run of the server, so that receivers can tell a restart from a replay.
+     */
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong sequence = new AtomicLong();
+    private final SequenceTracker sequenceTracker = new SequenceTracker();
+
+    // --- Metrics ---
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong packetsReceived = new AtomicLong();
+    private final AtomicLong packetsDropped = new AtomicLong();
+
+    protected AbstractMessenger(SyncReceiver receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Sends specific data to all other servers.
+     *
+     * @param action the action of the packet
+     * @param data   the data of the packet, including the header
+     */
+    protected abstract void publish(String action, byte[] data);
+
+    /**
+     * Handles a packet sent by another server.
+     *
+     * @param origin the name of the server which sent the packet
+     * @param action the action of the packet
+     * @param data   the data of the packet, including the header
+     */
+    protected void receive(String origin, String action, byte[] data) {
+        ByteArrayDataInput in = ByteStreams.newDataInput(data);
+        long epoch = in.readLong();
+        long sequence = in.readLong();
+        if (!sequenceTracker.accept(origin, epoch, sequence)) {
+            packetsDropped.incrementAndGet();
+            UtilServer.consoleLog("Dropped (source: %s) - Duplicate or stale message: %s #%s".formatted(origin, action, sequence));
+            return;
+        }
+        packetsReceived.incrementAndGet();
+        switch (action) {
+            case Action.UPDATE_ACCOUNT -> receiver.onAccountsUpdated(origin, MessageCodec.readDeltas(in));
+            case Action.DELETE_ACCOUNT -> receiver.onAccountsDeleted(origin, MessageCodec.readUUIDs(in));
+            case Action.CREATE_CURRENCY -> receiver.onCurrenciesCreated(origin, MessageCodec.readUUIDs(in));
+            case Action.UPDATE_CURRENCY -> receiver.onCurrenciesUpdated(origin, MessageCodec.readUUIDs(in));
+            case Action.DELETE_CURRENCY -> receiver.onCurrenciesDeleted(origin, MessageCodec.readUUIDs(in));
+            case Action.CLEAR_BALANCE -> receiver.onBalancesCleared(origin, MessageCodec.readUUIDs(in));
+            case Action.ACQUIRE_ACCOUNT -> receiver.onAccountsAcquired(origin, MessageCodec.readUUIDs(in));
+            case Action.RELEASE_ACCOUNT -> receiver.onAccountsReleased(origin, MessageCodec.readVersions(in));
+            case Action.REVOKE_LEASE -> receiver.onLeasesRevoked(origin, MessageCodec.readUUIDs(in));
+            case Action.SYNC_LEADERBOARD -> receiver.onLeaderboardReceived(origin, MessageCodec.readLeaderboardChunk(in));
+            default -> {
+                // Don't need to "sync" account creation
+            }
+        }
+    }
+
+    @Override
+    public void sendMessage(final String action, final Collection<UUID> uuids) {
+        if (uuids.isEmpty()) {
+            return;
+        }
+        if (action.equals(Action.UPDATE_ACCOUNT)) {
+            // Without the changes, receivers have to reload the accounts
+            uuids.forEach(uuid -> sendAccountUpdate(AccountDelta.reload(uuid)));
+            return;
+        }
+        // Queue them up - duplicates within the same window are sent only once
+        outbound.compute(action, (k, pending) -> {
+            if (pending == null) {
+                pending = new LinkedHashSet<>();
+            }
+            pending.addAll(uuids);
+            return pending;
+        });
+    }
+
+    @Override
+    public void sendAccountUpdate(final AccountDelta delta) {
+        outboundDeltas.merge(delta.account(), delta, AccountDelta::merge);
+    }
+
+    @Override
+    public void sendAccountAcquired(final UUID uuid) {
+        sendMessage(Action.ACQUIRE_ACCOUNT, uuid);
+    }
+
+    @Override
+    public void sendAccountReleased(final UUID uuid, final long version) {
+        outboundReleases.merge(uuid, version, Math::max);
+    }
+
+    @Override
+    public void sendLeaseRevoke(final UUID uuid) {
+        sendMessage(Action.REVOKE_LEASE, uuid);
+    }
+
+    @Override
+    public void sendLeaderboard(final Collection<LeaderboardChunk> chunks) {
+        outboundLeaderboards.addAll(chunks);
+    }
+
+    /**
+     * Sends all the queued UUIDs and account changes, one packet per action.
+     */
+    public void flush() {
+        for (String action : Action.ORDERED) {
+            if (action.equals(Action.UPDATE_ACCOUNT)) {
+                flushDeltas();
+                continue;
+            }
+            if (action.equals(Action.RELEASE_ACCOUNT)) {
+                flushReleases();
+                continue;
+            }
+            if (action.equals(Action.SYNC_LEADERBOARD)) {
+                flushLeaderboards();
+                continue;
+            }
+            Set<UUID> pending = outbound.remove(action);
+            if (pending == null || pending.isEmpty()) {
+                continue;
+            }
+            sendData(action, MessageCodec.writeUUIDs(pending));
+            String subject = pending.size() == 1 ? pending.iterator().next().toString() : pending.size() + " entries";
+            switch (action) {
+                case Action.CREATE_ACCOUNT -> UtilServer.consoleLog("Sent - Account created: " + subject);
+                case Action.DELETE_ACCOUNT -> UtilServer.consoleLog("Sent - Account deleted: " + subject);
+                case Action.CREATE_CURRENCY -> UtilServer.consoleLog("Sent - Currency created: " + subject);
+                case Action.UPDATE_CURRENCY -> UtilServer.consoleLog("Sent - Currency updated: " + subject);
+                case Action.DELETE_CURRENCY -> UtilServer.consoleLog("Sent - Currency deleted: " + subject);
+                case Action.CLEAR_BALANCE -> UtilServer.consoleLog("Sent - Balance cleared: " + subject);
+                case Action.ACQUIRE_ACCOUNT -> UtilServer.consoleLog("Sent - Account acquired: " + subject);
+                case Action.REVOKE_LEASE -> UtilServer.consoleLog("Sent - Lease revoked: " + subject);
+            }
+        }
+    }
+
+    private void flushDeltas() {
+        List<AccountDelta> pending = new ArrayList<>();
+        for (UUID uuid : outboundDeltas.keySet()) {
+            AccountDelta delta = outboundDeltas.remove(uuid);
+            if (delta != null) {
+                pending.add(delta);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        sendData(Action.UPDATE_ACCOUNT, MessageCodec.writeDeltas(pending));
+        UtilServer.consoleLog("Sent - Account updated: " + (pending.size() == 1 ? pending.get(0).account().toString() : pending.size() + " entries"));
+    }
+
+    private void flushReleases() {
+        Map<UUID, Long> pending = new HashMap<>();
+        for (UUID uuid : outboundReleases.keySet()) {
+            Long version = outboundReleases.remove(uuid);
+            if (version != null) {
+                pending.put(uuid, version);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        sendData(Action.RELEASE_ACCOUNT, MessageCodec.writeVersions(pending));
+        UtilServer.consoleLog("Sent - Account released: " + (pending.size() == 1 ? pending.keySet().iterator().next().toString() : pending.size() + " entries"));
+    }
+
+    private void flushLeaderboards() {
+        int sent = 0;
+        LeaderboardChunk chunk;
+        while ((chunk = outboundLeaderboards.poll()) != null) {
+            sendData(Action.SYNC_LEADERBOARD, MessageCodec.writeLeaderboardChunk(chunk)); // One per packet, to fit the size limit
+            sent++;
+        }
+        if (sent > 0) {
+            UtilServer.consoleLog("Sent - Leaderboard chunks: " + sent);
+        }
+    }
+
+    /**
+     * Sends specific data prefixed with the epoch and the next sequence number of this messenger.
+     */
+    private void sendData(String action, byte[] data) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput(16 + data.length);
+        out.writeLong(epoch);
+        out.writeLong(sequence.incrementAndGet());
+        out.write(data);
+        publish(action, out.toByteArray());
+        packetsSent.incrementAndGet();
+    }
+
+    public SyncReceiver getReceiver() {
+        return receiver;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived.get();
+    }
+
+    public long getPacketsDropped() {
+        return packetsDropped.get();
+    }
+
+}
@@ -0,0 +1,92 @@
+package me.xanium.gemseconomy.message;
+
+import me.xanium.gemseconomy.api.Account;
+import me.xanium.gemseconomy.api.Currency;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Describes how an account changed between two versions, so that receivers which hold the account at a version within
+ * the range can apply the new balances directly instead of reloading the account from database.
+ * <p>
+ * The balances are absolute values of every currency changed in the range, not differences.
+ *
+ * @param account      the uuid of the account
+ * @param name         the display name of the account, so that receivers can put it on the leaderboards
+ * @param fromVersion  the version the account had before the first change
+ * @param toVersion    the version the account has after the last change
+ * @param balances     the new balances, keyed by currency uuid
+ * @param heapBalances the new accumulated balances, keyed by currency uuid
+ */
+@DefaultQualifier(NonNull.class)
+public record AccountDelta(UUID account, String name, long fromVersion, long toVersion, Map<UUID, Double> balances, Map<UUID, Double> heapBalances) {
+
+    /**
+     * The version used by deltas which force receivers to reload the account.
+     */
+    public static final long RELOAD = Long.MAX_VALUE;
+
+    /**
+     * Creates a delta of a single change of specific currency.
+     *
+     * @param account     the account after the change
+     * @param currency    the currency which changed
+     * @param toVersion   the version of the account after the change
+     * @return a delta
+     */
+    public static AccountDelta of(Account account, Currency currency, long toVersion) {
+        return new AccountDelta(
+            account.getUuid(),
+            account.getDisplayName(),
+            toVersion - 1,
+            toVersion,
+            Map.of(currency.getUuid(), account.getBalance(currency)),
+            Map.of(currency.getUuid(), account.getHeapBalance(currency))
+        );
+    }
+
+    /**
+     * Creates a delta which carries no balances and always makes receivers reload the account from database.
+     *
+     * @param account the uuid of the account
+     * @return a delta
+     */
+    public static AccountDelta reload(UUID account) {
+        return new AccountDelta(account, account.toString(), RELOAD, RELOAD, Map.of(), Map.of());
+    }
+
+    public boolean isReload() {
+        return this.fromVersion == RELOAD;
+    }
+
+    /**
+     * Merges this delta with another delta of the same account.
+     *
+     * @param other another delta of the same account
+     * @return a delta covering both version ranges
+     */
+    public AccountDelta merge(AccountDelta other) {
+        if (isReload() || other.isReload()) {
+            return reload(this.account);
+        }
+        AccountDelta older = this.toVersion <= other.toVersion ? this : other;
+        AccountDelta newer = older == this ? other : this;
+        Map<UUID, Double> balances = new HashMap<>(older.balances);
+        balances.putAll(newer.balances);
+        Map<UUID, Double> heapBalances = new HashMap<>(older.heapBalances);
+        heapBalances.putAll(newer.heapBalances);
+        return new AccountDelta(
+            this.account,
+            newer.name,
+            Math.min(this.fromVersion, other.fromVersion),
+            Math.max(this.toVersion, other.toVersion),
+            balances,
+            heapBalances
+        );
+    }
+
+}
@@ -1,5 +1,7 @@
 package me.xanium.gemseconomy.message;
 
+import java.util.List;
+
 public class Action {
     public static final String UPDATE_ACCOUNT = "update_account";
     public static final String DELETE_ACCOUNT = "delete_account";
@@ -7,6 +9,21 @@ public class Action {
     public static final String UPDATE_CURRENCY = "update_currency";
     public static final String DELETE_CURRENCY = "delete_currency";
     public static final String CREATE_CURRENCY = "create_currency";
+    public static final String CLEAR_BALANCE = "clear_balance";
+    public static final String ACQUIRE_ACCOUNT = "acquire_account";
+    public static final String RELEASE_ACCOUNT = "release_account";
+    public static final String REVOKE_LEASE = "revoke_lease";
+    public static final String SYNC_LEADERBOARD = "sync_leaderboard";
+
+    /**
+     * All actions in the order they should be sent when several are queued at the same time.
+     * <p>
+     * Releases come after updates, so that receivers of a release already have the last changes. Leaderboards come
+     * last, as they're the largest and the least urgent.
+     */
+    public static final List<String> ORDERED = List.of(
+        CREATE_CURRENCY, UPDATE_CURRENCY, CREATE_ACCOUNT, ACQUIRE_ACCOUNT, UPDATE_ACCOUNT, RELEASE_ACCOUNT, REVOKE_LEASE, DELETE_ACCOUNT, CLEAR_BALANCE, DELETE_CURRENCY, SYNC_LEADERBOARD
+    );
 
     private Action() {
         throw new UnsupportedOperationException();
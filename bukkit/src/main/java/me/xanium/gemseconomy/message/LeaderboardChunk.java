@@ -0,0 +1,26 @@
+package me.xanium.gemseconomy.message;
+
+import me.xanium.gemseconomy.currency.BalanceType;
+import me.xanium.gemseconomy.data.TransientBalance;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A part of a balance top list built by the leader, small enough to fit in one packet of any messenger.
+ * <p>
+ * Receivers assemble the chunks of the same list (same currency, type and last update) before they replace their own.
+ *
+ * @param currency   the uuid of the currency
+ * @param type       the type of balance of the list
+ * @param lastUpdate when the list was built, in epoch milliseconds
+ * @param total      the number of significant balances in database
+ * @param index      the index of this chunk, starting from 0
+ * @param count      the number of chunks of the list
+ * @param balances   the entries of this chunk, in order
+ */
+@DefaultQualifier(NonNull.class)
+public record LeaderboardChunk(UUID currency, BalanceType type, long lastUpdate, int total, int index, int count, List<TransientBalance> balances) {
+}
@@ -0,0 +1,145 @@
+package me.xanium.gemseconomy.message;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import me.xanium.gemseconomy.currency.BalanceType;
+import me.xanium.gemseconomy.data.TransientBalance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The binary format of the payloads sent by {@link AbstractMessenger}s.
+ * <p>
+ * Every list is prefixed with its size, so that one packet can carry any number of entries.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public final class MessageCodec {
+
+    public static List<UUID> readUUIDs(ByteArrayDataInput in) {
+        int count = in.readInt();
+        List<UUID> uuids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uuids.add(readUUID(in));
+        }
+        return uuids;
+    }
+
+    public static byte[] writeUUIDs(Collection<UUID> uuids) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput(4 + 16 * uuids.size());
+        out.writeInt(uuids.size());
+        for (UUID uuid : uuids) {
+            writeUUID(out, uuid);
+        }
+        return out.toByteArray();
+    }
+
+    public static List<AccountDelta> readDeltas(ByteArrayDataInput in) {
+        int count = in.readInt();
+        List<AccountDelta> deltas = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID account = readUUID(in);
+            String name = in.readUTF();
+            long fromVersion = in.readLong();
+            long toVersion = in.readLong();
+            int size = in.readInt();
+            Map<UUID, Double> balances = new HashMap<>(size);
+            Map<UUID, Double> heapBalances = new HashMap<>(size);
+            for (int j = 0; j < size; j++) {
+                UUID currency = readUUID(in);
+                balances.put(currency, in.readDouble());
+                heapBalances.put(currency, in.readDouble());
+            }
+            deltas.add(new AccountDelta(account, name, fromVersion, toVersion, balances, heapBalances));
+        }
+        return deltas;
+    }
+
+    public static byte[] writeDeltas(Collection<AccountDelta> deltas) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeInt(deltas.size());
+        for (AccountDelta delta : deltas) {
+            writeUUID(out, delta.account());
+            out.writeUTF(delta.name());
+            out.writeLong(delta.fromVersion());
+            out.writeLong(delta.toVersion());
+            out.writeInt(delta.balances().size());
+            delta.balances().forEach((currency, balance) -> {
+                writeUUID(out, currency);
+                out.writeDouble(balance);
+                out.writeDouble(delta.heapBalances().getOrDefault(currency, 0D));
+            });
+        }
+        return out.toByteArray();
+    }
+
+    public static Map<UUID, Long> readVersions(ByteArrayDataInput in) {
+        int count = in.readInt();
+        Map<UUID, Long> versions = new HashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            versions.put(readUUID(in), in.readLong());
+        }
+        return versions;
+    }
+
+    public static byte[] writeVersions(Map<UUID, Long> versions) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput(4 + 24 * versions.size());
+        out.writeInt(versions.size());
+        versions.forEach((uuid, version) -> {
+            writeUUID(out, uuid);
+            out.writeLong(version);
+        });
+        return out.toByteArray();
+    }
+
+    public static LeaderboardChunk readLeaderboardChunk(ByteArrayDataInput in) {
+        UUID currency = readUUID(in);
+        BalanceType type = BalanceType.valueOf(in.readUTF());
+        long lastUpdate = in.readLong();
+        int total = in.readInt();
+        int index = in.readInt();
+        int count = in.readInt();
+        int size = in.readInt();
+        List<TransientBalance> balances = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            balances.add(new TransientBalance(readUUID(in), in.readUTF(), in.readDouble()));
+        }
+        return new LeaderboardChunk(currency, type, lastUpdate, total, index, count, balances);
+    }
+
+    public static byte[] writeLeaderboardChunk(LeaderboardChunk chunk) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput(48 + 48 * chunk.balances().size());
+        writeUUID(out, chunk.currency());
+        out.writeUTF(chunk.type().name());
+        out.writeLong(chunk.lastUpdate());
+        out.writeInt(chunk.total());
+        out.writeInt(chunk.index());
+        out.writeInt(chunk.count());
+        out.writeInt(chunk.balances().size());
+        for (TransientBalance balance : chunk.balances()) {
+            writeUUID(out, balance.uuid());
+            out.writeUTF(balance.name());
+            out.writeDouble(balance.amount());
+        }
+        return out.toByteArray();
+    }
+
+    public static UUID readUUID(ByteArrayDataInput in) {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    public static void writeUUID(ByteArrayDataOutput out, UUID uuid) {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private MessageCodec() {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -1,25 +1,126 @@
 package me.xanium.gemseconomy.message;
 
 import de.themoep.connectorplugin.bukkit.BukkitConnectorPlugin;
+import me.lucko.helper.Services;
+import me.lucko.helper.redis.Redis;
 import me.lucko.helper.terminable.Terminable;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.data.ProxyStorage;
 import me.xanium.gemseconomy.message.impl.EmptyMessenger;
+import me.xanium.gemseconomy.message.impl.HelperRedisMessenger;
+import me.xanium.gemseconomy.message.impl.ProxyMessenger;
 import me.xanium.gemseconomy.message.impl.RedisMessenger;
+import me.xanium.gemseconomy.message.redis.HelperRedisTransport;
+import me.xanium.gemseconomy.utils.UtilServer;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 public interface Messenger extends Terminable {
 
     static Messenger get() {
-        Plugin connector = Bukkit.getServer().getPluginManager().getPlugin("ConnectorPlugin");
-        if (connector == null) {
-            return new EmptyMessenger();
+        GemsEconomyPlugin plugin = GemsEconomyPlugin.getInstance();
+        if (plugin.getDataStore() instanceof ProxyStorage proxyStorage) {
+            // The proxy is the only one to talk to
+            ProxyMessenger messenger = new ProxyMessenger(proxyStorage, new PluginSyncReceiver(plugin));
+            messenger.flushEveryTick();
+            return messenger;
         }
-        return new RedisMessenger(GemsEconomyPlugin.getInstance(), (BukkitConnectorPlugin) connector);
+        String type = plugin.getConfig().getString("messenger", "connector").toLowerCase();
+        switch (type) {
+            case "none" -> {
+                return new EmptyMessenger();
+            }
+            case "redis" -> {
+                Redis redis = Services.get(Redis.class).orElse(null);
+                if (redis == null) {
+                    UtilServer.consoleLog("§cRedis messenger is selected but helper-redis is not available.");
+                    return new EmptyMessenger();
+                }
+                HelperRedisMessenger messenger = new HelperRedisMessenger(plugin.getServerId(), new HelperRedisTransport(redis, "gemseconomy:sync"), new PluginSyncReceiver(plugin));
+                messenger.flushEveryTick();
+                return messenger;
+            }
+            default -> {
+                Plugin connector = Bukkit.getServer().getPluginManager().getPlugin("ConnectorPlugin");
+                if (connector == null) {
+                    return new EmptyMessenger();
+                }
+                return new RedisMessenger(plugin, (BukkitConnectorPlugin) connector);
+            }
+        }
+    }
+
+    default void sendMessage(String type, UUID uuid) {
+        sendMessage(type, List.of(uuid));
     }
 
-    void sendMessage(String type, UUID uuid);
+    /**
+     * Sends one message carrying all the specific UUIDs.
+     *
+     * @param type  the action type
+     * @param uuids the UUIDs of the accounts or currencies
+     */
+    void sendMessage(String type, Collection<UUID> uuids);
+
+    /**
+     * Sends the changes of an account so that other servers can apply them without reloading it from database.
+     *
+     * @param delta the changes of an account
+     */
+    void sendAccountUpdate(AccountDelta delta);
+
+    /**
+     * Tells other servers that the player of specific account is now on this server.
+     *
+     * @param uuid the uuid of the account
+     */
+    default void sendAccountAcquired(UUID uuid) {}
+
+    /**
+     * Tells other servers that the player of specific account has left this server, and all its changes up to
+     * specific version are saved to database.
+     *
+     * @param uuid    the uuid of the account
+     * @param version the version of the account when it was released
+     */
+    default void sendAccountReleased(UUID uuid, long version) {}
+
+    /**
+     * Asks the server holding the write lease of specific account to save it and give the lease up.
+     * <p>
+     * The server answers with {@link #sendAccountReleased(UUID, long)}.
+     *
+     * @param uuid the uuid of the account
+     */
+    default void sendLeaseRevoke(UUID uuid) {}
+
+    /**
+     * Sends a balance top list built by this server, so that other servers don't have to scan the database too.
+     *
+     * @param chunks all the chunks of the list
+     * @see me.xanium.gemseconomy.data.LeaderElection
+     */
+    default void sendLeaderboard(Collection<LeaderboardChunk> chunks) {}
+
+    /**
+     * Called when specific account is loaded into the cache of this server.
+     * <p>
+     * Messengers which route account messages by interest can use it to tell where the account is held.
+     *
+     * @param uuid the uuid of the account
+     */
+    default void onAccountCached(UUID uuid) {}
+
+    /**
+     * Called when specific account is removed from the cache of this server.
+     *
+     * @param uuid the uuid of the account
+     * @see #onAccountCached(UUID)
+     */
+    default void onAccountEvicted(UUID uuid) {}
 
 }
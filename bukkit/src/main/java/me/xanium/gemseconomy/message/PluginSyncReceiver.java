@@ -0,0 +1,135 @@
+package me.xanium.gemseconomy.message;
+
+import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.utils.UtilServer;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Applies received messages to the managers of the plugin.
+ * <p>
+ * Messages are handled on a {@link StripedExecutor} keyed by the account or currency UUID, so that changes of the
+ * same account or currency are applied in the order they arrived, and never on the server thread.
+ */
+@DefaultQualifier(NonNull.class)
+public class PluginSyncReceiver implements SyncReceiver {
+
+    private final GemsEconomyPlugin plugin;
+    private final StripedExecutor executor;
+
+    public PluginSyncReceiver(GemsEconomyPlugin plugin) {
+        this.plugin = plugin;
+        this.executor = new StripedExecutor("GemsEconomy Sync", Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public StripedExecutor getExecutor() {
+        return executor;
+    }
+
+    @Override public void onAccountsUpdated(final String origin, final List<AccountDelta> deltas) {
+        // Group the deltas by stripe, so that each stripe still reloads its failures in one batch
+        List<List<AccountDelta>> byStripe = new ArrayList<>(executor.getStripeCount());
+        for (int i = 0; i < executor.getStripeCount(); i++) {
+            byStripe.add(new ArrayList<>());
+        }
+        for (AccountDelta delta : deltas) {
+            byStripe.get(executor.stripeOf(delta.account())).add(delta);
+        }
+        for (int i = 0; i < byStripe.size(); i++) {
+            List<AccountDelta> stripeDeltas = byStripe.get(i);
+            if (stripeDeltas.isEmpty()) {
+                continue;
+            }
+            executor.executeOnStripe(i, () -> {
+                plugin.getBalanceTopRepository().onAccountsUpdated(stripeDeltas); // Including the accounts not held here
+                int refreshed = plugin.getAccountManager().applyDeltas(stripeDeltas); // Only reload those with version gaps
+                UtilServer.consoleLog("Received (source: %s) - Accounts updated: %s (refreshed: %s)".formatted(origin, stripeDeltas.size(), refreshed));
+            });
+        }
+    }
+
+    @Override public void onAccountsDeleted(final String origin, final List<UUID> uuids) {
+        for (UUID uuid : uuids) {
+            executor.execute(uuid, () -> {
+                plugin.getAccountManager().flushAccount(uuid); // It's already deleted from database by sending server
+                UtilServer.consoleLog("Received (source: %s) - Account deleted: %s".formatted(origin, uuid));
+            });
+        }
+    }
+
+    @Override public void onCurrenciesCreated(final String origin, final List<UUID> uuids) {
+        for (UUID uuid : uuids) {
+            executor.execute(uuid, () -> {
+                plugin.getCurrencyManager().updateCurrency(uuid, true);
+                UtilServer.consoleLog("Received (source: %s) - Currency created: %s".formatted(origin, uuid));
+            });
+        }
+    }
+
+    @Override public void onCurrenciesUpdated(final String origin, final List<UUID> uuids) {
+        for (UUID uuid : uuids) {
+            executor.execute(uuid, () -> {
+                plugin.getCurrencyManager().updateCurrency(uuid, false);
+                UtilServer.consoleLog("Received (source: %s) - Currency updated: %s".formatted(origin, uuid));
+            });
+        }
+    }
+
+    @Override public void onCurrenciesDeleted(final String origin, final List<UUID> uuids) {
+        for (UUID uuid : uuids) {
+            executor.execute(uuid, () -> {
+                plugin.getCurrencyManager().removeCurrencyLocally(uuid); // The database is already done by sending server
+                UtilServer.consoleLog("Received (source: %s) - Currency deleted: %s".formatted(origin, uuid));
+            });
+        }
+    }
+
+    @Override public void onBalancesCleared(final String origin, final List<UUID> uuids) {
+        for (UUID uuid : uuids) {
+            executor.execute(uuid, () -> {
+                plugin.getCurrencyManager().clearBalanceLocally(uuid); // The database is already done by sending server
+                UtilServer.consoleLog("Received (source: %s) - Balance cleared: %s".formatted(origin, uuid));
+            });
+        }
+    }
+
+    @Override public void onAccountsAcquired(final String origin, final List<UUID> uuids) {
+        for (UUID uuid : uuids) {
+            plugin.getAccountManager().getHandoffTracker().acquired(origin, uuid); // Cheap - no need to queue it
+        }
+    }
+
+    @Override public void onAccountsReleased(final String origin, final Map<UUID, Long> versions) {
+        versions.forEach((uuid, version) -> {
+            plugin.getAccountManager().getHandoffTracker().released(origin, uuid, version); // Someone may be waiting for it
+            UtilServer.consoleLog("Received (source: %s) - Account released: %s (version: %s)".formatted(origin, uuid, version));
+        });
+    }
+
+    @Override public void onLeasesRevoked(final String origin, final List<UUID> uuids) {
+        for (UUID uuid : uuids) {
+            executor.execute(uuid, () -> {
+                plugin.getAccountManager().getLeaseKeeper().revoke(uuid); // Saves the account, then answers with a release
+                UtilServer.consoleLog("Received (source: %s) - Lease revoked: %s".formatted(origin, uuid));
+            });
+        }
+    }
+
+    @Override public void onLeaderboardReceived(final String origin, final LeaderboardChunk chunk) {
+        executor.execute(chunk.currency(), () -> {
+            if (plugin.getBalanceTopRepository().onLeaderboardReceived(chunk)) { // Only logged once the list is complete
+                UtilServer.consoleLog("Received (source: %s) - Leaderboard updated: %s (%s)".formatted(origin, chunk.currency(), chunk.type()));
+            }
+        });
+    }
+
+    @Override public void close() {
+        executor.close();
+    }
+
+}
@@ -0,0 +1,78 @@
+package me.xanium.gemseconomy.message;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the sequence numbers seen from each origin server, so that duplicated or replayed messages are dropped
+ * before they are handled.
+ * <p>
+ * For each origin, only the highest sequence number and a 64-bit bitmap of the sequence numbers right below it are
+ * kept (like the anti-replay window of IPsec). Messages which arrive out of order but within the window are still
+ * accepted, since they may carry changes that no later message carries. Messages older than the window are dropped.
+ * <p>
+ * The epoch identifies one run of the origin server. A message of a newer epoch resets the window, and messages of an
+ * older epoch are dropped.
+ */
+public class SequenceTracker {
+
+    private static final int WINDOW_SIZE = Long.SIZE;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * Tests whether the message with specific sequence number should be handled, and records it as seen if so.
+     *
+     * @param origin   the name of the server which sent the message
+     * @param epoch    the epoch of the origin server
+     * @param sequence the sequence number of the message
+     * @return true if the message is seen for the first time; false if it's a duplicate or too old
+     */
+    public boolean accept(@NonNull String origin, long epoch, long sequence) {
+        return windows.computeIfAbsent(origin, k -> new Window()).accept(epoch, sequence);
+    }
+
+    /**
+     * Forgets all the origins.
+     */
+    public void clear() {
+        windows.clear();
+    }
+
+    private static final class Window {
+        private long epoch = Long.MIN_VALUE;
+        private long highest = -1;
+        private long seen; // bit i is set if (highest - i) has been seen
+
+        synchronized boolean accept(long epoch, long sequence) {
+            if (epoch < this.epoch) {
+                return false; // From an older run of the origin
+            }
+            if (epoch > this.epoch) {
+                this.epoch = epoch;
+                this.highest = sequence;
+                this.seen = 1L;
+                return true;
+            }
+            if (sequence > highest) {
+                long shift = sequence - highest;
+                seen = shift >= WINDOW_SIZE ? 1L : (seen << shift) | 1L;
+                highest = sequence;
+                return true;
+            }
+            long offset = highest - sequence;
+            if (offset >= WINDOW_SIZE) {
+                return false; // Too old to tell
+            }
+            long bit = 1L << offset;
+            if ((seen & bit) != 0) {
+                return false; // Duplicate
+            }
+            seen |= bit;
+            return true;
+        }
+    }
+
+}
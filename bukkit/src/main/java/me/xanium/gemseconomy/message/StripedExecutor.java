@@ -0,0 +1,138 @@
+package me.xanium.gemseconomy.message;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import me.lucko.helper.terminable.Terminable;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runs tasks on a fixed number of single-threaded stripes, choosing the stripe by a key.
+ * <p>
+ * Tasks with the same key always run on the same stripe, one after another and in the order they were submitted,
+ * while tasks with different keys can run in parallel. None of them run on the server thread.
+ */
+@DefaultQualifier(NonNull.class)
+public class StripedExecutor implements Terminable {
+
+    private final ThreadPoolExecutor[] stripes;
+
+    // --- Metrics ---
+    private final AtomicLongArray maxDepths;
+    private final AtomicLong submitted = new AtomicLong();
+
+    public StripedExecutor(String name, int stripeCount) {
+        this.stripes = new ThreadPoolExecutor[stripeCount];
+        this.maxDepths = new AtomicLongArray(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat(name + " Stripe " + i).setDaemon(true).build()
+            );
+        }
+    }
+
+    /**
+     * @param key the key of the task
+     * @return the index of the stripe which runs the tasks of specific key
+     */
+    public int stripeOf(UUID key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16; // Spread the higher bits, as UUIDs of one kind may only differ there
+        return Math.floorMod(hash, stripes.length);
+    }
+
+    /**
+     * Runs a task after all the tasks previously submitted with the same key.
+     *
+     * @param key  the key of the task
+     * @param task the task to run
+     */
+    public void execute(UUID key, Runnable task) {
+        executeOnStripe(stripeOf(key), task);
+    }
+
+    /**
+     * Runs a task on specific stripe, after all the tasks previously submitted to it.
+     *
+     * @param stripe the index of the stripe
+     * @param task   the task to run
+     */
+    public void executeOnStripe(int stripe, Runnable task) {
+        ThreadPoolExecutor executor = stripes[stripe];
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        submitted.incrementAndGet();
+        maxDepths.accumulateAndGet(stripe, executor.getQueue().size(), Math::max);
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * @return the number of tasks waiting on all stripes
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            depth += stripe.getQueue().size();
+        }
+        return depth;
+    }
+
+    /**
+     * @param stripe the index of the stripe
+     * @return the number of tasks waiting on specific stripe
+     */
+    public int getQueueDepth(int stripe) {
+        return stripes[stripe].getQueue().size();
+    }
+
+    /**
+     * @return the highest number of tasks ever waiting on a single stripe
+     */
+    public long getMaxQueueDepth() {
+        long max = 0;
+        for (int i = 0; i < maxDepths.length(); i++) {
+            max = Math.max(max, maxDepths.get(i));
+        }
+        return max;
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getCompleted() {
+        long completed = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            completed += stripe.getCompletedTaskCount();
+        }
+        return completed;
+    }
+
+    @Override public void close() {
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor stripe : stripes) {
+                stripe.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
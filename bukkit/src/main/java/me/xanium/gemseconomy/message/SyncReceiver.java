@@ -0,0 +1,44 @@
+package me.xanium.gemseconomy.message;
+
+import me.lucko.helper.terminable.Terminable;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Applies the messages received by an {@link AbstractMessenger} to the local state.
+ * <p>
+ * Messages reaching this receiver have already passed the duplicate and replay checks.
+ */
+@DefaultQualifier(NonNull.class)
+public interface SyncReceiver extends Terminable {
+
+    void onAccountsUpdated(String origin, List<AccountDelta> deltas);
+
+    void onAccountsDeleted(String origin, List<UUID> uuids);
+
+    void onCurrenciesCreated(String origin, List<UUID> uuids);
+
+    void onCurrenciesUpdated(String origin, List<UUID> uuids);
+
+    void onCurrenciesDeleted(String origin, List<UUID> uuids);
+
+    void onBalancesCleared(String origin, List<UUID> uuids);
+
+    void onAccountsAcquired(String origin, List<UUID> uuids);
+
+    void onAccountsReleased(String origin, Map<UUID, Long> versions);
+
+    void onLeasesRevoked(String origin, List<UUID> uuids);
+
+    void onLeaderboardReceived(String origin, LeaderboardChunk chunk);
+
+    /**
+     * Stops handling messages. It's called when the messenger is closed.
+     */
+    @Override default void close() {}
+
+}
@@ -1,12 +1,16 @@
 package me.xanium.gemseconomy.message.impl;
 
+import me.xanium.gemseconomy.message.AccountDelta;
 import me.xanium.gemseconomy.message.Messenger;
 
+import java.util.Collection;
 import java.util.UUID;
 
 public class EmptyMessenger implements Messenger {
 
-    @Override public void sendMessage(final String type, final UUID uuid) {}
+    @Override public void sendMessage(final String type, final Collection<UUID> uuids) {}
+
+    @Override public void sendAccountUpdate(final AccountDelta delta) {}
 
     @Override public void close() {}
 
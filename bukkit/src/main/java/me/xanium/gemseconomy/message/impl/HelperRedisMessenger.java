@@ -0,0 +1,106 @@
+package me.xanium.gemseconomy.message.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import me.lucko.helper.terminable.Terminable;
+import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.message.AbstractMessenger;
+import me.xanium.gemseconomy.message.SyncReceiver;
+import me.xanium.gemseconomy.message.redis.SyncFrame;
+import me.xanium.gemseconomy.message.redis.SyncTransport;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A messenger which talks to other servers through a Redis pub/sub channel, without ConnectorPlugin in between.
+ * <p>
+ * All the packets of a flush are published together, and received packets are handled one by one on a dedicated
+ * thread, so that neither side blocks the Redis connection or the server.
+ */
+@DefaultQualifier(NonNull.class)
+public class HelperRedisMessenger extends AbstractMessenger {
+
+    private final String serverId;
+    private final SyncTransport transport;
+    private final Queue<SyncFrame> pending = new ConcurrentLinkedQueue<>();
+    private final ExecutorService dispatcher;
+    private final Terminable subscription;
+    private @Nullable Terminable flushTask;
+
+    /**
+     * @param serverId  the name of this server, which must be unique across the network
+     * @param transport the transport to send and receive frames
+     * @param receiver  the receiver of incoming messages
+     */
+    public HelperRedisMessenger(String serverId, SyncTransport transport, SyncReceiver receiver) {
+        super(receiver);
+        this.serverId = serverId;
+        this.transport = transport;
+        this.dispatcher = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("GemsEconomy Redis Dispatcher")
+            .setDaemon(true)
+            .build()
+        );
+        this.subscription = transport.subscribe(frame -> {
+            if (frame.origin().equals(serverId)) {
+                return; // Redis echoes our own messages
+            }
+            dispatcher.execute(() -> {
+                try {
+                    receive(frame.origin(), frame.action(), frame.data());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        });
+    }
+
+    /**
+     * Sends queued messages once per server tick, until this messenger is closed.
+     */
+    public void flushEveryTick() {
+        if (flushTask == null) {
+            flushTask = GemsEconomyPlugin.getInstance().getMessageExecutor().runRepeating(this::flush, 50);
+        }
+    }
+
+    @Override
+    protected void publish(final String action, final byte[] data) {
+        pending.add(new SyncFrame(serverId, action, data));
+    }
+
+    @Override
+    public synchronized void flush() {
+        super.flush();
+        List<SyncFrame> frames = new ArrayList<>(pending.size());
+        SyncFrame frame;
+        while ((frame = pending.poll()) != null) {
+            frames.add(frame);
+        }
+        transport.publish(frames);
+    }
+
+    @Override public void close() {
+        if (flushTask != null) {
+            flushTask.closeSilently();
+        }
+        flush(); // Don't lose anything queued in the last tick
+        subscription.closeSilently();
+        dispatcher.shutdown();
+        try {
+            dispatcher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        receiver.closeSilently();
+    }
+
+}
@@ -0,0 +1,139 @@
+package me.xanium.gemseconomy.message.impl;
+
+import me.lucko.helper.terminable.Terminable;
+import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.api.Account;
+import me.xanium.gemseconomy.data.ProxyStorage;
+import me.xanium.gemseconomy.message.AbstractMessenger;
+import me.xanium.gemseconomy.message.AccountDelta;
+import me.xanium.gemseconomy.message.Action;
+import me.xanium.gemseconomy.message.SyncReceiver;
+import me.xanium.gemseconomy.utils.UtilServer;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A messenger used with {@link ProxyStorage}, which relays messages through the proxy plugin.
+ * <p>
+ * Account changes and deletions are not sent by this messenger at all, as the proxy already pushes them to the
+ * servers which hold the accounts. Instead, this messenger reports which accounts are held by this server. The proxy
+ * already records it when it serves the load of an account, so these reports mostly tell which accounts are evicted,
+ * and recover from a proxy which has lost track (see {@link #resync}).
+ */
+@DefaultQualifier(NonNull.class)
+public class ProxyMessenger extends AbstractMessenger {
+
+    private final ProxyStorage storage;
+    private final Set<UUID> interestAdded = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> interestRemoved = ConcurrentHashMap.newKeySet();
+    /**
+     * Whether the proxy may have a wrong idea of the accounts held here, and must be sent all of them.
+     */
+    private final AtomicBoolean resync = new AtomicBoolean(true);
+    private @Nullable Terminable flushTask;
+
+    public ProxyMessenger(ProxyStorage storage, SyncReceiver receiver) {
+        super(receiver);
+        this.storage = storage;
+        this.storage.setRelayHandler(this::receive);
+    }
+
+    /**
+     * Sends queued messages once per server tick, until this messenger is closed.
+     */
+    public void flushEveryTick() {
+        if (flushTask == null) {
+            flushTask = GemsEconomyPlugin.getInstance().getMessageExecutor().runRepeating(this::flush, 50);
+        }
+    }
+
+    @Override
+    public void sendMessage(final String action, final Collection<UUID> uuids) {
+        if (action.equals(Action.DELETE_ACCOUNT)) {
+            return; // The proxy has already pushed it
+        }
+        super.sendMessage(action, uuids);
+    }
+
+    @Override
+    public void sendAccountUpdate(final AccountDelta delta) {
+        // The proxy has already pushed it
+    }
+
+    @Override
+    public void onAccountCached(final UUID uuid) {
+        interestRemoved.remove(uuid);
+        interestAdded.add(uuid);
+    }
+
+    @Override
+    public void onAccountEvicted(final UUID uuid) {
+        interestAdded.remove(uuid);
+        interestRemoved.add(uuid);
+    }
+
+    @Override
+    public synchronized void flush() {
+        super.flush();
+        flushInterest();
+    }
+
+    private void flushInterest() {
+        if (resync.get()) {
+            // Report everything held here from scratch
+            List<UUID> cached = GemsEconomyPlugin.getInstance().getAccountManager().getCachedAccounts().stream().map(Account::getUuid).toList();
+            if (storage.reportInterest(true, cached, List.of())) {
+                resync.set(false);
+                interestAdded.clear();
+                interestRemoved.clear();
+                // The proxy didn't push the changes of the accounts it didn't know we held, so catch up with them
+                GemsEconomyPlugin.getInstance().getIoExecutor().execute(() -> GemsEconomyPlugin.getInstance().getAccountManager().refreshAccounts(cached));
+            }
+            return;
+        }
+        if (interestAdded.isEmpty() && interestRemoved.isEmpty()) {
+            return;
+        }
+        List<UUID> added = drain(interestAdded);
+        List<UUID> removed = drain(interestRemoved);
+        if (!storage.reportInterest(false, added, removed)) {
+            resync.set(true); // Some reports are lost - start over once someone can carry them
+        }
+    }
+
+    private static List<UUID> drain(Set<UUID> set) {
+        List<UUID> drained = new ArrayList<>(set.size());
+        for (UUID uuid : set) {
+            if (set.remove(uuid)) {
+                drained.add(uuid);
+            }
+        }
+        return drained;
+    }
+
+    @Override
+    protected void publish(final String action, final byte[] data) {
+        if (!storage.relay(action, data)) {
+            UtilServer.consoleLog("§cNobody is online to carry the message to proxy: " + action);
+        }
+    }
+
+    @Override public void close() {
+        if (flushTask != null) {
+            flushTask.closeSilently();
+        }
+        flush(); // Don't lose anything queued in the last tick
+        storage.setRelayHandler(null);
+        receiver.closeSilently();
+    }
+
+}
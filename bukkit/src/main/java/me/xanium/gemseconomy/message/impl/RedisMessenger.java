@@ -1,110 +1,53 @@
 package me.xanium.gemseconomy.message.impl;
 
-import com.google.common.io.ByteArrayDataInput;
-import com.google.common.io.ByteArrayDataOutput;
-import com.google.common.io.ByteStreams;
 import de.themoep.connectorplugin.bukkit.BukkitConnectorPlugin;
 import de.themoep.connectorplugin.connector.ConnectingPlugin;
-import de.themoep.connectorplugin.connector.Message;
 import de.themoep.connectorplugin.connector.MessageTarget;
 import me.lucko.helper.Schedulers;
+import me.lucko.helper.terminable.Terminable;
 import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.message.AbstractMessenger;
 import me.xanium.gemseconomy.message.Action;
-import me.xanium.gemseconomy.message.Messenger;
-import me.xanium.gemseconomy.utils.UtilServer;
-import org.bukkit.entity.Player;
+import me.xanium.gemseconomy.message.PluginSyncReceiver;
 
-import java.util.UUID;
-import java.util.function.BiConsumer;
+public class RedisMessenger extends AbstractMessenger {
 
-@SuppressWarnings("UnstableApiUsage")
-public class RedisMessenger implements Messenger {
-
-    private final GemsEconomyPlugin plugin;
     private final BukkitConnectorPlugin connectorPlugin;
     private final ConnectingPlugin connectingPlugin = () -> "GemsEconomy";
+    private final Terminable flushTask;
 
     public RedisMessenger(GemsEconomyPlugin plugin, BukkitConnectorPlugin connectorPlugin) {
-        this.plugin = plugin;
+        super(new PluginSyncReceiver(plugin));
         this.connectorPlugin = connectorPlugin;
 
         // Must register it after "Done!"
         Schedulers.bukkit().runTask(plugin, this::registerHandlers);
+
+        // Send queued messages once per tick
+        this.flushTask = GemsEconomyPlugin.getInstance().getMessageExecutor().runRepeating(this::flush, 50);
     }
 
     /**
      * Handles incoming messages.
      */
     private void registerHandlers() {
-        registerHandler(Action.CREATE_ACCOUNT, (player, message) -> {
-            // Don't need to "sync" account creation
-        });
-        registerHandler(Action.UPDATE_ACCOUNT, (player, message) -> {
-            UUID uuid = readUUID(message.getData());
-            if (plugin.getAccountManager().cached(uuid)) {
-                plugin.getAccountManager().refreshAccount(uuid);
-                UtilServer.consoleLog("Received (source: %s) - Account updated: %s".formatted(message.getSendingServer(), uuid));
-            }
-        });
-        registerHandler(Action.DELETE_ACCOUNT, (player, message) -> {
-            UUID uuid = readUUID(message.getData());
-            plugin.getAccountManager().flushAccount(uuid); // It's already deleted from database by sending server
-            UtilServer.consoleLog("Received (source: %s) - Account deleted: %s".formatted(message.getSendingServer(), uuid));
-        });
-        registerHandler(Action.CREATE_CURRENCY, (player, message) -> {
-            UUID uuid = readUUID(message.getData());
-            plugin.getCurrencyManager().updateCurrency(uuid, true);
-            UtilServer.consoleLog("Received (source: %s) - Currency created: %s".formatted(message.getSendingServer(), uuid));
-        });
-        registerHandler(Action.UPDATE_CURRENCY, (player, message) -> {
-            UUID uuid = readUUID(message.getData());
-            plugin.getCurrencyManager().updateCurrency(uuid, false);
-            UtilServer.consoleLog("Received (source: %s) - Currency updated: %s".formatted(message.getSendingServer(), uuid));
-        });
-        registerHandler(Action.DELETE_CURRENCY, (player, message) -> {
-            UUID uuid = readUUID(message.getData());
-            plugin.getCurrencyManager().removeCurrency(uuid);
-            UtilServer.consoleLog("Received (source: %s) - Currency deleted: %s".formatted(message.getSendingServer(), uuid));
-        });
+        for (String action : Action.ORDERED) {
+            connectorPlugin.getConnector().registerMessageHandler(connectingPlugin, action, (player, message) ->
+                receive(message.getSendingServer(), action, message.getData())
+            );
+        }
     }
 
     @Override
-    public void sendMessage(final String action, final UUID uuid) {
-        Schedulers.async().run(() -> {
-            sendData(action, writeUUID(uuid));
-            switch (action) {
-                case Action.CREATE_ACCOUNT -> UtilServer.consoleLog("Sent - Account created: " + uuid);
-                case Action.UPDATE_ACCOUNT -> UtilServer.consoleLog("Sent - Account updated: " + uuid);
-                case Action.DELETE_ACCOUNT -> UtilServer.consoleLog("Sent - Account deleted: " + uuid);
-                case Action.CREATE_CURRENCY -> UtilServer.consoleLog("Sent - Currency created: " + uuid);
-                case Action.UPDATE_CURRENCY -> UtilServer.consoleLog("Sent - Currency updated: " + uuid);
-                case Action.DELETE_CURRENCY -> UtilServer.consoleLog("Sent - Currency deleted: " + uuid);
-            }
-        });
-    }
-
-    private void sendData(String action, byte[] data) {
+    protected void publish(final String action, final byte[] data) {
         connectorPlugin.getConnector().sendData(connectingPlugin, action, MessageTarget.OTHERS_QUEUE, data);
     }
 
-    private void registerHandler(String action, BiConsumer<Player, Message> handler) {
-        connectorPlugin.getConnector().registerMessageHandler(connectingPlugin, action, handler);
-    }
-
-    private UUID readUUID(byte[] data) {
-        ByteArrayDataInput in = ByteStreams.newDataInput(data);
-        return new UUID(in.readLong(), in.readLong());
-    }
-
-    private byte[] writeUUID(UUID uuid) {
-        ByteArrayDataOutput out = ByteStreams.newDataOutput();
-        out.writeLong(uuid.getMostSignificantBits());
-        out.writeLong(uuid.getLeastSignificantBits());
-        return out.toByteArray();
-    }
-
     @Override public void close() {
+        flushTask.closeSilently();
+        flush(); // Don't lose anything queued in the last tick
         connectorPlugin.getConnector().unregisterMessageHandlers(this.connectingPlugin);
+        receiver.closeSilently();
     }
 
 }
@@ -0,0 +1,56 @@
+package me.xanium.gemseconomy.message.redis;
+
+import me.lucko.helper.messaging.ChannelAgent;
+import me.lucko.helper.redis.Redis;
+import me.lucko.helper.terminable.Terminable;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Sends frames through the Redis connection of helper.
+ * <p>
+ * Frames are received through a helper {@link me.lucko.helper.messaging.Channel}, while publishing goes straight to
+ * the pool so that all the frames of a flush are sent in one pipeline.
+ */
+@DefaultQualifier(NonNull.class)
+public class HelperRedisTransport implements SyncTransport {
+
+    private final Redis redis;
+    private final String channel;
+    private final byte[] channelBytes;
+    private final SyncFrame.Codec codec = new SyncFrame.Codec();
+
+    public HelperRedisTransport(Redis redis, String channel) {
+        this.redis = redis;
+        this.channel = channel;
+        this.channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override public void publish(final List<SyncFrame> frames) {
+        if (frames.isEmpty()) {
+            return;
+        }
+        try (Jedis jedis = redis.getJedis()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (SyncFrame frame : frames) {
+                pipeline.publish(channelBytes, codec.encode(frame));
+            }
+            pipeline.sync();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override public Terminable subscribe(final Consumer<SyncFrame> handler) {
+        ChannelAgent<SyncFrame> agent = redis.getChannel(channel, SyncFrame.class).newAgent();
+        agent.addListener((a, frame) -> handler.accept(frame));
+        return agent;
+    }
+
+}
@@ -0,0 +1,55 @@
+package me.xanium.gemseconomy.message.redis;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import me.lucko.helper.messaging.codec.EncodingException;
+import me.lucko.helper.messaging.codec.Message;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+/**
+ * A packet sent through the Redis channel.
+ * <p>
+ * Redis delivers every message to all subscribers including the publisher, so the frame carries the name of the
+ * sending server besides the action and the data.
+ *
+ * @param origin the name of the sending server
+ * @param action the action of the packet
+ * @param data   the data of the packet, including the header written by the messenger
+ */
+@Message(codec = SyncFrame.Codec.class)
+@DefaultQualifier(NonNull.class)
+public record SyncFrame(String origin, String action, byte[] data) {
+
+    /**
+     * A compact binary codec: the origin and the action as UTF strings, followed by the length-prefixed data.
+     */
+    @SuppressWarnings("UnstableApiUsage")
+    public static final class Codec implements me.lucko.helper.messaging.codec.Codec<SyncFrame> {
+
+        @Override public byte[] encode(final SyncFrame frame) throws EncodingException {
+            ByteArrayDataOutput out = ByteStreams.newDataOutput(frame.data.length + 64);
+            out.writeUTF(frame.origin);
+            out.writeUTF(frame.action);
+            out.writeInt(frame.data.length);
+            out.write(frame.data);
+            return out.toByteArray();
+        }
+
+        @Override public SyncFrame decode(final byte[] buf) throws EncodingException {
+            try {
+                ByteArrayDataInput in = ByteStreams.newDataInput(buf);
+                String origin = in.readUTF();
+                String action = in.readUTF();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                return new SyncFrame(origin, action, data);
+            } catch (IllegalStateException e) {
+                throw new EncodingException(e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+package me.xanium.gemseconomy.message.redis;
+
+import me.lucko.helper.terminable.Terminable;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The pub/sub operations needed by {@link me.xanium.gemseconomy.message.impl.HelperRedisMessenger}.
+ * <p>
+ * Keeping them behind an interface allows the messenger to run against an in-process stand-in instead of a real
+ * Redis server.
+ */
+@DefaultQualifier(NonNull.class)
+public interface SyncTransport {
+
+    /**
+     * Publishes several frames at once, in order.
+     *
+     * @param frames the frames to publish
+     */
+    void publish(List<SyncFrame> frames);
+
+    /**
+     * Subscribes to all the frames published by any server, including this one.
+     *
+     * @param handler the handler of received frames
+     * @return a terminable which cancels the subscription
+     */
+    Terminable subscribe(Consumer<SyncFrame> handler);
+
+}
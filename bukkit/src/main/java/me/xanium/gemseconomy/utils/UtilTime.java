@@ -9,6 +9,9 @@
 package me.xanium.gemseconomy.utils;
 
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
@@ -20,21 +23,20 @@ public class UtilTime {
     public static final String DATE_FORMAT_NOW = "yyyy/MM/dd HH:mm:ss";
     public static final String DATE_FORMAT_DAY = "yyyy/MM/dd";
 
+    // Unlike SimpleDateFormat, these are immutable and thread-safe, so they're built once
+    private static final DateTimeFormatter FORMATTER_NOW = DateTimeFormatter.ofPattern(DATE_FORMAT_NOW).withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter FORMATTER_DAY = DateTimeFormatter.ofPattern(DATE_FORMAT_DAY).withZone(ZoneId.systemDefault());
+
     public static String now() {
-        final Calendar cal = Calendar.getInstance();
-        final SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT_NOW);
-        return sdf.format(cal.getTime());
+        return FORMATTER_NOW.format(Instant.now());
     }
 
     public static String when(final long time) {
-        final SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT_NOW);
-        return sdf.format(time);
+        return FORMATTER_NOW.format(Instant.ofEpochMilli(time));
     }
 
     public static String date() {
-        final Calendar cal = Calendar.getInstance();
-        final SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT_DAY);
-        return sdf.format(cal.getTime());
+        return FORMATTER_DAY.format(Instant.now());
     }
 
     public static String clock(boolean seconds) {
@@ -50,6 +52,22 @@ public class UtilTime {
         return sdf.format(date);
     }
 
+    /**
+     * Formats how long ago specific time was, in the largest whole unit, e.g. "42s", "5m", "3h" or "2d".
+     */
+    public static String ago(final long time) {
+        final long seconds = Math.max(0, (System.currentTimeMillis() - time) / 1000);
+        if (seconds < 60) {
+            return seconds + "s";
+        } else if (seconds < 60 * 60) {
+            return seconds / 60 + "m";
+        } else if (seconds < 24 * 60 * 60) {
+            return seconds / (60 * 60) + "h";
+        } else {
+            return seconds / (24 * 60 * 60) + "d";
+        }
+    }
+
     public static boolean elapsed(final long from, final long required) {
         return System.currentTimeMillis() - from > required;
     }
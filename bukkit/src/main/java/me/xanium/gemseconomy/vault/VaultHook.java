@@ -9,6 +9,7 @@ import net.milkbowl.vault.economy.AbstractEconomy;
 import net.milkbowl.vault.economy.EconomyResponse;
 import org.bukkit.OfflinePlayer;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -61,22 +62,44 @@ public class VaultHook extends AbstractEconomy {
         return GemsEconomyPlugin.getInstance().getAccountManager().hasAccount(player);
     }
 
+    /**
+     * Vault is mostly called on the main thread, where some storages can't load accounts. If the account is not cached
+     * then, it's loaded in background and this returns null, so that the call fails softly instead of throwing.
+     */
     @SuppressWarnings("DuplicatedCode")
-    private @NonNull Account getAccountOrCreate(@NonNull OfflinePlayer offlinePlayer) {
+    private @Nullable Account getAccountOrCreate(@NonNull OfflinePlayer offlinePlayer) {
         Preconditions.checkNotNull(offlinePlayer, "player");
-        return GemsEconomyPlugin.getInstance().getAccountManager().createAccount(offlinePlayer);
+        try {
+            return GemsEconomyPlugin.getInstance().getAccountManager().createAccount(offlinePlayer);
+        } catch (IllegalStateException e) {
+            return null;
+        }
     }
 
+    /**
+     * @see #getAccountOrCreate(OfflinePlayer)
+     */
     @SuppressWarnings("DuplicatedCode")
-    private @NonNull Account getAccountOrCreate(@NonNull String playerName) {
+    private @Nullable Account getAccountOrCreate(@NonNull String playerName) {
         Preconditions.checkNotNull(playerName, "playerName");
-        return GemsEconomyPlugin.getInstance().getAccountManager().createAccount(playerName);
+        try {
+            return GemsEconomyPlugin.getInstance().getAccountManager().createAccount(playerName);
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static EconomyResponse notLoaded(String playerName) {
+        return new EconomyResponse(0, 0, EconomyResponse.ResponseType.FAILURE, "The account of " + playerName + " is being loaded, try again later");
     }
 
     @Override
     public double getBalance(String playerName) {
         UtilServer.consoleLog("Lookup name: " + playerName);
         Account account = getAccountOrCreate(playerName);
+        if (account == null) {
+            return 0D;
+        }
         Currency currency = GemsEconomyPlugin.getInstance().getCurrencyManager().getDefaultCurrency();
         return account.getBalance(currency);
     }
@@ -85,6 +108,9 @@ public class VaultHook extends AbstractEconomy {
     public double getBalance(OfflinePlayer player) {
         UtilServer.consoleLog("Lookup name: " + player.getName() + " (" + player.getUniqueId() + ")");
         Account account = getAccountOrCreate(player);
+        if (account == null) {
+            return 0D;
+        }
         Currency currency = GemsEconomyPlugin.getInstance().getCurrencyManager().getDefaultCurrency();
         return account.getBalance(currency);
     }
@@ -98,6 +124,9 @@ public class VaultHook extends AbstractEconomy {
         }
 
         Account account = getAccountOrCreate(player);
+        if (account == null) {
+            return notLoaded(player.getName());
+        }
         Currency currency = GemsEconomyPlugin.getInstance().getCurrencyManager().getDefaultCurrency();
 
         if (account.withdraw(currency, amount)) {
@@ -126,6 +155,9 @@ public class VaultHook extends AbstractEconomy {
         }
 
         Account account = getAccountOrCreate(player);
+        if (account == null) {
+            return notLoaded(player.getName());
+        }
         Currency currency = GemsEconomyPlugin.getInstance().getCurrencyManager().getDefaultCurrency();
 
         if (account.deposit(currency, amount)) {
@@ -154,6 +186,9 @@ public class VaultHook extends AbstractEconomy {
         }
 
         Account account = getAccountOrCreate(playerName);
+        if (account == null) {
+            return notLoaded(playerName);
+        }
         Currency currency = GemsEconomyPlugin.getInstance().getCurrencyManager().getDefaultCurrency();
 
         if (account.withdraw(currency, amount)) {
@@ -182,6 +217,9 @@ public class VaultHook extends AbstractEconomy {
         }
 
         Account account = getAccountOrCreate(playerName);
+        if (account == null) {
+            return notLoaded(playerName);
+        }
         Currency currency = GemsEconomyPlugin.getInstance().getCurrencyManager().getDefaultCurrency();
 
         if (account.deposit(currency, amount)) {
@@ -203,8 +241,7 @@ public class VaultHook extends AbstractEconomy {
 
     @Override
     public boolean createPlayerAccount(String playerName) {
-        GemsEconomyPlugin.getInstance().getAccountManager().createAccount(playerName);
-        return GemsEconomyPlugin.getInstance().getAccountManager().hasAccount(playerName);
+        return getAccountOrCreate(playerName) != null;
     }
 
     //<editor-fold desc="Expanded Methods">
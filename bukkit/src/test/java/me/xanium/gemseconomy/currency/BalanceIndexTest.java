@@ -0,0 +1,206 @@
+package me.xanium.gemseconomy.currency;
+
+import me.xanium.gemseconomy.data.TransientBalance;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BalanceIndexTest {
+
+    private static final Comparator<TransientBalance> ORDER = Comparator
+        .comparingDouble(TransientBalance::amount).reversed()
+        .thenComparing(TransientBalance::uuid);
+
+    @Test
+    void ranksFromHighestToLowest() {
+        BalanceIndex index = new BalanceIndex(10);
+        UUID low = UUID.randomUUID(), mid = UUID.randomUUID(), high = UUID.randomUUID();
+        index.update(mid, "mid", 50);
+        index.update(low, "low", 10);
+        index.update(high, "high", 100);
+
+        assertEquals(1, index.rank(high));
+        assertEquals(2, index.rank(mid));
+        assertEquals(3, index.rank(low));
+        assertEquals(0, index.rank(UUID.randomUUID()));
+
+        index.update(low, "low", 200);
+        assertEquals(1, index.rank(low));
+        assertEquals(2, index.rank(high));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void ignoresInsignificantBalances() {
+        BalanceIndex index = new BalanceIndex(10);
+        UUID uuid = UUID.randomUUID();
+        index.update(uuid, "player", 1);
+        assertEquals(0, index.rank(uuid));
+
+        index.update(uuid, "player", 5);
+        index.update(uuid, "player", 0);
+        assertEquals(0, index.rank(uuid));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void breaksTiesByUuid() {
+        BalanceIndex index = new BalanceIndex(10);
+        UUID first = new UUID(0, 1), second = new UUID(0, 2);
+        index.update(second, "second", 10);
+        index.update(first, "first", 10);
+
+        assertEquals(1, index.rank(first));
+        assertEquals(2, index.rank(second));
+    }
+
+    @Test
+    void findsEntriesAtRanks() {
+        BalanceIndex index = new BalanceIndex(1000);
+        List<TransientBalance> expected = fill(index, 500);
+
+        for (int rank = 1; rank <= expected.size(); rank++) {
+            TransientBalance entry = index.entryAt(rank);
+            assertEquals(expected.get(rank - 1), entry);
+            assertEquals(rank, index.rank(entry.uuid()));
+        }
+        assertNull(index.entryAt(0));
+        assertNull(index.entryAt(expected.size() + 1));
+    }
+
+    @Test
+    void readsRanges() {
+        BalanceIndex index = new BalanceIndex(1000);
+        List<TransientBalance> expected = fill(index, 200);
+
+        assertEquals(expected.subList(0, 10), index.range(0, 10));
+        assertEquals(expected.subList(95, 120), index.range(95, 25));
+        assertEquals(expected.subList(190, 200), index.range(190, 50));
+        assertEquals(List.of(), index.range(200, 10));
+        assertEquals(expected, index.range(0, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void evictsLowestBalanceBeyondCapacity() {
+        BalanceIndex index = new BalanceIndex(3);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID(), d = UUID.randomUUID();
+        index.update(a, "a", 40);
+        index.update(b, "b", 30);
+        index.update(c, "c", 20);
+        index.update(d, "d", 50);
+
+        assertEquals(3, index.size());
+        assertEquals(0, index.rank(c));
+        assertEquals(1, index.rank(d));
+        assertEquals(3, index.rank(b));
+    }
+
+    @Test
+    void refusesBalancesBelowEvictedOnes() {
+        BalanceIndex index = new BalanceIndex(3);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID(), d = UUID.randomUUID();
+        index.update(a, "a", 40);
+        index.update(b, "b", 30);
+        index.update(c, "c", 20);
+        index.update(d, "d", 50); // Evicts c
+        index.update(a, "a", 5); // Drops below b, and c (20) is not known anymore
+
+        UUID e = UUID.randomUUID();
+        index.update(e, "e", 10);
+        assertEquals(0, index.rank(a));
+        assertEquals(0, index.rank(e));
+        assertEquals(2, index.size());
+
+        index.update(e, "e", 35);
+        assertEquals(2, index.rank(e));
+    }
+
+    @Test
+    void refusesBalancesBelowFullReset() {
+        BalanceIndex index = new BalanceIndex(3);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+        index.reset(List.of(
+            new TransientBalance(a, "a", 30),
+            new TransientBalance(b, "b", 20),
+            new TransientBalance(c, "c", 10)
+        ));
+        index.update(a, "a", 0); // The index shrinks, but balances between 0 and 10 are not known
+
+        UUID d = UUID.randomUUID();
+        index.update(d, "d", 5);
+        assertEquals(0, index.rank(d));
+
+        index.update(d, "d", 15);
+        assertEquals(2, index.rank(d));
+    }
+
+    @Test
+    void acceptsAnyBalanceAfterPartialReset() {
+        BalanceIndex index = new BalanceIndex(3);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID();
+        index.reset(List.of(
+            new TransientBalance(a, "a", 30),
+            new TransientBalance(b, "b", 20)
+        ));
+
+        UUID c = UUID.randomUUID();
+        index.update(c, "c", 5);
+        assertEquals(3, index.rank(c));
+    }
+
+    @Test
+    void keepsUpdatesMadeDuringReset() {
+        BalanceIndex index = new BalanceIndex(10);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID();
+        index.update(a, "a", 10);
+        BalanceIndex.Reset reset = index.beginReset();
+        index.update(a, "a", 100);
+        index.reset(reset, List.of(
+            new TransientBalance(a, "a", 10), // Loaded before the update
+            new TransientBalance(b, "b", 50)
+        ));
+
+        assertEquals(1, index.rank(a));
+        assertEquals(new TransientBalance(a, "a", 100), index.entryAt(1));
+        assertEquals(2, index.rank(b));
+    }
+
+    @Test
+    void tracksUpdatesOfEachResetSeparately() {
+        BalanceIndex index = new BalanceIndex(10);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID();
+        BalanceIndex.Reset first = index.beginReset();
+        index.update(a, "a", 100);
+        BalanceIndex.Reset second = index.beginReset();
+        index.update(b, "b", 50);
+
+        index.reset(first, List.of(new TransientBalance(a, "a", 10), new TransientBalance(b, "b", 20)));
+        assertEquals(new TransientBalance(a, "a", 100), index.entryAt(1));
+        assertEquals(new TransientBalance(b, "b", 50), index.entryAt(2));
+
+        // The second reset began after a was updated, so it loaded a later balance of it
+        index.reset(second, List.of(new TransientBalance(a, "a", 30), new TransientBalance(b, "b", 20)));
+        assertEquals(new TransientBalance(b, "b", 50), index.entryAt(1));
+        assertEquals(new TransientBalance(a, "a", 30), index.entryAt(2));
+    }
+
+    private static List<TransientBalance> fill(BalanceIndex index, int count) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<TransientBalance> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TransientBalance entry = new TransientBalance(UUID.randomUUID(), "player" + i, random.nextInt(2, 100)); // With ties
+            entries.add(entry);
+            index.update(entry.uuid(), entry.name(), entry.amount());
+        }
+        entries.sort(ORDER);
+        return entries;
+    }
+
+}
@@ -0,0 +1,126 @@
+package me.xanium.gemseconomy.message.impl;
+
+import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.message.AccountDelta;
+import me.xanium.gemseconomy.message.Action;
+import me.xanium.gemseconomy.message.SyncReceiver;
+import me.xanium.gemseconomy.message.redis.LocalTransport;
+import me.xanium.gemseconomy.message.redis.SyncFrame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs two {@link HelperRedisMessenger}s on the same {@link LocalTransport}, which encodes and decodes every frame
+ * like Redis would.
+ */
+class HelperRedisMessengerTest {
+
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    private LocalTransport transport;
+    private SyncReceiver senderReceiver;
+    private SyncReceiver receiver;
+    private HelperRedisMessenger sender;
+    private HelperRedisMessenger recipient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        setInstance(mock(GemsEconomyPlugin.class)); // For the debug logs
+        transport = new LocalTransport();
+        senderReceiver = mock(SyncReceiver.class);
+        receiver = mock(SyncReceiver.class);
+        sender = new HelperRedisMessenger("sender", transport, senderReceiver);
+        recipient = new HelperRedisMessenger("recipient", transport, receiver);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        sender.close();
+        recipient.close();
+        setInstance(null);
+    }
+
+    @Test
+    void roundTripsFrames() throws Exception {
+        SyncFrame.Codec codec = new SyncFrame.Codec();
+        SyncFrame frame = new SyncFrame("sender", Action.DELETE_ACCOUNT, new byte[]{1, 2, 3, 0, -1});
+
+        SyncFrame decoded = codec.decode(codec.encode(frame));
+        assertEquals(frame.origin(), decoded.origin());
+        assertEquals(frame.action(), decoded.action());
+        assertArrayEquals(frame.data(), decoded.data());
+    }
+
+    @Test
+    void publishesEachFlushInOneBatch() {
+        UUID deleted = UUID.randomUUID(), updated = UUID.randomUUID(), currency = UUID.randomUUID();
+        sender.sendMessage(Action.DELETE_ACCOUNT, deleted);
+        sender.sendAccountUpdate(AccountDelta.reload(updated));
+        sender.sendMessage(Action.DELETE_CURRENCY, currency);
+        sender.flush();
+        sender.flush(); // Nothing left to publish
+
+        assertEquals(List.of(3), transport.getBatches());
+        verify(receiver, timeout(TIMEOUT_MILLIS)).onAccountsDeleted("sender", List.of(deleted));
+        verify(receiver, timeout(TIMEOUT_MILLIS)).onAccountsUpdated("sender", List.of(AccountDelta.reload(updated)));
+        verify(receiver, timeout(TIMEOUT_MILLIS)).onCurrenciesDeleted("sender", List.of(currency));
+    }
+
+    @Test
+    void dispatchesInOrderOnTheDispatchThread() {
+        List<UUID> received = new CopyOnWriteArrayList<>();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            received.addAll(invocation.getArgument(1));
+            threads.add(Thread.currentThread().getName());
+            return null;
+        }).when(receiver).onAccountsDeleted(anyString(), anyList());
+
+        List<UUID> sent = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            UUID uuid = UUID.randomUUID();
+            sent.add(uuid);
+            sender.sendMessage(Action.DELETE_ACCOUNT, uuid);
+            sender.flush(); // One frame per flush, each handled on its own
+        }
+
+        verify(receiver, timeout(TIMEOUT_MILLIS).times(sent.size())).onAccountsDeleted(anyString(), anyList());
+        assertEquals(sent, received);
+        assertTrue(threads.stream().allMatch("GemsEconomy Redis Dispatcher"::equals), "dispatched on " + threads);
+    }
+
+    @Test
+    void ignoresItsOwnFrames() {
+        sender.sendMessage(Action.DELETE_ACCOUNT, UUID.randomUUID());
+        sender.flush();
+
+        verify(receiver, timeout(TIMEOUT_MILLIS)).onAccountsDeleted(anyString(), anyList());
+        verify(senderReceiver, after(200).never()).onAccountsDeleted(any(), any());
+    }
+
+    private static void setInstance(GemsEconomyPlugin plugin) throws ReflectiveOperationException {
+        Field field = GemsEconomyPlugin.class.getDeclaredField("INSTANCE");
+        field.setAccessible(true);
+        field.set(null, plugin);
+    }
+
+}
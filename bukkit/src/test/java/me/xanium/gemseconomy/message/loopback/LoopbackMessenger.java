@@ -0,0 +1,50 @@
+package me.xanium.gemseconomy.message.loopback;
+
+import me.xanium.gemseconomy.message.AbstractMessenger;
+import me.xanium.gemseconomy.message.SyncReceiver;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+/**
+ * A messenger which sends packets to other nodes of the same {@link LoopbackNetwork}, all within this JVM.
+ * <p>
+ * The packets go through exactly the same encoding, sequencing and dispatching as the real messengers, which makes it
+ * possible to exercise the sync protocol without a connector or a second server. The owner of the network is
+ * responsible for calling {@link #flush()} regularly.
+ */
+@DefaultQualifier(NonNull.class)
+public class LoopbackMessenger extends AbstractMessenger {
+
+    private final String name;
+    private final LoopbackNetwork network;
+
+    public LoopbackMessenger(String name, LoopbackNetwork network, SyncReceiver receiver) {
+        super(receiver);
+        this.name = name;
+        this.network = network;
+        this.network.join(this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Called by the network when a packet arrives at this node.
+     */
+    public void deliver(String origin, String action, byte[] data) {
+        receive(origin, action, data);
+    }
+
+    @Override
+    protected void publish(final String action, final byte[] data) {
+        network.broadcast(name, action, data);
+    }
+
+    @Override public void close() {
+        flush(); // Don't lose anything queued
+        network.leave(this);
+        receiver.closeSilently();
+    }
+
+}
@@ -0,0 +1,114 @@
+package me.xanium.gemseconomy.message.loopback;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process network connecting {@link LoopbackMessenger}s.
+ * <p>
+ * Every packet is delivered to all other nodes after the configured latency, plus a random jitter which may reorder
+ * packets. Packets can also be dropped at random, to see how the receivers recover from it.
+ */
+@DefaultQualifier(NonNull.class)
+public class LoopbackNetwork {
+
+    private final Map<String, LoopbackMessenger> nodes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private volatile double dropRate;
+
+    // --- Metrics ---
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    /**
+     * @param executor      the executor which delivers the packets
+     * @param latencyMillis the base latency of every packet
+     * @param jitterMillis  the maximum random latency added to every packet, reordering them if positive
+     * @param dropRate      the probability of a packet being lost, from 0 to 1
+     */
+    public LoopbackNetwork(ScheduledExecutorService executor, long latencyMillis, long jitterMillis, double dropRate) {
+        this.executor = executor;
+        this.latencyMillis = Math.max(0, latencyMillis);
+        this.jitterMillis = Math.max(0, jitterMillis);
+        setDropRate(dropRate);
+    }
+
+    /**
+     * Changes the probability of a packet being lost, e.g. to heal the network after a lossy period.
+     *
+     * @param dropRate the probability of a packet being lost, from 0 to 1
+     */
+    public void setDropRate(double dropRate) {
+        this.dropRate = Math.min(1, Math.max(0, dropRate));
+    }
+
+    public void join(LoopbackMessenger node) {
+        nodes.put(node.getName(), node);
+    }
+
+    public void leave(LoopbackMessenger node) {
+        nodes.remove(node.getName(), node);
+    }
+
+    /**
+     * Sends a packet to every node except the sending one.
+     *
+     * @param origin the name of the sending node
+     * @param action the action of the packet
+     * @param data   the data of the packet
+     */
+    public void broadcast(String origin, String action, byte[] data) {
+        published.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double dropRate = this.dropRate;
+        for (LoopbackMessenger node : nodes.values()) {
+            if (node.getName().equals(origin)) {
+                continue;
+            }
+            if (dropRate > 0 && random.nextDouble() < dropRate) {
+                dropped.incrementAndGet();
+                continue;
+            }
+            long delay = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+            inFlight.incrementAndGet();
+            executor.schedule(() -> {
+                try {
+                    node.deliver(origin, action, data);
+                    delivered.incrementAndGet();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+}
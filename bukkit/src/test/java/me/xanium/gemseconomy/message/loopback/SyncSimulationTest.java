@@ -0,0 +1,312 @@
+package me.xanium.gemseconomy.message.loopback;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import me.xanium.gemseconomy.GemsEconomyPlugin;
+import me.xanium.gemseconomy.account.AccountManager;
+import me.xanium.gemseconomy.api.Account;
+import me.xanium.gemseconomy.api.Currency;
+import me.xanium.gemseconomy.currency.BalanceTopRepository;
+import me.xanium.gemseconomy.currency.CurrencyManager;
+import me.xanium.gemseconomy.currency.ServerCurrency;
+import me.xanium.gemseconomy.data.IoExecutor;
+import me.xanium.gemseconomy.data.MySQLStorage;
+import me.xanium.gemseconomy.logging.EconomyLogger;
+import me.xanium.gemseconomy.message.Messenger;
+import me.xanium.gemseconomy.message.PluginSyncReceiver;
+import me.xanium.gemseconomy.message.SyncReceiver;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs random transactions on several servers connected by a {@link LoopbackNetwork} and an embedded database, then
+ * checks that the server under test agrees with the database.
+ * <p>
+ * The plugin is a singleton, so only one server - the one under test - runs the real {@link AccountManager} and
+ * {@link PluginSyncReceiver}. The other servers are peers which own the players of some accounts: they change them
+ * through the real {@code PlayerAccount} and {@link MySQLStorage}, and send the changes through their own messenger,
+ * exactly like a server holding those players would.
+ * <p>
+ * Every run prints how long the server under test took to converge once the transactions were done, and how many
+ * messages and database queries each transaction cost.
+ */
+class SyncSimulationTest {
+
+    /**
+     * The interval at which servers flush their queued messages, same as one server tick.
+     */
+    private static final long FLUSH_INTERVAL_MILLIS = 50;
+    /**
+     * How long to wait for convergence before giving up.
+     */
+    private static final long CONVERGENCE_TIMEOUT_MILLIS = 30_000;
+    private static final String SERVER_NAME = "node";
+
+    private static DB database;
+
+    /**
+     * The messenger used by the current thread. Peers set their own, so that the real {@code PlayerAccount} sends
+     * their changes through them.
+     */
+    private final ThreadLocal<Messenger> currentMessenger = new ThreadLocal<>();
+
+    private GemsEconomyPlugin plugin;
+    private ScheduledExecutorService scheduler;
+    private IoExecutor ioExecutor;
+    private MySQLStorage storage;
+    private AccountManager accountManager;
+    private LoopbackMessenger messenger;
+    private Currency currency;
+
+    @BeforeAll
+    static void startDatabase() throws Exception {
+        database = DB.newEmbeddedDB(DBConfigurationBuilder.newBuilder().setPort(0).build());
+        database.start();
+        database.createDB("gemseconomy");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.stop();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockBukkit.mock();
+
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("mysql.prefix", "simulation_" + System.nanoTime());
+        config.set("lease.enabled", false);
+        config.set("engine.enabled", false);
+
+        plugin = mock(GemsEconomyPlugin.class);
+        setInstance(plugin);
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getServerId()).thenReturn(SERVER_NAME);
+        when(plugin.getHandoffTimeout()).thenReturn(500L);
+        when(plugin.getBalanceTopRepository()).thenReturn(mock(BalanceTopRepository.class));
+        when(plugin.getEconomyLogger()).thenReturn(mock(EconomyLogger.class));
+
+        scheduler = Executors.newScheduledThreadPool(2);
+        ioExecutor = new IoExecutor("Simulation I/O", 4);
+        when(plugin.getIoExecutor()).thenReturn(ioExecutor);
+
+        CurrencyManager currencyManager = new CurrencyManager(plugin);
+        when(plugin.getCurrencyManager()).thenReturn(currencyManager);
+        currency = new ServerCurrency(UUID.randomUUID(), "coin");
+        currencyManager.addCurrency(currency);
+
+        storage = new MySQLStorage("localhost", database.getConfiguration().getPort(), "gemseconomy", "root", "");
+        storage.initialize();
+        storage.saveCurrency(currency);
+        when(plugin.getDataStore()).thenReturn(storage);
+
+        accountManager = new AccountManager(plugin);
+        when(plugin.getAccountManager()).thenReturn(accountManager);
+        when(plugin.getMessenger()).thenAnswer(invocation -> Objects.requireNonNullElse(currentMessenger.get(), messenger));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (messenger != null) {
+            messenger.close();
+        }
+        scheduler.shutdownNow();
+        storage.close();
+        ioExecutor.close();
+        setInstance(null);
+        MockBukkit.unmock();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        // peers, accounts, transactions, latency, jitter, drop rate, shared
+        "1, 10, 500, 0, 0, 0, false",
+        "4, 50, 2000, 5, 0, 0, false",
+        "8, 100, 5000, 5, 20, 0, false", // Reordered
+        "4, 50, 2000, 5, 20, 0.1, false", // Lossy
+        "4, 20, 2000, 5, 20, 0, true" // Every peer changes every account
+    })
+    void convergesWithDatabase(int peerCount, int accountCount, int transactions, long latencyMillis, long jitterMillis,
+                               double dropRate, boolean shared) throws Exception {
+        LoopbackNetwork network = new LoopbackNetwork(scheduler, latencyMillis, jitterMillis, dropRate);
+        messenger = new LoopbackMessenger(SERVER_NAME, network, new PluginSyncReceiver(plugin));
+
+        // Every account is created and cached by the server under test, then its player goes to one of the servers
+        List<UUID> uuids = new ArrayList<>(accountCount);
+        for (int i = 0; i < accountCount; i++) {
+            uuids.add(accountManager.createAccount(UUID.randomUUID()).getUuid());
+        }
+        List<Peer> peers = new ArrayList<>(peerCount);
+        for (int i = 0; i < peerCount; i++) {
+            peers.add(new Peer(new LoopbackMessenger("peer-" + i, network, mock(SyncReceiver.class))));
+        }
+        for (int i = 0; i < accountCount; i++) {
+            UUID uuid = uuids.get(i);
+            for (int j = 0; j < peers.size(); j++) {
+                if (shared || j == i % peers.size()) {
+                    Account account = storage.loadAccount(uuid); // Each peer has its own object, like another server
+                    assertNotNull(account);
+                    peers.get(j).accounts.put(uuid, account);
+                }
+            }
+        }
+
+        List<LoopbackMessenger> messengers = new ArrayList<>();
+        messengers.add(messenger);
+        peers.forEach(peer -> messengers.add(peer.messenger));
+        scheduler.scheduleAtFixedRate(() -> messengers.forEach(LoopbackMessenger::flush),
+            FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Every peer changes its own accounts at the same time
+        long queriesBefore = countQueries();
+        List<Future<?>> running = new ArrayList<>();
+        for (Peer peer : peers) {
+            running.add(peer.thread.submit(() -> {
+                currentMessenger.set(peer.messenger);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Account> accounts = List.copyOf(peer.accounts.values());
+                for (int i = 0; i < transactions / peers.size(); i++) {
+                    Account account = accounts.get(random.nextInt(accounts.size()));
+                    if (random.nextBoolean()) {
+                        account.deposit(currency, random.nextInt(1, 100));
+                    } else {
+                        account.withdraw(currency, random.nextInt(1, 100)); // Fails if not enough, like on a real server
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : running) {
+            future.get();
+        }
+
+        if (dropRate > 0) {
+            // A lost change is only noticed with the next change of the same account (as a version gap), so heal the
+            // network and change every account once more
+            network.setDropRate(0);
+            running.clear();
+            for (Peer peer : peers) {
+                running.add(peer.thread.submit(() -> peer.accounts.values().forEach(account -> account.deposit(currency, 1))));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        }
+
+        // The server under test must end up with what is in the database
+        long start = System.nanoTime();
+        long queries = -1;
+        boolean converged = false;
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(CONVERGENCE_TIMEOUT_MILLIS);
+        while (System.nanoTime() < deadline) {
+            if (network.getInFlight() == 0) {
+                if (queries < 0) {
+                    queries = countQueries() - queriesBefore; // Before the checks below add their own queries
+                }
+                if (matchesDatabase(uuids)) {
+                    converged = true;
+                    break;
+                }
+            }
+            Thread.sleep(10);
+        }
+        long convergenceMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        peers.forEach(peer -> {
+            peer.thread.shutdownNow();
+            peer.messenger.close();
+        });
+
+        int total = dropRate > 0 ? transactions + peers.stream().mapToInt(peer -> peer.accounts.size()).sum() : transactions;
+        System.out.printf(
+            "[peers=%d, accounts=%d, transactions=%d, latency=%dms, jitter=%dms, drop=%.2f, shared=%b] converged=%b in %dms, "
+                + "messages/tx: %.2f published, %.2f delivered, %.2f dropped, queries/tx: %.2f%n",
+            peerCount, accountCount, total, latencyMillis, jitterMillis, dropRate, shared, converged, convergenceMillis,
+            (double) network.getPublished() / total, (double) network.getDelivered() / total,
+            (double) network.getDropped() / total, (double) queries / total
+        );
+
+        assertTrue(converged, "not converged within " + CONVERGENCE_TIMEOUT_MILLIS + "ms");
+        for (UUID uuid : uuids) {
+            Account stored = storage.loadAccount(uuid);
+            Account cached = accountManager.getCachedAccount(uuid);
+            assertNotNull(stored);
+            assertNotNull(cached);
+            assertEquals(stored.getBalance(currency), cached.getBalance(currency), 1e-9);
+            assertEquals(stored.getVersion(), cached.getVersion());
+        }
+    }
+
+    private boolean matchesDatabase(List<UUID> uuids) {
+        for (UUID uuid : uuids) {
+            Account stored = storage.loadAccount(uuid);
+            Account cached = accountManager.getCachedAccount(uuid);
+            if (stored == null || cached == null || Double.compare(stored.getBalance(currency), cached.getBalance(currency)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the statements run by the database so far, by all the servers.
+     */
+    private static long countQueries() throws SQLException {
+        String url = "jdbc:mysql://localhost:" + database.getConfiguration().getPort() + "/gemseconomy";
+        try (Connection connection = DriverManager.getConnection(url, "root", "");
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SHOW GLOBAL STATUS LIKE 'Questions'")) {
+            return result.next() ? result.getLong(2) : 0;
+        }
+    }
+
+    private static void setInstance(GemsEconomyPlugin plugin) throws ReflectiveOperationException {
+        Field field = GemsEconomyPlugin.class.getDeclaredField("INSTANCE");
+        field.setAccessible(true);
+        field.set(null, plugin);
+    }
+
+    /**
+     * Another server, holding the players of some accounts.
+     */
+    private static final class Peer {
+        private final LoopbackMessenger messenger;
+        private final ExecutorService thread = Executors.newSingleThreadExecutor();
+        private final Map<UUID, Account> accounts = new HashMap<>();
+
+        private Peer(LoopbackMessenger messenger) {
+            this.messenger = messenger;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package me.xanium.gemseconomy.message.redis;
+
+import me.lucko.helper.terminable.Terminable;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+/**
+ * An in-process stand-in for a Redis channel.
+ * <p>
+ * Frames are encoded and decoded on the way, like they would be by Redis, and delivered to every subscriber
+ * (including the publisher) on the publishing thread. The size of every published batch is recorded, to check how
+ * frames are pipelined.
+ */
+@DefaultQualifier(NonNull.class)
+public class LocalTransport implements SyncTransport {
+
+    private final Set<Consumer<SyncFrame>> subscribers = new CopyOnWriteArraySet<>();
+    private final SyncFrame.Codec codec = new SyncFrame.Codec();
+    private final List<Integer> batches = new CopyOnWriteArrayList<>();
+
+    @Override public void publish(final List<SyncFrame> frames) {
+        if (frames.isEmpty()) {
+            return; // Like the real transport, which doesn't open a pipeline for nothing
+        }
+        batches.add(frames.size());
+        for (SyncFrame frame : frames) {
+            try {
+                byte[] encoded = codec.encode(frame);
+                for (Consumer<SyncFrame> subscriber : subscribers) {
+                    subscriber.accept(codec.decode(encoded));
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override public Terminable subscribe(final Consumer<SyncFrame> handler) {
+        subscribers.add(handler);
+        return () -> subscribers.remove(handler);
+    }
+
+    /**
+     * @return the number of frames of every batch published so far
+     */
+    public List<Integer> getBatches() {
+        return List.copyOf(batches);
+    }
+
+}
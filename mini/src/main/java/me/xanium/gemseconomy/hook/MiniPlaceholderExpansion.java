@@ -6,6 +6,7 @@ import me.xanium.gemseconomy.api.Account;
 import me.xanium.gemseconomy.api.Currency;
 import me.xanium.gemseconomy.api.GemsEconomy;
 import me.xanium.gemseconomy.api.GemsEconomyProvider;
+import me.xanium.gemseconomy.api.RankedBalance;
 import net.kyori.adventure.audience.Audience;
 import net.kyori.adventure.identity.Identity;
 import net.kyori.adventure.text.minimessage.Context;
@@ -15,6 +16,7 @@ import net.kyori.adventure.text.minimessage.tag.resolver.ArgumentQueue;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.UUID;
 import java.util.function.BiFunction;
 
@@ -43,9 +45,61 @@ public class MiniPlaceholderExpansion implements Terminable {
                 // <econ_fancy_balance:c:acc>
                 return parse(audience, queue, ctx, (currency, number) -> Tag.selfClosingInserting(MiniMessage.miniMessage().deserialize(currency.fancyFormat(number))));
             })
+            .audiencePlaceholder("rank", (audience, queue, ctx) -> {
+                // <econ_rank:c>
+                // <econ_rank:c:heap>
+                Optional<UUID> optional = audience.get(Identity.UUID);
+                if (optional.isEmpty()) {
+                    return null;
+                }
+                Currency currency = economy.getCurrency(queue.popOr("missing argument: currency").value());
+                if (currency == null) {
+                    return null;
+                }
+                int rank = asHeap(queue, ctx)
+                    ? economy.getHeapRank(optional.get(), currency)
+                    : economy.getRank(optional.get(), currency);
+                return rank == 0 ? null : Tag.preProcessParsed(String.valueOf(rank));
+            })
+            .globalPlaceholder("top_name", (queue, ctx) -> {
+                // <econ_top_name:c:1>
+                // <econ_top_name:c:1:heap>
+                return parseEntry(queue, ctx, (currency, entry) -> Tag.preProcessParsed(entry.name()));
+            })
+            .globalPlaceholder("top_balance", (queue, ctx) -> {
+                // <econ_top_balance:c:1>
+                // <econ_top_balance:c:1:heap>
+                return parseEntry(queue, ctx, (currency, entry) -> Tag.preProcessParsed(currency.simpleFormat(entry.amount())));
+            })
             .build();
     }
 
+    private @Nullable Tag parseEntry(
+        ArgumentQueue queue,
+        Context ctx,
+        BiFunction<Currency, RankedBalance, Tag> entryStringFunc
+    ) {
+        Currency currency = economy.getCurrency(queue.popOr("missing argument: currency").value());
+        if (currency == null) {
+            return null;
+        }
+
+        Tag.Argument rank = queue.popOr("missing argument: rank");
+        OptionalInt value = rank.asInt();
+        if (value.isEmpty()) {
+            throw ctx.newException("not a rank: %s".formatted(rank.value()), queue);
+        }
+
+        RankedBalance entry = asHeap(queue, ctx)
+            ? economy.getHeapEntryAt(currency, value.getAsInt())
+            : economy.getEntryAt(currency, value.getAsInt());
+        if (entry == null) {
+            return null;
+        }
+
+        return entryStringFunc.apply(currency, entry);
+    }
+
     private @Nullable Tag parse(
         Audience audience,
         ArgumentQueue queue,
@@ -78,6 +132,17 @@ public class MiniPlaceholderExpansion implements Terminable {
         }
     }
 
+    private static boolean asHeap(ArgumentQueue queue, Context ctx) {
+        Tag.Argument peek = queue.peek();
+        if (peek == null) {
+            return false;
+        } else if (peek.value().equals("heap")) {
+            return true;
+        } else {
+            throw ctx.newException("unrecognized argument: %s".formatted(peek.value()), queue);
+        }
+    }
+
     public void register() {
         expansion.register();
     }
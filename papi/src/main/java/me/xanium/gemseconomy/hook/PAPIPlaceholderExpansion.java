@@ -6,6 +6,7 @@ import me.xanium.gemseconomy.api.Account;
 import me.xanium.gemseconomy.api.Currency;
 import me.xanium.gemseconomy.api.GemsEconomy;
 import me.xanium.gemseconomy.api.GemsEconomyProvider;
+import me.xanium.gemseconomy.api.RankedBalance;
 import org.bukkit.OfflinePlayer;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -35,10 +36,16 @@ public class PAPIPlaceholderExpansion implements Terminable {
         private static final String BALANCE_KEY = "balance";
         private static final String SIMPLE_BALANCE_KEY = "simple_balance";
         private static final String FANCY_BALANCE_KEY = "fancy_balance";
+        private static final String RANK_KEY = "rank";
+        private static final String TOP_NAME_KEY = "top_name";
+        private static final String TOP_BALANCE_KEY = "top_balance";
         // --- Lengths ---
         private static final int BALANCE_KEY_LENGTH = BALANCE_KEY.length() + 1; // plus 1 to not include the first ":" symbol
         private static final int SIMPLE_BALANCE_KEY_LENGTH = SIMPLE_BALANCE_KEY.length() + 1;
         private static final int FANCY_BALANCE_KEY_LENGTH = FANCY_BALANCE_KEY.length() + 1;
+        private static final int RANK_KEY_LENGTH = RANK_KEY.length() + 1;
+        private static final int TOP_NAME_KEY_LENGTH = TOP_NAME_KEY.length() + 1;
+        private static final int TOP_BALANCE_KEY_LENGTH = TOP_BALANCE_KEY.length() + 1;
 
         @Override
         public @NonNull String getIdentifier() {
@@ -57,10 +64,37 @@ public class PAPIPlaceholderExpansion implements Terminable {
 
         @Override
         public @Nullable String onRequest(OfflinePlayer player, @NonNull String params) {
+            // The rank lookups are answered from memory, and don't need the account to be loaded
+            if (params.startsWith(TOP_NAME_KEY)) {
+                // <econ_top_name:c:1>
+                // <econ_top_name:c:1:heap>
+                return parseEntry(params.substring(TOP_NAME_KEY_LENGTH), (currency, entry) -> entry.name());
+
+            } else if (params.startsWith(TOP_BALANCE_KEY)) {
+                // <econ_top_balance:c:1>
+                // <econ_top_balance:c:1:heap>
+                return parseEntry(params.substring(TOP_BALANCE_KEY_LENGTH), (currency, entry) -> currency.simpleFormat(entry.amount()));
+            }
+
             if (player == null) {
                 return "";
             }
 
+            if (params.startsWith(RANK_KEY)) {
+                // <econ_rank:c>
+                // <econ_rank:c:heap>
+                String[] arguments = params.substring(RANK_KEY_LENGTH).split(":");
+                Currency currency = economy.getCurrency(arguments[0]);
+                if (currency == null) {
+                    return "";
+                }
+                boolean asHeap = arguments.length == 2 && Objects.equals(arguments[1], "heap");
+                int rank = asHeap
+                    ? economy.getHeapRank(player.getUniqueId(), currency)
+                    : economy.getRank(player.getUniqueId(), currency);
+                return rank == 0 ? "" : String.valueOf(rank);
+            }
+
             Account account = economy.getAccount(player.getUniqueId());
             if (account == null) {
                 return "";
@@ -88,6 +122,35 @@ public class PAPIPlaceholderExpansion implements Terminable {
             return "";
         }
 
+        private @NonNull String parseEntry(@NonNull String input, @NonNull BiFunction<Currency, RankedBalance, String> entryStringFunc) {
+            String[] arguments = input.split(":");
+            if (arguments.length != 2 && arguments.length != 3) {
+                throw new IllegalArgumentException("expected arguments: <currency>:<rank>[:heap]");
+            }
+            boolean asHeap = arguments.length == 3 && Objects.equals(arguments[2], "heap");
+
+            Currency currency = economy.getCurrency(arguments[0]);
+            if (currency == null) {
+                // unknown currency - return empty string
+                return "";
+            }
+
+            RankedBalance entry;
+            try {
+                int rank = Integer.parseInt(arguments[1]);
+                entry = asHeap ? economy.getHeapEntryAt(currency, rank) : economy.getEntryAt(currency, rank);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a rank: " + arguments[1]);
+            }
+
+            if (entry == null) {
+                // nobody at this rank - return empty string
+                return "";
+            }
+
+            return entryStringFunc.apply(currency, entry);
+        }
+
         private @Nullable String parse(@NonNull Account account, @NonNull String input, @NonNull BiFunction<Currency, Double, String> balanceStringFunc) {
             Currency currency;
             boolean asHeap = false;
@@ -0,0 +1,274 @@
+package me.xanium.gemseconomy.velocity;
+
+import com.google.common.collect.Iterables;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The authoritative cache of accounts.
+ * <p>
+ * All balance changes of the network are applied here, so there is exactly one copy of each account to keep
+ * consistent. Changed accounts are written to database in batches by {@link #flush()}.
+ */
+@DefaultQualifier(NonNull.class)
+public class AccountService {
+
+    private final ProxyDatabase database;
+    private final Map<UUID, ProxyAccount> accounts = new ConcurrentHashMap<>();
+    private final Map<UUID, ProxyAccount> dirty = new ConcurrentHashMap<>();
+    /**
+     * The accounts being written by {@link #flush()} right now. Together with {@link #dirty}, it holds every account
+     * whose database row may still be stale, even after the account is evicted.
+     */
+    private final Map<UUID, ProxyAccount> writing = new ConcurrentHashMap<>();
+
+    private volatile Map<UUID, Double> maximumBalances = Map.of();
+
+    public AccountService(ProxyDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Reloads the maximum balances of currencies, which are checked by {@link #applyTransaction}.
+     */
+    public void reloadCurrencies() {
+        Map<UUID, Double> loaded = database.loadMaximumBalances();
+        if (loaded != null) {
+            maximumBalances = Map.copyOf(loaded);
+        }
+    }
+
+    /**
+     * Gets specific account, loading it from database if it's not cached.
+     *
+     * @param uuid the uuid of the account
+     * @return the account, or null if it doesn't exist
+     */
+    public @Nullable ProxyAccount getAccount(UUID uuid) {
+        ProxyAccount account = accounts.get(uuid);
+        if (account != null) {
+            return account;
+        }
+        account = getUnwritten(uuid);
+        if (account == null) {
+            account = database.loadAccount(uuid);
+        }
+        if (account == null) {
+            return null;
+        }
+        ProxyAccount existing = accounts.putIfAbsent(uuid, account);
+        return existing != null ? existing : account;
+    }
+
+    /**
+     * Gets specific account by nickname, loading it from database if it's not cached.
+     *
+     * @param name the nickname of the account
+     * @return the account, or null if it doesn't exist
+     */
+    public @Nullable ProxyAccount getAccount(String name) {
+        for (ProxyAccount account : accounts.values()) {
+            if (name.equalsIgnoreCase(account.getNickname())) {
+                return account;
+            }
+        }
+        ProxyAccount account = null;
+        for (ProxyAccount unwritten : Iterables.concat(dirty.values(), writing.values())) {
+            if (name.equalsIgnoreCase(unwritten.getNickname())) {
+                account = unwritten;
+                break;
+            }
+        }
+        if (account == null) {
+            account = database.loadAccount(name);
+        }
+        if (account == null) {
+            return null;
+        }
+        ProxyAccount existing = accounts.putIfAbsent(account.getUuid(), account);
+        return existing != null ? existing : account;
+    }
+
+    /**
+     * Gets specific accounts, loading all the missing ones from database in one query.
+     *
+     * @param uuids the uuids of the accounts
+     * @return the existing accounts
+     */
+    public List<ProxyAccount> getAccounts(Collection<UUID> uuids) {
+        List<ProxyAccount> result = new ArrayList<>(uuids.size());
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            ProxyAccount account = accounts.get(uuid);
+            if (account == null && (account = getUnwritten(uuid)) != null) {
+                ProxyAccount existing = accounts.putIfAbsent(uuid, account);
+                account = existing != null ? existing : account;
+            }
+            if (account != null) {
+                result.add(account);
+            } else {
+                missing.add(uuid);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (ProxyAccount account : database.loadAccounts(missing)) {
+                ProxyAccount existing = accounts.putIfAbsent(account.getUuid(), account);
+                result.add(existing != null ? existing : account);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a new account, unless it already exists.
+     *
+     * @param account the new account
+     * @return the existing account, or the new one
+     */
+    public ProxyAccount createAccount(ProxyAccount account) {
+        ProxyAccount existing = getAccount(account.getUuid());
+        if (existing != null) {
+            return existing;
+        }
+        existing = accounts.putIfAbsent(account.getUuid(), account);
+        if (existing != null) {
+            return existing;
+        }
+        dirty.put(account.getUuid(), account);
+        return account;
+    }
+
+    /**
+     * Applies the changes of a transaction to specific account, creating it if it doesn't exist.
+     *
+     * @param account the account, as returned by {@link #getOrCreateAccount}
+     * @return true if the changes are applied; false if the transaction is rejected, leaving the account unchanged
+     * @see ProxyAccount#apply
+     */
+    public boolean applyTransaction(ProxyAccount account, @Nullable String nickname, boolean payable, Map<UUID, Double> changes, Map<UUID, Double> heapChanges) {
+        if (!account.apply(nickname, payable, changes, heapChanges, maximumBalances)) {
+            return false;
+        }
+        dirty.put(account.getUuid(), account);
+        return true;
+    }
+
+    /**
+     * Overwrites the balances of specific account.
+     *
+     * @param account the account, as returned by {@link #getOrCreateAccount}
+     * @see ProxyAccount#set
+     */
+    public void setBalances(ProxyAccount account, @Nullable String nickname, boolean payable, Map<UUID, Double> balances, Map<UUID, Double> heapBalances, Collection<UUID> removed) {
+        account.set(nickname, payable, balances, heapBalances, removed);
+        dirty.put(account.getUuid(), account);
+    }
+
+    /**
+     * Gets a page of all the accounts in the order of uuid, for the full scans of backends.
+     * <p>
+     * Pending changes are written when a scan starts, so that the accounts not written to database yet are found as
+     * well. Cached accounts are returned in place of their rows, which may be stale. Accounts loaded for the scan are
+     * not cached.
+     *
+     * @param after the uuid of the last account of the previous page, or null for the first page
+     * @param limit the maximum number of accounts in the page
+     * @return the accounts, or null if they can't be loaded
+     */
+    public @Nullable List<ProxyAccount> getAccountsAfter(@Nullable UUID after, int limit) {
+        if (after == null) {
+            flush();
+        }
+        List<ProxyAccount> page = database.loadAccountsAfter(after, limit);
+        if (page == null) {
+            return null;
+        }
+        page.replaceAll(loaded -> {
+            ProxyAccount account = accounts.get(loaded.getUuid());
+            if (account == null) {
+                account = getUnwritten(loaded.getUuid());
+            }
+            return account != null ? account : loaded;
+        });
+        return page;
+    }
+
+    /**
+     * Gets specific account, creating an empty one if it doesn't exist.
+     */
+    public ProxyAccount getOrCreateAccount(UUID uuid, @Nullable String nickname, boolean payable) {
+        ProxyAccount account = getAccount(uuid);
+        if (account == null) {
+            account = createAccount(new ProxyAccount(uuid, nickname, payable, 0, Map.of(), Map.of()));
+        }
+        return account;
+    }
+
+    public void deleteAccount(UUID uuid) {
+        accounts.remove(uuid);
+        dirty.remove(uuid);
+        writing.remove(uuid);
+        database.deleteAccount(uuid);
+    }
+
+    /**
+     * Removes specific account from the cache, e.g. when its player leaves the network.
+     * <p>
+     * Pending changes are still written by the next {@link #flush()}. Until then, the account is taken back into the
+     * cache from the pending changes rather than loaded from its stale database row.
+     */
+    public void evict(UUID uuid) {
+        accounts.remove(uuid);
+    }
+
+    /**
+     * Writes all the changed accounts to database in one batch.
+     * <p>
+     * If the batch fails, the accounts are marked as changed again, so that the next flush retries them.
+     *
+     * @return the number of accounts written
+     */
+    public synchronized int flush() {
+        List<ProxyAccount> pending = new ArrayList<>();
+        for (UUID uuid : dirty.keySet()) {
+            ProxyAccount account = dirty.remove(uuid);
+            if (account != null) {
+                writing.put(uuid, account);
+                pending.add(account);
+            }
+        }
+        boolean saved = false;
+        try {
+            saved = database.saveAccounts(pending);
+        } finally {
+            for (ProxyAccount account : pending) {
+                if (!saved && writing.get(account.getUuid()) == account) { // Unless it's deleted in the meantime
+                    dirty.putIfAbsent(account.getUuid(), account); // Before leaving writing, so that it's always found somewhere
+                }
+                writing.remove(account.getUuid(), account);
+            }
+        }
+        return saved ? pending.size() : 0;
+    }
+
+    /**
+     * Gets specific account which has changes not written to database yet.
+     */
+    private @Nullable ProxyAccount getUnwritten(UUID uuid) {
+        ProxyAccount account = dirty.get(uuid);
+        return account != null ? account : writing.get(uuid);
+    }
+
+    public int getCachedCount() {
+        return accounts.size();
+    }
+
+}
@@ -0,0 +1,99 @@
+package me.xanium.gemseconomy.velocity;
+
+import com.google.inject.Inject;
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
+import com.velocitypowered.api.plugin.Plugin;
+import com.velocitypowered.api.plugin.annotation.DataDirectory;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The proxy side of GemsEconomy.
+ * <p>
+ * It owns the only database connection pool of the network and the authoritative cache of accounts. Backend servers
+ * using the {@code proxy} storage send their reads and transactions here over plugin messaging.
+ */
+@Plugin(
+    id = "gemseconomy",
+    name = "GemsEconomy",
+    version = "1.0.0",
+    description = "The proxy-side economy service of GemsEconomy",
+    authors = {"Nailm"}
+)
+public class GemsEconomyVelocity {
+
+    private final ProxyServer proxy;
+    private final Logger logger;
+    private final Path dataDirectory;
+
+    private ProxyDatabase database;
+    private AccountService accountService;
+    private ProxyChannelHandler channelHandler;
+    private ScheduledTask flushTask;
+
+    @Inject
+    public GemsEconomyVelocity(ProxyServer proxy, Logger logger, @DataDirectory Path dataDirectory) {
+        this.proxy = proxy;
+        this.logger = logger;
+        this.dataDirectory = dataDirectory;
+    }
+
+    @Subscribe
+    public void onProxyInitialization(ProxyInitializeEvent event) {
+        ProxyConfig config;
+        try {
+            config = new ProxyConfig(dataDirectory);
+        } catch (IOException e) {
+            logger.error("Failed to load config.properties", e);
+            return;
+        }
+
+        database = new ProxyDatabase(config, logger);
+        accountService = new AccountService(database);
+        accountService.reloadCurrencies();
+
+        proxy.getChannelRegistrar().register(ProxyChannelHandler.IDENTIFIER);
+        channelHandler = new ProxyChannelHandler(proxy, accountService, new InterestRegistry(), logger);
+        proxy.getEventManager().register(this, channelHandler);
+
+        // Write changed accounts in batches
+        long flushInterval = config.getInt("flush_interval_millis", 1000);
+        flushTask = proxy.getScheduler()
+            .buildTask(this, accountService::flush)
+            .delay(flushInterval, TimeUnit.MILLISECONDS)
+            .repeat(flushInterval, TimeUnit.MILLISECONDS)
+            .schedule();
+    }
+
+    @Subscribe
+    public void onDisconnect(DisconnectEvent event) {
+        if (accountService != null) {
+            accountService.evict(event.getPlayer().getUniqueId()); // Not needed anymore until the player comes back
+        }
+    }
+
+    @Subscribe
+    public void onProxyShutdown(ProxyShutdownEvent event) {
+        if (flushTask != null) {
+            flushTask.cancel();
+        }
+        if (channelHandler != null) {
+            channelHandler.close(); // Handled messages may still change accounts
+        }
+        if (accountService != null) {
+            accountService.flush();
+        }
+        if (database != null) {
+            database.close();
+        }
+    }
+
+}
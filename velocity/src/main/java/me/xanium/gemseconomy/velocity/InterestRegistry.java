@@ -0,0 +1,72 @@
+package me.xanium.gemseconomy.velocity;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks which backend servers currently hold each account in their caches, as reported by the servers.
+ * <p>
+ * It lets the proxy send the changes of an account only to the servers which care about it.
+ */
+@DefaultQualifier(NonNull.class)
+public class InterestRegistry {
+
+    private final Map<UUID, Set<String>> serversByAccount = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> accountsByServer = new ConcurrentHashMap<>();
+
+    /**
+     * Updates the accounts held by specific server.
+     *
+     * @param server  the name of the server
+     * @param reset   if true, all the accounts previously reported by the server are forgotten first
+     * @param added   the accounts the server starts holding
+     * @param removed the accounts the server stops holding
+     */
+    public synchronized void update(String server, boolean reset, Collection<UUID> added, Collection<UUID> removed) {
+        if (reset) {
+            Set<UUID> previous = accountsByServer.remove(server);
+            if (previous != null) {
+                previous.forEach(uuid -> unlink(uuid, server));
+            }
+        }
+        Set<UUID> held = accountsByServer.computeIfAbsent(server, k -> ConcurrentHashMap.newKeySet());
+        for (UUID uuid : added) {
+            held.add(uuid);
+            serversByAccount.computeIfAbsent(uuid, k -> ConcurrentHashMap.newKeySet()).add(server);
+        }
+        for (UUID uuid : removed) {
+            held.remove(uuid);
+            unlink(uuid, server);
+        }
+    }
+
+    /**
+     * @param uuid the uuid of the account
+     * @return the names of the servers holding specific account
+     */
+    public Set<String> getServers(UUID uuid) {
+        Set<String> servers = serversByAccount.get(uuid);
+        return servers != null ? Set.copyOf(servers) : Set.of();
+    }
+
+    /**
+     * @return the number of accounts held by at least one server
+     */
+    public int getTrackedCount() {
+        return serversByAccount.size();
+    }
+
+    private void unlink(UUID uuid, String server) {
+        serversByAccount.computeIfPresent(uuid, (k, servers) -> {
+            servers.remove(server);
+            return servers.isEmpty() ? null : servers;
+        });
+    }
+
+}
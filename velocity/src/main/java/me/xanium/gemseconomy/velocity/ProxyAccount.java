@@ -0,0 +1,168 @@
+package me.xanium.gemseconomy.velocity;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The authoritative state of an account, held by the proxy.
+ * <p>
+ * The proxy doesn't know about currencies - balances are simply keyed by currency uuid.
+ */
+@SuppressWarnings("UnstableApiUsage")
+@DefaultQualifier(NonNull.class)
+public class ProxyAccount {
+
+    /**
+     * The rounding error allowed when summing up the changes sent by backends.
+     */
+    private static final double TOLERANCE = 1e-6;
+
+    private final UUID uuid;
+    private @Nullable String nickname;
+    private boolean payable;
+    private long version;
+    private final Map<UUID, Double> balances;
+    private final Map<UUID, Double> heapBalances;
+
+    public ProxyAccount(UUID uuid, @Nullable String nickname, boolean payable, long version, Map<UUID, Double> balances, Map<UUID, Double> heapBalances) {
+        this.uuid = uuid;
+        this.nickname = nickname;
+        this.payable = payable;
+        this.version = version;
+        this.balances = new HashMap<>(balances);
+        this.heapBalances = new HashMap<>(heapBalances);
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public synchronized @Nullable String getNickname() {
+        return nickname;
+    }
+
+    public synchronized boolean isPayable() {
+        return payable;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized Map<UUID, Double> getBalances() {
+        return new HashMap<>(balances);
+    }
+
+    public synchronized Map<UUID, Double> getHeapBalances() {
+        return new HashMap<>(heapBalances);
+    }
+
+    /**
+     * Adds the changes of a transaction to the balances, and bumps the version.
+     * <p>
+     * Backends check the funds against their own copy of the account, which may miss the transactions made on other
+     * servers at the same time. So the changes are checked again here, and the whole transaction is rejected if any
+     * balance would go negative or above the maximum of its currency.
+     *
+     * @param nickname        the nickname of the account at the time of the transaction
+     * @param payable         whether the account can receive currencies
+     * @param changes         the balance changes, keyed by currency uuid
+     * @param heapChanges     the accumulated balance changes, keyed by currency uuid
+     * @param maximumBalances the maximum balances of the limited currencies, keyed by currency uuid
+     * @return true if the changes are applied; false if the transaction is rejected
+     */
+    public synchronized boolean apply(@Nullable String nickname, boolean payable, Map<UUID, Double> changes, Map<UUID, Double> heapChanges, Map<UUID, Double> maximumBalances) {
+        for (Map.Entry<UUID, Double> entry : changes.entrySet()) {
+            double change = entry.getValue();
+            double balance = balances.getOrDefault(entry.getKey(), 0D) + change;
+            if (change < 0 && balance < -TOLERANCE) {
+                return false; // Not enough funds
+            }
+            Double maximumBalance = maximumBalances.get(entry.getKey());
+            if (change > 0 && maximumBalance != null && balance > maximumBalance + TOLERANCE) {
+                return false; // Above the maximum
+            }
+        }
+        if (nickname != null) {
+            this.nickname = nickname;
+        }
+        this.payable = payable;
+        changes.forEach((currency, change) -> balances.merge(currency, change, Double::sum));
+        heapChanges.forEach((currency, change) -> heapBalances.merge(currency, change, Double::sum));
+        ++version;
+        return true;
+    }
+
+    /**
+     * Sets the balances as they are, and bumps the version.
+     * <p>
+     * Unlike {@link #apply}, it's never rejected: it's used when a backend overwrites the balances on purpose, e.g. when
+     * a currency is cleared or removed.
+     *
+     * @param nickname     the nickname of the account at the time of the write
+     * @param payable      whether the account can receive currencies
+     * @param balances     the balances to set, keyed by currency uuid
+     * @param heapBalances the accumulated balances to set, keyed by currency uuid
+     * @param removed      the currencies to remove
+     */
+    public synchronized void set(@Nullable String nickname, boolean payable, Map<UUID, Double> balances, Map<UUID, Double> heapBalances, Collection<UUID> removed) {
+        if (nickname != null) {
+            this.nickname = nickname;
+        }
+        this.payable = payable;
+        this.balances.putAll(balances);
+        this.heapBalances.putAll(heapBalances);
+        removed.forEach(currency -> {
+            this.balances.remove(currency);
+            this.heapBalances.remove(currency);
+        });
+        ++version;
+    }
+
+    /**
+     * Writes this account in the format read by the backend.
+     */
+    public synchronized void write(ByteArrayDataOutput out) {
+        ProxyProtocol.writeUUID(out, uuid);
+        out.writeBoolean(nickname != null);
+        if (nickname != null) {
+            out.writeUTF(nickname);
+        }
+        out.writeBoolean(payable);
+        out.writeLong(version);
+        out.writeInt(balances.size());
+        balances.forEach((currency, balance) -> {
+            ProxyProtocol.writeUUID(out, currency);
+            out.writeDouble(balance);
+            out.writeDouble(heapBalances.getOrDefault(currency, 0D));
+        });
+    }
+
+    /**
+     * Reads an account written by the backend.
+     */
+    public static ProxyAccount read(ByteArrayDataInput in) {
+        UUID uuid = ProxyProtocol.readUUID(in);
+        String nickname = in.readBoolean() ? in.readUTF() : null;
+        boolean payable = in.readBoolean();
+        long version = in.readLong();
+        int size = in.readInt();
+        Map<UUID, Double> balances = new HashMap<>(size);
+        Map<UUID, Double> heapBalances = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            UUID currency = ProxyProtocol.readUUID(in);
+            balances.put(currency, in.readDouble());
+            heapBalances.put(currency, in.readDouble());
+        }
+        return new ProxyAccount(uuid, nickname, payable, version, balances, heapBalances);
+    }
+
+}
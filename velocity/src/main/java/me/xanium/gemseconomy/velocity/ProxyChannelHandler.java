@@ -0,0 +1,285 @@
+package me.xanium.gemseconomy.velocity;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.PluginMessageEvent;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.ServerConnection;
+import com.velocitypowered.api.proxy.messages.MinecraftChannelIdentifier;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static me.xanium.gemseconomy.velocity.ProxyProtocol.*;
+
+/**
+ * Handles the requests sent by backend servers, and pushes the results to the other servers which hold the accounts.
+ * <p>
+ * The messages of each backend server are handled one by one in the order they are sent, e.g. a transaction is never
+ * handled before the creation of its account. Messages of different servers are handled concurrently.
+ */
+@SuppressWarnings("UnstableApiUsage")
+@DefaultQualifier(NonNull.class)
+public class ProxyChannelHandler {
+
+    public static final MinecraftChannelIdentifier IDENTIFIER = MinecraftChannelIdentifier.from(CHANNEL);
+
+    private final ProxyServer proxy;
+    private final AccountService accounts;
+    private final InterestRegistry interests;
+    private final Logger logger;
+    private final ExecutorService workers;
+    /**
+     * The executors handling the messages of each backend server in order, keyed by server name.
+     */
+    private final Map<String, Executor> executors = new ConcurrentHashMap<>();
+
+    public ProxyChannelHandler(ProxyServer proxy, AccountService accounts, InterestRegistry interests, Logger logger) {
+        this.proxy = proxy;
+        this.accounts = accounts;
+        this.interests = interests;
+        this.logger = logger;
+        this.workers = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("GemsEconomy Proxy Worker #%d").setDaemon(true).build());
+    }
+
+    /**
+     * Stops handling messages, waiting for the ones already received.
+     */
+    public void close() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Some messages of backend servers are still being handled");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Subscribe
+    public void onPluginMessage(PluginMessageEvent event) {
+        if (!event.getIdentifier().equals(IDENTIFIER)) {
+            return;
+        }
+        event.setResult(PluginMessageEvent.ForwardResult.handled()); // Never forward it to the player
+        if (!(event.getSource() instanceof ServerConnection connection)) {
+            return; // Someone is trying to fake it
+        }
+        byte[] data = event.getData();
+        String server = connection.getServerInfo().getName();
+        executors.computeIfAbsent(server, k -> MoreExecutors.newSequentialExecutor(workers)).execute(() -> {
+            try {
+                handle(connection, data);
+            } catch (Exception e) {
+                logger.error("Failed to handle message from " + server, e);
+            }
+        });
+    }
+
+    private void handle(ServerConnection connection, byte[] data) {
+        ByteArrayDataInput in = ByteStreams.newDataInput(data);
+        long requestId = in.readLong();
+        byte op = in.readByte();
+        RegisteredServer origin = connection.getServer();
+
+        if (requestId == PUSH) {
+            if (op == INTEREST) {
+                boolean reset = in.readBoolean();
+                List<UUID> added = readUUIDs(in);
+                List<UUID> removed = readUUIDs(in);
+                interests.update(connection.getServerInfo().getName(), reset, added, removed);
+            } else if (op == RELAY) {
+                String action = in.readUTF();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                ByteArrayDataOutput out = push(RELAY);
+                out.writeUTF(connection.getServerInfo().getName());
+                out.writeUTF(action);
+                out.writeInt(payload.length);
+                out.write(payload);
+                broadcast(origin, out.toByteArray());
+                if (action.endsWith("_currency")) {
+                    accounts.reloadCurrencies(); // The maximum balances may be changed
+                }
+            }
+            return;
+        }
+
+        String server = connection.getServerInfo().getName();
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeLong(requestId);
+        switch (op) {
+            case LOAD_ACCOUNT -> writeAccount(out, hold(server, accounts.getAccount(readUUID(in))));
+            case LOAD_ACCOUNT_BY_NAME -> writeAccount(out, hold(server, accounts.getAccount(in.readUTF())));
+            case LOAD_ACCOUNTS -> {
+                List<ProxyAccount> loaded = accounts.getAccounts(readUUIDs(in));
+                interests.update(server, false, loaded.stream().map(ProxyAccount::getUuid).toList(), List.of());
+                writeAccounts(out, loaded);
+            }
+            case CREATE_ACCOUNT -> writeAccount(out, hold(server, accounts.createAccount(ProxyAccount.read(in))));
+            case APPLY_TRANSACTION -> {
+                UUID uuid = readUUID(in);
+                String nickname = in.readBoolean() ? in.readUTF() : null;
+                boolean payable = in.readBoolean();
+                int size = in.readInt();
+                Map<UUID, Double> changes = new HashMap<>(size);
+                Map<UUID, Double> heapChanges = new HashMap<>(size);
+                for (int i = 0; i < size; i++) {
+                    UUID currency = readUUID(in);
+                    changes.put(currency, in.readDouble());
+                    heapChanges.put(currency, in.readDouble());
+                }
+                ProxyAccount account = accounts.getOrCreateAccount(uuid, nickname, payable);
+                if (accounts.applyTransaction(account, nickname, payable, changes, heapChanges)) {
+                    writeAccount(out, account);
+                    pushAccounts(origin, List.of(account));
+                } else {
+                    logger.warn("Rejected transaction of account " + uuid + " from " + connection.getServerInfo().getName() + ": " + changes);
+                    out.writeByte(REJECTED);
+                    account.write(out); // So that the origin goes back to the real balances
+                }
+            }
+            case SET_BALANCES -> {
+                UUID uuid = readUUID(in);
+                String nickname = in.readBoolean() ? in.readUTF() : null;
+                boolean payable = in.readBoolean();
+                int size = in.readInt();
+                Map<UUID, Double> balances = new HashMap<>(size);
+                Map<UUID, Double> heapBalances = new HashMap<>(size);
+                for (int i = 0; i < size; i++) {
+                    UUID currency = readUUID(in);
+                    balances.put(currency, in.readDouble());
+                    heapBalances.put(currency, in.readDouble());
+                }
+                List<UUID> removed = readUUIDs(in);
+                ProxyAccount account = accounts.getOrCreateAccount(uuid, nickname, payable);
+                accounts.setBalances(account, nickname, payable, balances, heapBalances, removed);
+                writeAccount(out, account);
+                pushAccounts(origin, List.of(account));
+            }
+            case LOAD_ALL_ACCOUNTS -> {
+                UUID after = in.readBoolean() ? readUUID(in) : null;
+                List<ProxyAccount> page = accounts.getAccountsAfter(after, in.readInt());
+                if (page != null) {
+                    writeAccounts(out, page);
+                } else {
+                    out.writeByte(ERROR);
+                }
+            }
+            case DELETE_ACCOUNT -> {
+                UUID uuid = readUUID(in);
+                accounts.deleteAccount(uuid);
+                out.writeByte(OK);
+                ByteArrayDataOutput push = push(ACCOUNTS_DELETED);
+                push.writeInt(1);
+                writeUUID(push, uuid);
+                byte[] data = push.toByteArray();
+                for (RegisteredServer server : interestedServers(origin, uuid)) {
+                    server.sendPluginMessage(IDENTIFIER, data);
+                }
+            }
+            default -> out.writeByte(ERROR);
+        }
+        connection.sendPluginMessage(IDENTIFIER, out.toByteArray());
+    }
+
+    /**
+     * Records that specific server holds the account it's loading, before the account is written to the response.
+     * <p>
+     * A change applied before the account is written is in the response, and a change applied after it is pushed to
+     * the server, so none is missed before the server reports that it holds the account by itself.
+     */
+    private @Nullable ProxyAccount hold(String server, @Nullable ProxyAccount account) {
+        if (account != null) {
+            interests.update(server, false, List.of(account.getUuid()), List.of());
+        }
+        return account;
+    }
+
+    /**
+     * Sends the new state of specific accounts to the servers holding them, except the origin.
+     */
+    public void pushAccounts(@Nullable RegisteredServer origin, Collection<ProxyAccount> changed) {
+        Map<RegisteredServer, List<ProxyAccount>> byServer = new HashMap<>();
+        for (ProxyAccount account : changed) {
+            for (RegisteredServer server : interestedServers(origin, account.getUuid())) {
+                byServer.computeIfAbsent(server, k -> new ArrayList<>()).add(account);
+            }
+        }
+        byServer.forEach((server, serverAccounts) -> {
+            ByteArrayDataOutput out = push(ACCOUNTS_UPDATED);
+            out.writeInt(serverAccounts.size());
+            serverAccounts.forEach(account -> account.write(out));
+            server.sendPluginMessage(IDENTIFIER, out.toByteArray());
+        });
+    }
+
+    private List<RegisteredServer> interestedServers(@Nullable RegisteredServer origin, UUID uuid) {
+        List<RegisteredServer> servers = new ArrayList<>();
+        for (String name : interests.getServers(uuid)) {
+            proxy.getServer(name)
+                .filter(server -> !server.equals(origin))
+                .ifPresent(servers::add);
+        }
+        return servers;
+    }
+
+    private void broadcast(@Nullable RegisteredServer origin, byte[] data) {
+        for (RegisteredServer server : proxy.getAllServers()) {
+            if (server.equals(origin)) {
+                continue;
+            }
+            server.sendPluginMessage(IDENTIFIER, data); // Does nothing if the server is empty - it reloads on join anyway
+        }
+    }
+
+    private static List<UUID> readUUIDs(ByteArrayDataInput in) {
+        int count = in.readInt();
+        List<UUID> uuids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uuids.add(readUUID(in));
+        }
+        return uuids;
+    }
+
+    private static ByteArrayDataOutput push(byte op) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeLong(PUSH);
+        out.writeByte(op);
+        return out;
+    }
+
+    private static void writeAccount(ByteArrayDataOutput out, @Nullable ProxyAccount account) {
+        if (account == null) {
+            out.writeByte(NOT_FOUND);
+            return;
+        }
+        out.writeByte(OK);
+        account.write(out);
+    }
+
+    private static void writeAccounts(ByteArrayDataOutput out, Collection<ProxyAccount> accounts) {
+        out.writeByte(OK);
+        out.writeInt(accounts.size());
+        accounts.forEach(account -> account.write(out));
+    }
+
+}
@@ -0,0 +1,47 @@
+package me.xanium.gemseconomy.velocity;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.framework.qual.DefaultQualifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * The configuration of the proxy plugin, stored as {@code config.properties} in the data directory.
+ */
+@DefaultQualifier(NonNull.class)
+public class ProxyConfig {
+
+    private final Properties properties = new Properties();
+
+    public ProxyConfig(Path dataDirectory) throws IOException {
+        Path file = dataDirectory.resolve("config.properties");
+        if (Files.notExists(file)) {
+            Files.createDirectories(dataDirectory);
+            try (InputStream in = Objects.requireNonNull(getClass().getClassLoader().getResourceAsStream("config.properties"))) {
+                Files.copy(in, file);
+            }
+        }
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+    }
+
+    public String getString(String key, String def) {
+        return properties.getProperty(key, def).trim();
+    }
+
+    public int getInt(String key, int def) {
+        try {
+            return Integer.parseInt(getString(key, Integer.toString(def)));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+}
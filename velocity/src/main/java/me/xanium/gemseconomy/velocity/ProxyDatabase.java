@@ -0,0 +1,236 @@
+package me.xanium.gemseconomy.velocity;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.framework.qual.DefaultQualifier;
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The accounts table, accessed through the only connection pool of the network.
+ * <p>
+ * It reads and writes the same table as {@code MySQLStorage} of the backend plugin.
+ */
+@DefaultQualifier(NonNull.class)
+public class ProxyDatabase {
+
+    private static final int MAX_IN_CLAUSE = 500;
+
+    private final Logger logger;
+    private final String accountsTable;
+    private final String currenciesTable;
+    private final String saveAccount;
+    private final HikariDataSource hikari;
+
+    public ProxyDatabase(ProxyConfig config, Logger logger) {
+        this.logger = logger;
+        this.accountsTable = config.getString("mysql.prefix", "gemseconomy") + "_accounts";
+        this.currenciesTable = config.getString("mysql.prefix", "gemseconomy") + "_currencies";
+        this.saveAccount = "INSERT INTO `" + accountsTable + "` (`nickname`, `uuid`, `payable`, `balance_data`, `balance_acc`, `version`) VALUES(?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE `nickname` = VALUES(`nickname`), `uuid` = VALUES(`uuid`), `payable` = VALUES(`payable`), `balance_data` = VALUES(`balance_data`), `balance_acc` = VALUES(`balance_acc`), `version` = VALUES(`version`)";
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName("GemsEconomy Proxy");
+        hikariConfig.setJdbcUrl("jdbc:mysql://" + config.getString("mysql.host", "localhost") + ":" + config.getInt("mysql.port", 3306) + "/" + config.getString("mysql.database", "bungeecord") + "?allowPublicKeyRetrieval=true&useSSL=false&rewriteBatchedStatements=true");
+        hikariConfig.setUsername(config.getString("mysql.username", "minecraft"));
+        hikariConfig.setPassword(config.getString("mysql.password", ""));
+        hikariConfig.setMaximumPoolSize(config.getInt("mysql.pool_size", 10));
+        hikariConfig.setMaxLifetime(1500000);
+        hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
+        hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
+        hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        this.hikari = new HikariDataSource(hikariConfig);
+    }
+
+    public @Nullable ProxyAccount loadAccount(UUID uuid) {
+        return loadOne("SELECT * FROM " + accountsTable + " WHERE uuid = ? LIMIT 1", uuid.toString());
+    }
+
+    public @Nullable ProxyAccount loadAccount(String name) {
+        return loadOne("SELECT * FROM " + accountsTable + " WHERE nickname = ? LIMIT 1", name);
+    }
+
+    public List<ProxyAccount> loadAccounts(Collection<UUID> uuids) {
+        List<ProxyAccount> accounts = new ArrayList<>(uuids.size());
+        List<String> keys = uuids.stream().map(UUID::toString).toList();
+        for (List<String> chunk : Lists.partition(keys, MAX_IN_CLAUSE)) {
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            try (
+                Connection conn = hikari.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT * FROM " + accountsTable + " WHERE uuid IN (" + placeholders + ")")
+            ) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        accounts.add(readAccount(rs));
+                    }
+                }
+            } catch (SQLException e) {
+                logger.error("Failed to load accounts", e);
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * Loads a page of all the accounts in the order of uuid.
+     *
+     * @param after the uuid of the last account of the previous page, or null for the first page
+     * @param limit the maximum number of accounts in the page
+     * @return the accounts, or null if they can't be loaded
+     */
+    public @Nullable List<ProxyAccount> loadAccountsAfter(@Nullable UUID after, int limit) {
+        try (
+            Connection conn = hikari.getConnection();
+            PreparedStatement stmt = conn.prepareStatement("SELECT * FROM " + accountsTable + " WHERE uuid > ? ORDER BY uuid LIMIT ?")
+        ) {
+            stmt.setString(1, after != null ? after.toString() : "");
+            stmt.setInt(2, limit);
+            List<ProxyAccount> accounts = new ArrayList<>(limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    accounts.add(readAccount(rs));
+                }
+            }
+            return accounts;
+        } catch (SQLException e) {
+            logger.error("Failed to load accounts after " + after, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes specific accounts in one batch.
+     *
+     * @return true if they are written; false if the batch failed
+     */
+    public boolean saveAccounts(Collection<ProxyAccount> accounts) {
+        if (accounts.isEmpty()) {
+            return true;
+        }
+        try (
+            Connection conn = hikari.getConnection();
+            PreparedStatement stmt = conn.prepareStatement(saveAccount)
+        ) {
+            for (ProxyAccount account : accounts) {
+                stmt.setString(1, account.getNickname());
+                stmt.setString(2, account.getUuid().toString());
+                stmt.setInt(3, account.isPayable() ? 1 : 0);
+                stmt.setString(4, writeBalances(account.getBalances()));
+                stmt.setString(5, writeBalances(account.getHeapBalances()));
+                stmt.setLong(6, account.getVersion());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            return true;
+        } catch (SQLException e) {
+            logger.error("Failed to save " + accounts.size() + " accounts, retrying on next flush", e);
+            return false;
+        }
+    }
+
+    public void deleteAccount(UUID uuid) {
+        try (
+            Connection conn = hikari.getConnection();
+            PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + accountsTable + " WHERE uuid = ? LIMIT 1")
+        ) {
+            stmt.setString(1, uuid.toString());
+            stmt.execute();
+        } catch (SQLException e) {
+            logger.error("Failed to delete account " + uuid, e);
+        }
+    }
+
+    /**
+     * Loads the maximum balance of each currency which has one, keyed by currency uuid.
+     *
+     * @return the maximum balances, or null if they can't be loaded
+     */
+    public @Nullable Map<UUID, Double> loadMaximumBalances() {
+        try (
+            Connection conn = hikari.getConnection();
+            PreparedStatement stmt = conn.prepareStatement("SELECT uuid, max_balance FROM " + currenciesTable);
+            ResultSet rs = stmt.executeQuery()
+        ) {
+            Map<UUID, Double> maximumBalances = new HashMap<>();
+            while (rs.next()) {
+                double maximumBalance = rs.getDouble("max_balance");
+                if (maximumBalance > 0D) { // Zero means unlimited
+                    maximumBalances.put(UUID.fromString(rs.getString("uuid")), maximumBalance);
+                }
+            }
+            return maximumBalances;
+        } catch (SQLException e) {
+            logger.error("Failed to load currencies", e);
+            return null;
+        }
+    }
+
+    public void close() {
+        hikari.close();
+    }
+
+    private @Nullable ProxyAccount loadOne(String sql, String key) {
+        try (
+            Connection conn = hikari.getConnection();
+            PreparedStatement stmt = conn.prepareStatement(sql)
+        ) {
+            stmt.setString(1, key);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return readAccount(rs);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to load account " + key, e);
+        }
+        return null;
+    }
+
+    private static ProxyAccount readAccount(ResultSet rs) throws SQLException {
+        return new ProxyAccount(
+            UUID.fromString(rs.getString("uuid")),
+            rs.getString("nickname"),
+            rs.getInt("payable") == 1,
+            rs.getLong("version"),
+            readBalances(rs.getString("balance_data")),
+            readBalances(rs.getString("balance_acc"))
+        );
+    }
+
+    private static Map<UUID, Double> readBalances(@Nullable String json) {
+        Map<UUID, Double> balances = new HashMap<>();
+        if (json == null || json.isBlank()) {
+            return balances;
+        }
+        for (Map.Entry<String, JsonElement> entry : JsonParser.parseString(json).getAsJsonObject().entrySet()) {
+            balances.put(UUID.fromString(entry.getKey()), entry.getValue().getAsDouble());
+        }
+        return balances;
+    }
+
+    private static String writeBalances(Map<UUID, Double> balances) {
+        JsonObject json = new JsonObject();
+        balances.forEach((currency, balance) -> json.addProperty(currency.toString(), balance));
+        return json.toString();
+    }
+
+}